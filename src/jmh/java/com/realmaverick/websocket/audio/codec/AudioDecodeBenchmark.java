@@ -0,0 +1,100 @@
+package com.realmaverick.websocket.audio.codec;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import io.github.jaredmdobson.concentus.OpusApplication;
+import io.github.jaredmdobson.concentus.OpusEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of the decode stage for one 20 ms client frame, decoded to 16 kHz PCM16. A realtime stream sends 50
+ * frames a second, so one core decodes {@code 1 s / (50 × score)} streams; e.g. 20 µs per frame is 1 ms of CPU
+ * per second of audio, or about 1000 streams per core.
+ *
+ * Frames cycle through one second of speech-like audio (a gliding tone with an amplitude envelope) so Opus
+ * does not settle into decoding one repeated packet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioDecodeBenchmark {
+
+    private static final int FRAMES = 50;
+
+    @Param({"mulaw", "opus"})
+    public String codec;
+
+    private AudioBufferPool bufferPool;
+    private AudioDecoderPool.Lease decoder;
+    private byte[][] frames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        AsrProperties properties = new AsrProperties();
+        bufferPool = new AudioBufferPool(properties);
+
+        boolean opus = codec.equals("opus");
+        int rate = opus ? 48_000 : 8_000;
+        decoder = new AudioDecoderPool(properties, bufferPool).acquire(new AudioFormat(AudioCodec.fromWireName(codec), rate));
+
+        OpusEncoder encoder = opus ? new OpusEncoder(rate, 1, OpusApplication.OPUS_APPLICATION_VOIP) : null;
+        if (encoder != null) encoder.setBitrate(24_000);
+        short[] pcm = new short[rate / 50];
+        frames = new byte[FRAMES][];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (int i = 0; i < pcm.length; i++) {
+                double t = (frame * pcm.length + i) / (double) rate;
+                double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * t);
+                pcm[i] = (short) (Math.sin(2 * Math.PI * (200 + 300 * t) * t) * 12_000 * envelope);
+            }
+            frames[frame] = opus ? encodeOpus(encoder, pcm) : encodeMulaw(pcm);
+        }
+    }
+
+    @Benchmark
+    public int decodeFrame() {
+        byte[] frame = frames[next++ % FRAMES];
+        ByteBuffer pcm = decoder.decode(ByteBuffer.wrap(frame));
+        int decoded = pcm.remaining();
+        bufferPool.release(pcm);
+        return decoded;
+    }
+
+    private static byte[] encodeOpus(OpusEncoder encoder, short[] pcm) throws Exception {
+        byte[] packet = new byte[1_275];
+        int length = encoder.encode(pcm, 0, pcm.length, packet, 0, packet.length);
+        return Arrays.copyOf(packet, length);
+    }
+
+    /** Nearest μ-law code by search over the decoder's own expansion */
+    private static byte[] encodeMulaw(short[] pcm) {
+        byte[] encoded = new byte[pcm.length];
+        for (int i = 0; i < pcm.length; i++) {
+            int best = 0;
+            for (int code = 1; code < 256; code++) {
+                if (Math.abs(G711Decoder.mulaw(code) - pcm[i]) < Math.abs(G711Decoder.mulaw(best) - pcm[i])) best = code;
+            }
+            encoded[i] = (byte) best;
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,179 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.audio.codec.AudioDecoderPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import com.realmaverick.websocket.ratelimiter.RateLimiterService;
+import com.realmaverick.websocket.recording.SessionRecorder;
+import com.realmaverick.websocket.registry.InMemorySessionRegistry;
+import com.realmaverick.websocket.session.SessionDrainer;
+import com.realmaverick.websocket.session.SessionResumer;
+import com.realmaverick.websocket.session.SessionTimeoutWheel;
+import com.realmaverick.websocket.transcript.TranscriptDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of one inbound audio frame: {@link AsrWebSocketHandler#handleMessage} through rate limiting, the
+ * timeout touch, chunking and queueing, with the {@link AsrAudioSender} threads draining to a
+ * {@link FakeAsrServer} over loopback. The gateway is wired by hand exactly as Spring wires it.
+ *
+ * Each JMH thread is one client session. {@code frame} reports ns/frame on one thread; the
+ * {@code framesNThreads} variants report frames/s with N concurrent sessions. Add {@code -prof gc} for the
+ * allocation rate, and {@code -jvmArgsAppend -Dspring.threads.virtual.enabled=true} on Java 21+ to compare
+ * virtual threads:
+ *
+ * <pre>mvn -Pbenchmark test-compile exec:exec -Djmh.args="AudioPathBenchmark -prof gc"</pre>
+ *
+ * The container's own copy of each message is not included: every operation hands the handler a fresh
+ * view of the same 20 ms frame, as Tomcat hands it a fresh buffer.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AudioPathBenchmark {
+
+    /** 20 ms of 16 kHz PCM16 */
+    private static final int FRAME_BYTES = 640;
+
+    /** 0 queues client frames as they are; 100 re-chunks them into 100 ms packets */
+    @Param({"0", "100"})
+    public int chunkMillis;
+
+    private final AtomicInteger sessionIds = new AtomicInteger();
+
+    private FakeAsrServer fakeAsr;
+    private AsrAudioSender audioSender;
+    private AsrConnectionPool connectionPool;
+    private SessionTimeoutWheel timeoutWheel;
+    private TranscriptDispatcher transcriptDispatcher;
+    private AsrWebSocketHandler handler;
+    private ByteBuffer pcm;
+
+    @Setup(Level.Trial)
+    public void startGateway() throws Exception {
+        fakeAsr = new FakeAsrServer(0).start();
+
+        AsrProperties properties = new AsrProperties();
+        properties.setUrl(fakeAsr.getUrl());
+        properties.getAudio().setChunkMillis(chunkMillis);
+        // far above any rate reached here, and within Bucket4j's 1 token/ns refill limit
+        properties.getRateLimit().setAudio(Duration.ofDays(7));
+        properties.getRateLimit().setPeriod(Duration.ofMinutes(1));
+        properties.getRateLimit().setLeaseBatch(Duration.ofMinutes(1));
+
+        AsrThreads threads = new AsrThreads(new StandardEnvironment());
+        AudioBufferPool bufferPool = new AudioBufferPool(properties);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        audioSender = new AsrAudioSender(properties, threads, meterRegistry);
+        AsrMetrics metrics = new AsrMetrics(meterRegistry, properties);
+        connectionPool = new AsrConnectionPool(properties, audioSender, bufferPool, threads, metrics, meterRegistry);
+        timeoutWheel = new SessionTimeoutWheel(properties, threads);
+        transcriptDispatcher = new TranscriptDispatcher(properties, threads);
+        InMemorySessionRegistry registry = new InMemorySessionRegistry(properties);
+        SessionResumer sessionResumer = new SessionResumer(properties, timeoutWheel);
+        AsrSessionSetup sessionSetup = new AsrSessionSetup(registry, sessionResumer,
+                new RateLimiterService(registry, properties), timeoutWheel, connectionPool,
+                new SessionDrainer(properties, threads, event -> { }, meterRegistry), metrics, properties);
+        handler = new AsrWebSocketHandler(sessionSetup, sessionResumer, transcriptDispatcher,
+                new AudioDecoderPool(properties, bufferPool), bufferPool,
+                new SessionRecorder(properties, bufferPool, threads), metrics, properties);
+
+        audioSender.start();
+        connectionPool.start();
+        timeoutWheel.start();
+        transcriptDispatcher.start();
+
+        pcm = ByteBuffer.allocate(FRAME_BYTES);
+        for (int i = 0; i < FRAME_BYTES / 2; i++) {
+            pcm.putShort((short) (Math.sin(i / 8.0) * 8000));
+        }
+        pcm.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopGateway() throws Exception {
+        System.out.printf("%nFake ASR received %d frames, %d bytes%n", fakeAsr.framesReceived(), fakeAsr.bytesReceived());
+        connectionPool.stop();
+        timeoutWheel.stop();
+        transcriptDispatcher.stop();
+        audioSender.stop();
+        fakeAsr.stop();
+    }
+
+    /** One browser session per benchmark thread */
+    @State(Scope.Thread)
+    public static class Client {
+
+        StubWebSocketSession session;
+
+        @Setup(Level.Trial)
+        public void open(AudioPathBenchmark gateway) throws Exception {
+            session = new StubWebSocketSession("bench-" + gateway.sessionIds.incrementAndGet());
+            session.getAttributes().put("username", session.getId());
+            gateway.handler.afterConnectionEstablished(session);
+
+            AsrWebSocketClient asrClient = (AsrWebSocketClient) session.getAttributes().get("asrClient");
+            asrClient.ready().get(10, TimeUnit.SECONDS);
+        }
+
+        @TearDown(Level.Trial)
+        public void close(AudioPathBenchmark gateway) throws Exception {
+            gateway.handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean frame(Client client) throws Exception {
+        return send(client);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean frames4Threads(Client client) throws Exception {
+        return send(client);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean frames16Threads(Client client) throws Exception {
+        return send(client);
+    }
+
+    private boolean send(Client client) throws Exception {
+        handler.handleMessage(client.session, new BinaryMessage(pcm.duplicate()));
+        return client.session.isOpen();
+    }
+}
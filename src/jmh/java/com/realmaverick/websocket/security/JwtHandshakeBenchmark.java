@@ -0,0 +1,84 @@
+package com.realmaverick.websocket.security;
+
+import com.realmaverick.websocket.filter.JwtHandshakeInterceptor;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.crypto.SecretKey;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handshake token check during a reconnect storm: {@code tokens} users reconnecting over and over.
+ * {@code legacy} is the previous interceptor path (two full parses, each with a freshly built parser);
+ * {@code cached} is {@link JwtHandshakeInterceptor} as it is now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtHandshakeBenchmark {
+
+    private static final SecretKey SECRET_KEY = Keys.hmacShaKeyFor("MySuperSecretKeyForJwt1234567890".getBytes());
+
+    @Param({"1", "1000"})
+    public int tokens;
+
+    private String[] bearerTokens;
+    private ServletServerHttpRequest[] requests;
+    private ServletServerHttpResponse response;
+    private JwtHandshakeInterceptor interceptor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JwtTokenService jwtTokenService = new JwtTokenService();
+        interceptor = new JwtHandshakeInterceptor(jwtTokenService);
+        response = new ServletServerHttpResponse(new MockHttpServletResponse());
+
+        bearerTokens = new String[tokens];
+        requests = new ServletServerHttpRequest[tokens];
+        for (int i = 0; i < tokens; i++) {
+            bearerTokens[i] = jwtTokenService.generateToken("user-" + i);
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/asr-stream");
+            request.addHeader("Authorization", "Bearer " + bearerTokens[i]);
+            requests[i] = new ServletServerHttpRequest(request);
+        }
+    }
+
+    @Benchmark
+    public String legacy() {
+        String token = bearerTokens[nextIndex()];
+        Jwts.parserBuilder().setSigningKey(SECRET_KEY).build().parseClaimsJws(token);
+        return Jwts.parserBuilder().setSigningKey(SECRET_KEY).build().parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public boolean cached() throws Exception {
+        return interceptor.beforeHandshake(requests[nextIndex()], response, null, new HashMap<>());
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == tokens ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,75 @@
+package com.realmaverick.websocket.audio;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Recycles direct buffers for the places the audio path has to build a new frame (stream-id framing,
+ * coalescing, re-chunking), so steady-state forwarding allocates nothing per frame.
+ *
+ * Buffers come in power-of-two size classes from 1 KiB to {@code asr.audio.pooled-buffer-max-bytes};
+ * larger requests fall back to a plain heap buffer that {@link #release(ByteBuffer)} ignores, as it does
+ * any heap buffer, so frames received from the container can be released unconditionally.
+ */
+@Component
+public class AudioBufferPool {
+
+    private static final int MIN_SHIFT = 10;
+
+    private final int maxShift;
+    private final ArrayBlockingQueue<ByteBuffer>[] sizeClasses;
+
+    @Autowired
+    public AudioBufferPool(AsrProperties properties) {
+        this(properties.getAudio().getPooledBufferMaxBytes(), properties.getAudio().getPooledBuffersPerSize());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public AudioBufferPool(int maxBufferBytes, int buffersPerSize) {
+        this.maxShift = Math.max(MIN_SHIFT, shiftFor(maxBufferBytes));
+        this.sizeClasses = new ArrayBlockingQueue[maxShift - MIN_SHIFT + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new ArrayBlockingQueue<>(Math.max(1, buffersPerSize));
+        }
+    }
+
+    /** @return a cleared buffer with at least {@code capacity} bytes of room */
+    public ByteBuffer acquire(int capacity) {
+        int shift = Math.max(MIN_SHIFT, shiftFor(capacity));
+        if (shift > maxShift) {
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = sizeClasses[shift - MIN_SHIFT].poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(1 << shift);
+        }
+        return buffer.clear();
+    }
+
+    /** Return a buffer obtained from {@link #acquire(int)}; anything else is left to the GC */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+
+        int capacity = buffer.capacity();
+        int shift = shiftFor(capacity);
+        if (capacity != 1 << shift || shift < MIN_SHIFT || shift > maxShift) return;
+        sizeClasses[shift - MIN_SHIFT].offer(buffer);
+    }
+
+    /** Pooled buffers currently idle, across all size classes */
+    public int idleCount() {
+        int idle = 0;
+        for (ArrayBlockingQueue<ByteBuffer> sizeClass : sizeClasses) {
+            idle += sizeClass.size();
+        }
+        return idle;
+    }
+
+    private static int shiftFor(int capacity) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1);
+    }
+}
@@ -0,0 +1,89 @@
+package com.realmaverick.websocket.audio;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * Re-chunks a session's PCM16 stream into packets of a target size before they are queued for the upstream:
+ * small frames are coalesced, oversize ones split, and a frame that already has the target size passes
+ * through without a copy. A partly filled packet is emitted by {@link #flushIfOlderThan(long, long)}, which
+ * the pool calls on a timer so that latency stays bounded when the client goes quiet.
+ *
+ * Packets are built in pooled buffers. All methods are synchronized: the inbound thread and the flush timer
+ * both emit, and this keeps the downstream {@link AudioRingBuffer} down to one producer at a time.
+ */
+public class AudioChunker {
+
+    private final AudioBufferPool bufferPool;
+    private final Predicate<ByteBuffer> downstream;
+    private int targetBytes;
+
+    private ByteBuffer pending;
+    private long pendingSinceNanos;
+
+    /**
+     * @param targetBytes packet size, kept to whole PCM16 samples
+     * @param downstream  receives each packet and returns false if it was rejected
+     */
+    public AudioChunker(int targetBytes, AudioBufferPool bufferPool, Predicate<ByteBuffer> downstream) {
+        this.bufferPool = bufferPool;
+        this.downstream = downstream;
+        setTargetBytes(targetBytes);
+    }
+
+    /** Takes ownership of {@code frame}. @return false if downstream rejected any packet */
+    public synchronized boolean append(ByteBuffer frame) {
+        int remaining = frame.remaining();
+        if (pending == null && remaining == targetBytes) {
+            return downstream.test(frame);
+        }
+
+        boolean accepted = true;
+        int offset = frame.position();
+        while (remaining > 0) {
+            if (pending == null) {
+                pending = bufferPool.acquire(targetBytes);
+                pendingSinceNanos = System.nanoTime();
+            }
+            int length = Math.min(remaining, targetBytes - pending.position());
+            pending.put(pending.position(), frame, offset, length);
+            pending.position(pending.position() + length);
+            offset += length;
+            remaining -= length;
+
+            if (pending.position() == targetBytes) {
+                accepted &= emit();
+            }
+        }
+        bufferPool.release(frame);
+        return accepted;
+    }
+
+    /** Emit the partial packet if it has been waiting at least {@code maxDelayNanos} */
+    public synchronized boolean flushIfOlderThan(long maxDelayNanos, long nowNanos) {
+        if (pending == null || nowNanos - pendingSinceNanos < maxDelayNanos) return false;
+        emit();
+        return true;
+    }
+
+    public synchronized boolean flush() {
+        return pending == null || emit();
+    }
+
+    public synchronized void setTargetBytes(int targetBytes) {
+        flush();
+        this.targetBytes = Math.max(2, targetBytes & ~1);
+    }
+
+    /** Drop the partial packet, e.g. when the session closes */
+    public synchronized void discard() {
+        bufferPool.release(pending);
+        pending = null;
+    }
+
+    private boolean emit() {
+        ByteBuffer packet = pending.flip();
+        pending = null;
+        return downstream.test(packet);
+    }
+}
@@ -0,0 +1,163 @@
+package com.realmaverick.websocket.audio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded lock-free queue of PCM frames between one producer (the session's inbound WebSocket thread)
+ * and one consumer (the upstream sender).
+ *
+ * The producer may also evict from the head under {@link OverflowPolicy#DROP_OLDEST}; head moves only by
+ * CAS, so producer and consumer never hand out the same frame. A slot is only rewritten once the head has
+ * moved past it, which makes a consumer that read a stale slot fail its CAS and retry.
+ *
+ * Frames are queued as given, without copying. The queue takes ownership: frames it discards or merges
+ * are handed back to the {@link AudioBufferPool}, and the consumer must release what it polls.
+ */
+public class AudioRingBuffer {
+
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final int maxCoalesceBytes;
+    private final AudioBufferPool bufferPool;
+    private final LongConsumer dropListener;
+
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    /** Frames merged under COALESCE while full; always newer than everything in the ring */
+    private final AtomicReference<ByteBuffer> overflow = new AtomicReference<>();
+
+    /** The buffer COALESCE merges into; only the producer writes it, and only while it holds it from overflow */
+    private ByteBuffer staging;
+
+    /**
+     * @param capacity         frames held, rounded up to a power of two
+     * @param maxCoalesceBytes cap on the staged frame under COALESCE; oldest bytes beyond it are dropped
+     * @param dropListener     told how many bytes of audio were discarded, on the producer thread
+     */
+    public AudioRingBuffer(int capacity, OverflowPolicy policy, int maxCoalesceBytes,
+                           AudioBufferPool bufferPool, LongConsumer dropListener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.policy = policy;
+        this.maxCoalesceBytes = maxCoalesceBytes;
+        this.bufferPool = bufferPool;
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Producer side; only one thread may offer at a time.
+     *
+     * @return false if the frame was rejected under {@link OverflowPolicy#BACKPRESSURE}
+     */
+    public boolean offer(ByteBuffer frame) {
+        ByteBuffer staged = overflow.getAndSet(null);
+        if (staged != null) {
+            frame = concat(staged, frame);
+        }
+
+        long t = tail;
+        if (t - head.get() >= capacity) {
+            switch (policy) {
+                case DROP_OLDEST -> discard(pollRing());
+                case COALESCE -> {
+                    overflow.set(frame);
+                    return true;
+                }
+                case BACKPRESSURE -> {
+                    discard(frame);
+                    return false;
+                }
+            }
+        }
+
+        slots.set((int) (t & mask), frame);
+        tail = t + 1;
+        return true;
+    }
+
+    /** Consumer side. @return the oldest frame, or null if empty */
+    public ByteBuffer poll() {
+        ByteBuffer frame = pollRing();
+        return frame != null ? frame : overflow.getAndSet(null);
+    }
+
+    private ByteBuffer pollRing() {
+        while (true) {
+            long h = head.get();
+            if (h == tail) return null;
+            ByteBuffer frame = slots.get((int) (h & mask));
+            if (head.compareAndSet(h, h + 1)) return frame;
+        }
+    }
+
+    /** Frames waiting to be sent, counting a staged coalesced frame as one */
+    public int size() {
+        int queued = (int) (tail - head.get());
+        return overflow.get() != null ? queued + 1 : queued;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Consumer side: discard everything queued, e.g. once the session has closed */
+    public void clear() {
+        ByteBuffer frame;
+        while ((frame = poll()) != null) {
+            bufferPool.release(frame);
+        }
+    }
+
+    private void discard(ByteBuffer frame) {
+        if (frame == null) return;
+        dropListener.accept(frame.remaining());
+        bufferPool.release(frame);
+    }
+
+    /**
+     * Appends to one staging buffer of {@code maxCoalesceBytes} capacity, so a run of merges copies each
+     * frame once; the staged bytes are only shifted down when the cap is hit.
+     */
+    private ByteBuffer concat(ByteBuffer staged, ByteBuffer frame) {
+        int stagedBytes = staged.remaining();
+        int frameBytes = frame.remaining();
+        int skip = Math.max(0, frameBytes - maxCoalesceBytes);
+        int keep = Math.min(stagedBytes, maxCoalesceBytes - frameBytes + skip);
+        int drop = stagedBytes - keep + skip;
+        if (drop > 0) dropListener.accept(drop);
+
+        ByteBuffer merged;
+        if (staged == staging) {
+            merged = staged;
+            if (keep == stagedBytes && staged.position() == 0) {
+                merged.position(merged.limit()).limit(merged.capacity());
+            } else {
+                merged.position(merged.position() + stagedBytes - keep);
+                merged.compact();
+            }
+        } else {
+            merged = bufferPool.acquire(maxCoalesceBytes);
+            merged.put(0, staged, staged.position() + stagedBytes - keep, keep).position(keep);
+            bufferPool.release(staged);
+            staging = merged;
+        }
+        merged.put(merged.position(), frame, frame.position() + skip, frameBytes - skip);
+        merged.position(merged.position() + frameBytes - skip).flip();
+
+        bufferPool.release(frame);
+        return merged;
+    }
+}
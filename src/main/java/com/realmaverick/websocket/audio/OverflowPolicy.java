@@ -0,0 +1,16 @@
+package com.realmaverick.websocket.audio;
+
+/**
+ * What an {@link AudioRingBuffer} does with a frame that arrives while it is full.
+ */
+public enum OverflowPolicy {
+
+    /** Evict the oldest queued frame; latency stays bounded, the start of the backlog is lost */
+    DROP_OLDEST,
+
+    /** Merge overflow into one staged frame published as soon as a slot frees up, up to a byte cap */
+    COALESCE,
+
+    /** Reject the new frame and let the caller tell the client to slow down */
+    BACKPRESSURE
+}
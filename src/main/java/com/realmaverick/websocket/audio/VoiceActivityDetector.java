@@ -0,0 +1,155 @@
+package com.realmaverick.websocket.audio;
+
+import com.realmaverick.websocket.config.AsrProperties;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * Energy and zero-crossing voice activity detection for one session's PCM16 stream, so silence is not sent to
+ * the ASR backend.
+ *
+ * A frame is voiced when its mean energy reaches {@code asr.vad.energy-threshold-db}, or comes within 6 dB of
+ * it with a zero-crossing rate of at least {@code asr.vad.zero-crossing-threshold}, which keeps quiet unvoiced
+ * consonants ("s", "f") from being cut. Speech continues for {@code asr.vad.hangover} of audio after the last
+ * voiced frame. While silent, the most recent {@code asr.vad.pre-roll} of audio is held back and sent ahead of
+ * the next voiced frame, so word onsets that start below the threshold still reach the recognizer.
+ *
+ * Classifying a frame allocates nothing. Called on the session's inbound thread; synchronized only so a
+ * close from another thread can {@link #discard()} the held frames.
+ */
+public class VoiceActivityDetector {
+
+    /** What to do with a classified frame */
+    public enum Activity {
+        /** Held as pre-roll; send nothing */
+        SILENCE,
+        /** First voiced frame: send {@link #pollPreRoll() the pre-roll}, then the frame */
+        SPEECH_START,
+        /** Voiced, or silent within the hangover: send the frame */
+        SPEECH,
+        /** Hangover ran out: the frame is held as pre-roll and the utterance has ended */
+        SPEECH_END
+    }
+
+    /** Upper bound on frames held as pre-roll, whatever their size */
+    private static final int PRE_ROLL_SLOTS = 64;
+
+    private final AudioBufferPool bufferPool;
+    private final IntConsumer discarded;
+    private final double energyThreshold;
+    private final double zeroCrossingThreshold;
+    private final long hangoverBytes;
+    private final long preRollBytes;
+
+    private final ByteBuffer[] preRoll = new ByteBuffer[PRE_ROLL_SLOTS];
+    private int preRollHead;
+    private int preRollCount;
+    private long preRollHeld;
+
+    private boolean speaking;
+    private long hangoverLeft;
+
+    /**
+     * @param sampleRate of the PCM16 being classified
+     * @param discarded  told the size of each silent frame dropped for good
+     */
+    public VoiceActivityDetector(AsrProperties.Vad settings, int sampleRate, AudioBufferPool bufferPool,
+                                 IntConsumer discarded) {
+        this.bufferPool = bufferPool;
+        this.discarded = discarded;
+        double amplitude = 32768 * Math.pow(10, settings.getEnergyThresholdDb() / 20);
+        this.energyThreshold = amplitude * amplitude;
+        this.zeroCrossingThreshold = settings.getZeroCrossingThreshold();
+        long bytesPerSecond = sampleRate * 2L;
+        this.hangoverBytes = settings.getHangover().toMillis() * bytesPerSecond / 1000;
+        this.preRollBytes = settings.getPreRoll().toMillis() * bytesPerSecond / 1000;
+    }
+
+    /** Classify a frame of 16-bit little-endian mono PCM. A held frame is owned by the detector from here on */
+    public synchronized Activity classify(ByteBuffer pcm16) {
+        if (isVoiced(pcm16)) {
+            hangoverLeft = hangoverBytes;
+            if (speaking) {
+                return Activity.SPEECH;
+            }
+            speaking = true;
+            return Activity.SPEECH_START;
+        }
+
+        if (speaking) {
+            if (hangoverLeft > 0) {
+                hangoverLeft -= pcm16.remaining();
+                return Activity.SPEECH;
+            }
+            speaking = false;
+            hold(pcm16);
+            return Activity.SPEECH_END;
+        }
+        hold(pcm16);
+        return Activity.SILENCE;
+    }
+
+    /** Oldest held frame, handing it to the caller, or null when the pre-roll is empty */
+    public synchronized ByteBuffer pollPreRoll() {
+        if (preRollCount == 0) return null;
+        ByteBuffer frame = preRoll[preRollHead];
+        preRoll[preRollHead] = null;
+        preRollHead = (preRollHead + 1) % PRE_ROLL_SLOTS;
+        preRollCount--;
+        preRollHeld -= frame.remaining();
+        return frame;
+    }
+
+    /** Release everything held, e.g. when the session closes */
+    public synchronized void discard() {
+        ByteBuffer frame;
+        while ((frame = pollPreRoll()) != null) {
+            bufferPool.release(frame);
+        }
+    }
+
+    private void hold(ByteBuffer frame) {
+        if (preRollBytes == 0) {
+            drop(frame);
+            return;
+        }
+        if (preRollCount == PRE_ROLL_SLOTS) {
+            drop(pollPreRoll());
+        }
+        preRoll[(preRollHead + preRollCount) % PRE_ROLL_SLOTS] = frame;
+        preRollCount++;
+        preRollHeld += frame.remaining();
+
+        // keep the fewest recent frames that still cover the pre-roll
+        while (preRollCount > 1 && preRollHeld - preRoll[preRollHead].remaining() >= preRollBytes) {
+            drop(pollPreRoll());
+        }
+    }
+
+    private void drop(ByteBuffer frame) {
+        discarded.accept(frame.remaining());
+        bufferPool.release(frame);
+    }
+
+    private boolean isVoiced(ByteBuffer pcm16) {
+        int start = pcm16.position();
+        int samples = pcm16.remaining() / 2;
+        if (samples == 0) return false;
+
+        long energy = 0;
+        int crossings = 0;
+        int previous = 0;
+        for (int i = 0; i < samples; i++) {
+            int index = start + 2 * i;
+            int sample = (short) ((pcm16.get(index) & 0xFF) | (pcm16.get(index + 1) << 8));
+            energy += (long) sample * sample;
+            if (i > 0 && (sample ^ previous) < 0) crossings++;
+            previous = sample;
+        }
+
+        double meanEnergy = (double) energy / samples;
+        return meanEnergy >= energyThreshold
+                || (meanEnergy >= energyThreshold / 4 && (double) crossings / samples >= zeroCrossingThreshold);
+    }
+}
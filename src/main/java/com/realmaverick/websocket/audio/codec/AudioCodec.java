@@ -0,0 +1,43 @@
+package com.realmaverick.websocket.audio.codec;
+
+import java.util.Locale;
+
+/**
+ * Encodings a client may stream in, named by the {@code codec} field of the {@code format} control event.
+ * Everything is decoded to PCM16 before it reaches the ASR backend.
+ */
+public enum AudioCodec {
+
+    /** 16-bit little-endian mono PCM, forwarded without decoding; 256 kbps at 16 kHz */
+    PCM16("pcm16"),
+
+    /** G.711 μ-law, one byte per sample; half the bandwidth of PCM16 */
+    MULAW("mulaw"),
+
+    /** G.711 A-law, one byte per sample */
+    ALAW("alaw"),
+
+    /** One raw Opus packet per WebSocket message (no Ogg/WebM container), e.g. from WebCodecs' AudioEncoder */
+    OPUS("opus");
+
+    private final String wireName;
+
+    AudioCodec(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+
+    /** @throws IllegalArgumentException for an unknown name */
+    public static AudioCodec fromWireName(String name) {
+        String normalized = name.toLowerCase(Locale.ROOT);
+        for (AudioCodec codec : values()) {
+            if (codec.wireName.equals(normalized)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported codec: " + name);
+    }
+}
@@ -0,0 +1,30 @@
+package com.realmaverick.websocket.audio.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns one client frame into PCM16 for the upstream. Implementations keep per-stream state (filter history,
+ * the last sample for interpolation) and are not thread-safe; {@link AudioDecoderPool} hands each to one
+ * session at a time.
+ */
+public interface AudioDecoder {
+
+    AudioFormat format();
+
+    /** Upper bound on what {@link #decode} writes for a frame of {@code inputBytes} */
+    int maxDecodedBytes(int inputBytes);
+
+    /**
+     * Decode {@code in} and append 16-bit little-endian mono PCM at the upstream sample rate to {@code out},
+     * which has at least {@link #maxDecodedBytes} bytes of room. Consumes {@code in}.
+     */
+    void decode(ByteBuffer in, ByteBuffer out);
+
+    /** Forget the stream so the decoder can start another one */
+    void reset();
+
+    /** PCM16 little-endian, written byte by byte so pooled buffers keep their byte order */
+    static void putSample(ByteBuffer out, int sample) {
+        out.put((byte) sample).put((byte) (sample >> 8));
+    }
+}
@@ -0,0 +1,145 @@
+package com.realmaverick.websocket.audio.codec;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates the format a session negotiates and lends it a decoder to PCM16 at {@code asr.audio.sample-rate}.
+ *
+ * Opus decoder state runs to tens of kilobytes, so decoders are reset and kept for the next session with the
+ * same format, up to {@code asr.audio.pooled-decoders-per-format} idle ones each. PCM16 at the upstream rate
+ * needs no decoder and is forwarded untouched.
+ */
+@Component
+public class AudioDecoderPool {
+
+    private static final Set<Integer> OPUS_RATES = Set.of(8_000, 12_000, 16_000, 24_000, 48_000);
+
+    private final AudioBufferPool bufferPool;
+    private final int outputRate;
+    private final int maxIdlePerFormat;
+    private final Map<AudioFormat, Idle> idle = new ConcurrentHashMap<>();
+
+    public AudioDecoderPool(AsrProperties properties, AudioBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        this.outputRate = properties.getAudio().getSampleRate();
+        this.maxIdlePerFormat = properties.getAudio().getPooledDecodersPerFormat();
+    }
+
+    /**
+     * @return a lease on a decoder for {@code format}, or null for PCM16 at the upstream rate
+     * @throws IllegalArgumentException if the format cannot be converted to the upstream rate
+     */
+    public Lease acquire(AudioFormat format) {
+        validate(format);
+        if (format.codec() == AudioCodec.PCM16) {
+            return null;
+        }
+        // Opus packets decode to any rate, so one pool serves whatever rate the client encoded at
+        AudioFormat key = format.codec() == AudioCodec.OPUS ? new AudioFormat(AudioCodec.OPUS, outputRate) : format;
+        Idle pooled = idle.get(key);
+        AudioDecoder decoder = pooled != null ? pooled.poll() : null;
+        return new Lease(decoder != null ? decoder : create(key));
+    }
+
+    private void validate(AudioFormat format) {
+        int rate = format.sampleRate();
+        switch (format.codec()) {
+            case PCM16 -> {
+                if (rate != outputRate) {
+                    throw new IllegalArgumentException("pcm16 must be sent at " + outputRate + " Hz");
+                }
+            }
+            case MULAW, ALAW -> {
+                if (rate <= 0 || rate > outputRate || outputRate % rate != 0) {
+                    throw new IllegalArgumentException(format.codec().wireName() + " at " + rate
+                            + " Hz cannot be upsampled to " + outputRate + " Hz");
+                }
+            }
+            case OPUS -> {
+                if (!OPUS_RATES.contains(outputRate)) {
+                    throw new IllegalArgumentException("opus cannot be decoded to " + outputRate + " Hz");
+                }
+            }
+        }
+    }
+
+    private AudioDecoder create(AudioFormat format) {
+        return format.codec() == AudioCodec.OPUS
+                ? new OpusAudioDecoder(format, outputRate)
+                : new G711Decoder(format, outputRate);
+    }
+
+    private void giveBack(AudioDecoder decoder) {
+        decoder.reset();
+        idle.computeIfAbsent(decoder.format(), format -> new Idle()).offer(decoder, maxIdlePerFormat);
+    }
+
+    /** Idle decoders of one format */
+    private static final class Idle {
+
+        private final Queue<AudioDecoder> decoders = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        AudioDecoder poll() {
+            AudioDecoder decoder = decoders.poll();
+            if (decoder != null) size.decrementAndGet();
+            return decoder;
+        }
+
+        void offer(AudioDecoder decoder, int max) {
+            if (size.incrementAndGet() <= max) {
+                decoders.offer(decoder);
+            } else {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * One session's use of a decoder. Decoding and {@link #release()} exclude each other, so a session closed
+     * from another thread while a frame is being decoded never hands back a decoder still in use.
+     */
+    public final class Lease {
+
+        private final AudioFormat format;
+        private AudioDecoder decoder;
+
+        private Lease(AudioDecoder decoder) {
+            this.format = decoder.format();
+            this.decoder = decoder;
+        }
+
+        public AudioFormat format() {
+            return format;
+        }
+
+        /**
+         * Decode one client frame into a pooled buffer, ready to read, which the caller then owns.
+         *
+         * @return null once the lease has been released
+         */
+        public synchronized ByteBuffer decode(ByteBuffer in) {
+            if (decoder == null) return null;
+            ByteBuffer out = bufferPool.acquire(decoder.maxDecodedBytes(in.remaining()));
+            decoder.decode(in, out);
+            return out.flip();
+        }
+
+        /** Return the decoder to the pool; later calls are no-ops */
+        public synchronized void release() {
+            if (decoder == null) return;
+            giveBack(decoder);
+            decoder = null;
+        }
+    }
+}
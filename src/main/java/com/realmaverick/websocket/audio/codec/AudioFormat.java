@@ -0,0 +1,8 @@
+package com.realmaverick.websocket.audio.codec;
+
+/**
+ * What a client sends: codec and sample rate. For Opus the rate is informational, as packets decode to any
+ * supported rate.
+ */
+public record AudioFormat(AudioCodec codec, int sampleRate) {
+}
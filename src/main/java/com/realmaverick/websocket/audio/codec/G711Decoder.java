@@ -0,0 +1,80 @@
+package com.realmaverick.websocket.audio.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * G.711 μ-law and A-law, expanded through 256-entry tables. Input below the upstream rate (8 kHz telephony
+ * audio for a 16 kHz backend) is upsampled by an integer factor with linear interpolation, carrying the
+ * last sample across frames so frame boundaries do not click.
+ */
+class G711Decoder implements AudioDecoder {
+
+    private static final short[] MULAW = new short[256];
+    private static final short[] ALAW = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            MULAW[i] = mulaw(i);
+            ALAW[i] = alaw(i);
+        }
+    }
+
+    private final AudioFormat format;
+    private final short[] table;
+    private final int factor;
+    private int last;
+
+    /** @param outputRate a whole multiple of the format's rate */
+    G711Decoder(AudioFormat format, int outputRate) {
+        this.format = format;
+        this.table = format.codec() == AudioCodec.MULAW ? MULAW : ALAW;
+        this.factor = outputRate / format.sampleRate();
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public int maxDecodedBytes(int inputBytes) {
+        return inputBytes * factor * 2;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, ByteBuffer out) {
+        while (in.hasRemaining()) {
+            int sample = table[in.get() & 0xFF];
+            for (int step = 1; step < factor; step++) {
+                AudioDecoder.putSample(out, last + (sample - last) * step / factor);
+            }
+            AudioDecoder.putSample(out, sample);
+            last = sample;
+        }
+    }
+
+    @Override
+    public void reset() {
+        last = 0;
+    }
+
+    /** ITU-T G.711 μ-law expansion */
+    static short mulaw(int code) {
+        int u = ~code & 0xFF;
+        int magnitude = (((u & 0x0F) << 3) + 0x84) << ((u & 0x70) >> 4);
+        return (short) ((u & 0x80) != 0 ? 0x84 - magnitude : magnitude - 0x84);
+    }
+
+    /** ITU-T G.711 A-law expansion */
+    static short alaw(int code) {
+        int a = code ^ 0x55;
+        int segment = (a & 0x70) >> 4;
+        int magnitude = (a & 0x0F) << 4;
+        magnitude = switch (segment) {
+            case 0 -> magnitude + 8;
+            case 1 -> magnitude + 0x108;
+            default -> (magnitude + 0x108) << (segment - 1);
+        };
+        return (short) ((a & 0x80) != 0 ? magnitude : -magnitude);
+    }
+}
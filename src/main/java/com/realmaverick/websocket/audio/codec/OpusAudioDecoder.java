@@ -0,0 +1,88 @@
+package com.realmaverick.websocket.audio.codec;
+
+import io.github.jaredmdobson.concentus.OpusDecoder;
+import io.github.jaredmdobson.concentus.OpusException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Opus through Concentus, a pure-Java port of libopus. Decodes straight to the upstream rate and downmixes
+ * stereo packets to mono, so no resampling stage is needed. A packet that fails to decode is replaced by
+ * Opus' packet loss concealment, keeping the stream's timing intact.
+ */
+@Slf4j
+class OpusAudioDecoder implements AudioDecoder {
+
+    /** Longest packet Opus can produce: 120 ms */
+    private static final int MAX_PACKET_MILLIS = 120;
+
+    private final AudioFormat format;
+    private final OpusDecoder decoder;
+    private final short[] pcm;
+    private byte[] packet = new byte[1_500];
+
+    /** @param outputRate 8, 12, 16, 24 or 48 kHz */
+    OpusAudioDecoder(AudioFormat format, int outputRate) {
+        this.format = format;
+        try {
+            this.decoder = new OpusDecoder(outputRate, 1);
+        } catch (OpusException e) {
+            throw new IllegalArgumentException("Opus cannot decode to " + outputRate + " Hz", e);
+        }
+        this.pcm = new short[outputRate * MAX_PACKET_MILLIS / 1000];
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public int maxDecodedBytes(int inputBytes) {
+        return pcm.length * 2;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, ByteBuffer out) {
+        int length = in.remaining();
+        byte[] data;
+        int offset;
+        if (in.hasArray()) {
+            data = in.array();
+            offset = in.arrayOffset() + in.position();
+        } else {
+            if (packet.length < length) packet = new byte[length];
+            in.get(in.position(), packet, 0, length);
+            data = packet;
+            offset = 0;
+        }
+        in.position(in.limit());
+
+        int samples;
+        try {
+            samples = decoder.decode(data, offset, length, pcm, 0, pcm.length, false);
+        } catch (OpusException e) {
+            log.debug("[OpusAudioDecoder] Concealing undecodable packet: {}", e.getMessage());
+            samples = conceal();
+        }
+        for (int i = 0; i < samples; i++) {
+            AudioDecoder.putSample(out, pcm[i]);
+        }
+    }
+
+    private int conceal() {
+        int duration = Math.max(decoder.getLastPacketDuration(), 0);
+        if (duration == 0) return 0;
+        try {
+            return decoder.decode(null, 0, 0, pcm, 0, Math.min(duration, pcm.length), false);
+        } catch (OpusException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void reset() {
+        decoder.resetState();
+    }
+}
@@ -0,0 +1,394 @@
+package com.realmaverick.websocket.config;
+
+import com.realmaverick.websocket.audio.OverflowPolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for the upstream ASR backend, bound from {@code asr.*} in application.properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "asr")
+public class AsrProperties {
+
+    /** WebSocket endpoint of the ASR backend */
+    private String url = "ws://10.208.8.109:8000/ws";
+
+    /** Several instances of the default backend, balanced by load; {@link #url} alone when empty */
+    private List<String> urls = new ArrayList<>();
+
+    private final Pool pool = new Pool();
+
+    private final Breaker breaker = new Breaker();
+
+    private final Admission admission = new Admission();
+
+    /**
+     * ASR backends by language, keyed by a group name. Languages no route lists go to {@link #url}. A route
+     * language matches codes with the same primary subtag too, so {@code hi} covers {@code hi-IN}
+     */
+    private Map<String, Route> routes = new LinkedHashMap<>();
+
+    private final Audio audio = new Audio();
+
+    private final Session session = new Session();
+
+    private final Transcript transcript = new Transcript();
+
+    private final Vad vad = new Vad();
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    private final Registry registry = new Registry();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Recording recording = new Recording();
+
+    private final Drain drain = new Drain();
+
+    private final Protocol protocol = new Protocol();
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        /** Number of upstream connections opened at startup, for each backend instance */
+        private int size = 4;
+
+        /**
+         * Carry many client sessions over each upstream socket, tagging every frame with a stream id.
+         * Requires a backend that understands the multiplexed framing; when false each session
+         * leases a pre-opened connection of its own.
+         */
+        private boolean multiplex = false;
+
+        /** Upper bound of logical streams on one multiplexed connection */
+        private int maxStreamsPerConnection = 64;
+
+        /** How often each connection is pinged; two missed pongs mark it dead */
+        private Duration healthCheckInterval = Duration.ofSeconds(15);
+
+        private Duration reconnectBackoffMin = Duration.ofMillis(250);
+
+        private Duration reconnectBackoffMax = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Breaker {
+
+        /** Handshake failures in a row that take a backend instance out of rotation */
+        private int failureThreshold = 3;
+
+        /**
+         * Average time from audio sent to the next transcript above which an instance is taken out of rotation;
+         * 0 to trip on handshakes only. Silence sent without VAD counts towards it, so raise it for such clients
+         */
+        private Duration latencyThreshold = Duration.ofSeconds(3);
+
+        /** How long an instance gets no new sessions before it is tried again */
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Admission {
+
+        /** Upgrade requests to {@code /api/asr-stream} in progress at once; more are refused with 503 */
+        private int maxConcurrentHandshakes = 64;
+
+        /** Upgrade requests accepted per second; more are refused with 429 */
+        private int handshakeRate = 200;
+
+        /** Upgrade requests accepted at once after a quiet spell */
+        private int handshakeBurst = 400;
+
+        /**
+         * Upstream handshake time the limits are sized for. While the ASR backend takes longer to accept
+         * connections both limits shrink in proportion, down to {@link #minimumShare} of their configured values
+         */
+        private Duration upstreamConnectTarget = Duration.ofMillis(500);
+
+        /** Upstream handshakes older than this no longer count towards the adaptation */
+        private Duration upstreamLatencyWindow = Duration.ofSeconds(30);
+
+        private double minimumShare = 0.1;
+
+        /** Refused clients are told to retry after the wait for capacity plus up to this much, to spread them out */
+        private Duration retryAfterJitter = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Route {
+
+        /** WebSocket endpoint of the backend serving these languages */
+        private String url;
+
+        /** Several instances of this backend, balanced by load; {@link #url} alone when empty */
+        private List<String> urls = new ArrayList<>();
+
+        /** Language codes sent to this backend, e.g. {@code hi-IN} or just {@code hi} */
+        private List<String> languages = new ArrayList<>();
+
+        /** Warm connections kept for each instance of this backend; {@code asr.pool.size} when unset */
+        private Integer poolSize;
+    }
+
+    @Getter
+    @Setter
+    public static class Audio {
+
+        /**
+         * Sample rate of the PCM16 mono audio sent to the ASR backend, and of client audio unless the session
+         * negotiates another format; used to turn bytes into milliseconds
+         */
+        private int sampleRate = 16_000;
+
+        /** Frames queued per session between the inbound socket and the upstream sender */
+        private int queueCapacity = 128;
+
+        /** What to do with a frame that arrives while the session's queue is full */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+        /** Cap on the merged frame held under the COALESCE policy (default 2 s of 16 kHz PCM16) */
+        private int maxCoalesceBytes = 64_000;
+
+        /** Duration of the packets sent upstream; client frames are coalesced or split to it. 0 forwards frames as-is */
+        private int chunkMillis = 100;
+
+        /** Longest a partly filled packet waits for more audio before it is sent anyway */
+        private Duration chunkMaxDelay = Duration.ofMillis(200);
+
+        /** Threads draining session queues to the upstream sockets, platform or virtual */
+        private int senderThreads = 4;
+
+        /** Audio a stream sends per turn on the upstream senders at weight 1; turns only matter once they queue up */
+        private Duration sendQuantum = Duration.ofMillis(100);
+
+        /**
+         * Share of the upstream senders by role, e.g. {@code asr.audio.send-weights.ADMIN=4}, with or without the
+         * {@code ROLE_} prefix. A user with several of these roles gets the largest; everyone else weighs 1.
+         */
+        private Map<String, Double> sendWeights = new HashMap<>();
+
+        /** Largest direct buffer recycled by the audio buffer pool; bigger frames use the heap */
+        private int pooledBufferMaxBytes = 65_536;
+
+        /** Idle buffers kept per power-of-two size class */
+        private int pooledBuffersPerSize = 256;
+
+        /** Idle decoders kept per negotiated audio format, for sessions that do not send PCM16 */
+        private int pooledDecodersPerFormat = 64;
+    }
+
+    @Getter
+    @Setter
+    public static class Session {
+
+        /** Close a session that has sent no audio for this long */
+        private Duration idleTimeout = Duration.ofSeconds(60);
+
+        /** Close a session this long after it was opened */
+        private Duration maxDuration = Duration.ofMinutes(10);
+
+        /** Resolution of the timeout wheel */
+        private Duration timeoutTick = Duration.ofSeconds(1);
+
+        /** Slots in the timeout wheel; longer timeouts take extra rounds */
+        private int timeoutWheelSlots = 512;
+
+        /** Concurrent sessions one user may hold, across the cluster when the registry is distributed */
+        private int maxPerUser = 1;
+
+        /**
+         * How long the upstream stream of a dropped connection waits for the client to reconnect with its resume
+         * token. 0 closes it with the connection
+         */
+        private Duration resumeGrace = Duration.ofSeconds(30);
+
+        /** Final transcripts kept for a client that is reconnecting; the oldest are dropped beyond this */
+        private int resumeBufferFinals = 64;
+    }
+
+    @Getter
+    @Setter
+    public static class Transcript {
+
+        /** Partial hypotheses within one window reach the client as one message (the latest); finals are never held */
+        private Duration partialWindow = Duration.ofMillis(100);
+
+        /** A client that has not drained its outbound buffer for this long is disconnected */
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+
+        /** Bytes buffered per client behind a slow send before it is disconnected */
+        private int sendBufferSize = 512 * 1024;
+
+        /** Platform threads writing transcripts to clients (ignored with virtual threads) */
+        private int deliveryThreads = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class Vad {
+
+        /**
+         * Drop silence before it reaches the ASR backend. Silent frames also stop counting against the rate
+         * limit and no longer hold off the idle timeout.
+         */
+        private boolean enabled = false;
+
+        /** Mean frame energy, in dB below full scale, from which a frame counts as speech */
+        private double energyThresholdDb = -45;
+
+        /** Sign changes per sample that make a frame up to 6 dB below the threshold count as speech */
+        private double zeroCrossingThreshold = 0.25;
+
+        /** Audio still forwarded after the last voiced frame, so pauses within a sentence are kept */
+        private Duration hangover = Duration.ofMillis(500);
+
+        /** Audio held back while silent and sent ahead of the next voiced frame */
+        private Duration preRoll = Duration.ofMillis(300);
+
+        /** Send {@code {"event":"end_of_speech"}} upstream when the hangover runs out */
+        private boolean endOfSpeechEvent = true;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+
+        /**
+         * Audio a user may stream per period under the default plan, measured from payload bytes at the
+         * session's sample rate. Above the period itself, so realtime streaming fits with room for bursts.
+         */
+        private Duration audio = Duration.ofSeconds(70);
+
+        private Duration period = Duration.ofMinutes(1);
+
+        /**
+         * Plans by role, e.g. {@code asr.rate-limit.roles.ADMIN.audio=10m}, with or without the {@code ROLE_}
+         * prefix. A user with several of these roles gets the one allowing the most audio per second.
+         */
+        private Map<String, Plan> roles = new HashMap<>();
+
+        /** Audio each node takes from the registry at a time; one registry call per batch */
+        private Duration leaseBatch = Duration.ofSeconds(1);
+
+        /** Users whose buckets are kept on this node; the least recently used beyond this are dropped */
+        private int maxBuckets = 100_000;
+
+        /** A user's bucket on this node is dropped once unused for this long */
+        private Duration bucketIdleTimeout = Duration.ofMinutes(10);
+
+        @Getter
+        @Setter
+        public static class Plan {
+
+            private Duration audio;
+
+            private Duration period = Duration.ofMinutes(1);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Registry {
+
+        /** memory: limits per node; hazelcast: limits shared by every node in the cluster */
+        private String type = "memory";
+
+        /** Added to max-duration to expire sessions left behind by a node that died */
+        private Duration sessionTtlGrace = Duration.ofMinutes(1);
+
+        private final Hazelcast hazelcast = new Hazelcast();
+
+        @Getter
+        @Setter
+        public static class Hazelcast {
+
+            private String clusterName = "asr-websocket";
+
+            /** First port tried by the embedded member; the next free one is used if taken */
+            private int port = 5701;
+
+            /** host[:port] of the other nodes; empty uses multicast discovery */
+            private List<String> members = new ArrayList<>();
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Metrics {
+
+        /**
+         * Publish a session gauge per connected user. One time series per user, so keep it off for large
+         * user bases; the total and the busiest user's count are always published.
+         */
+        private boolean perUserSessions = false;
+    }
+
+    @Getter
+    @Setter
+    public static class Recording {
+
+        /** Record the audio and transcripts of a sample of sessions to disk, for QA and model training */
+        private boolean enabled = false;
+
+        /** Share of sessions recorded, from 0 to 1 */
+        private double sessionFraction = 0.01;
+
+        /** Each recorded session gets a directory under this one */
+        private String directory = "recordings";
+
+        /** Audio per WAV file; longer sessions are split into numbered segments */
+        private Duration segmentDuration = Duration.ofMinutes(5);
+
+        /** Recording pauses while the directory holds this much */
+        private DataSize maxDiskUsage = DataSize.ofGigabytes(10);
+
+        /** Frames and transcripts waiting for the writer; beyond this they are left out of the recording */
+        private int queueCapacity = 4096;
+    }
+
+    @Getter
+    @Setter
+    public static class Drain {
+
+        /**
+         * Once a drain starts, on shutdown or from {@code /actuator/drain}, sessions have this long to end on
+         * their own before the rest are told to reconnect. Keep it, plus {@link #flushTimeout}, within
+         * {@code spring.lifecycle.timeout-per-shutdown-phase}
+         */
+        private Duration deadline = Duration.ofSeconds(20);
+
+        /** Sessions told to reconnect are given a random delay up to this, so their reconnects do not arrive together */
+        private Duration reconnectJitter = Duration.ofSeconds(10);
+
+        /** Time for audio queued upstream to be sent and transcribed before a session told to reconnect is closed */
+        private Duration flushTimeout = Duration.ofSeconds(2);
+    }
+
+    @Getter
+    @Setter
+    public static class Protocol {
+
+        /**
+         * Compress messages to clients that offer permessage-deflate, on both runtimes. The compressor keeps its
+         * window between messages, which is what makes small ones like transcript partials shrink: they are
+         * compressed against the messages before them. Costs a compressor per session
+         */
+        private boolean deflate = true;
+    }
+}
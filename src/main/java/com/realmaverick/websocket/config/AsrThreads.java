@@ -0,0 +1,70 @@
+package com.realmaverick.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads used by the ASR data path.
+ *
+ * With {@code spring.threads.virtual.enabled=true} on Java 21+ (the same switch that moves Tomcat's
+ * request and WebSocket threads to virtual threads) every upstream drain, handshake and session timer
+ * runs on a virtual thread, so thread count no longer grows with connection count. Otherwise the
+ * bounded platform pools are used as before.
+ */
+@Slf4j
+@Component
+public class AsrThreads {
+
+    private final boolean virtual;
+
+    public AsrThreads(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+        if (!virtual && environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads, using platform threads",
+                    Runtime.version().feature());
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /** Thread per task when virtual, else a fixed pool of {@code platformThreads} */
+    public Executor newExecutor(String prefix, int platformThreads) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(prefix);
+        }
+        return Executors.newFixedThreadPool(platformThreads, threadFactory(prefix));
+    }
+
+    public ScheduledExecutorService newScheduler(String prefix, int platformThreads) {
+        return Executors.newScheduledThreadPool(platformThreads, threadFactory(prefix));
+    }
+
+    /** Executor for outbound WebSocket handshakes */
+    public AsyncTaskExecutor newHandshakeExecutor(String prefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(virtual);
+        return executor;
+    }
+
+    public ThreadFactory threadFactory(String prefix) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory();
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -1,24 +1,35 @@
 package com.realmaverick.websocket.config;
 
 import com.realmaverick.websocket.external_api.AsrWebSocketHandler;
+import com.realmaverick.websocket.filter.HandshakeAdmissionInterceptor;
+import com.realmaverick.websocket.filter.JwtHandshakeInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+/** Servlet container runtime, the default; see {@code ReactiveWebSocketConfig} for Reactor Netty */
 @Configuration
 @EnableWebSocket
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final AsrWebSocketHandler asrWebSocketHandler;
+    private final HandshakeAdmissionInterceptor admissionInterceptor;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
 
-    public WebSocketConfig(AsrWebSocketHandler asrWebSocketHandler) {
+    public WebSocketConfig(AsrWebSocketHandler asrWebSocketHandler, HandshakeAdmissionInterceptor admissionInterceptor,
+                           JwtHandshakeInterceptor jwtHandshakeInterceptor) {
         this.asrWebSocketHandler = asrWebSocketHandler;
+        this.admissionInterceptor = admissionInterceptor;
+        this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(asrWebSocketHandler, "/api/asr-stream")
-                .setAllowedOrigins("*"); 
+                .addInterceptors(admissionInterceptor, jwtHandshakeInterceptor)
+                .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads that drain session audio queues into the upstream sockets, so a slow ASR backend never blocks the
+ * container's inbound WebSocket threads.
+ *
+ * Streams with audio waiting take turns in one rotation, deficit round robin: each turn credits a stream
+ * {@code asr.audio.send-quantum} of audio times its weight, and it sends whole frames while the credit covers
+ * them. When the backend is saturated and the rotation backs up, every stream gets its weighted share of the
+ * senders, in bytes rather than frames, so a user sending large frames cannot crowd out the others. Weights
+ * come from the user's roles ({@code asr.audio.send-weights.*}).
+ */
+@Slf4j
+@Component
+public class AsrAudioSender {
+
+    private final BlockingQueue<AsrWebSocketClient> rotation = new LinkedBlockingQueue<>();
+    private final ThreadFactory threadFactory;
+    private final int threadCount;
+    /** PCM16 bytes credited per turn at weight 1 */
+    private final long quantumBytes;
+    private final Map<String, Double> roleWeights = new HashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    public AsrAudioSender(AsrProperties properties, AsrThreads threads, MeterRegistry meterRegistry) {
+        AsrProperties.Audio audio = properties.getAudio();
+        this.threadFactory = threads.threadFactory("asr-sender-");
+        this.threadCount = Math.max(1, audio.getSenderThreads());
+        this.quantumBytes = Math.max(1, audio.getSendQuantum().toMillis() * audio.getSampleRate() * 2 / 1000);
+        audio.getSendWeights().forEach((role, weight) -> roleWeights.put(role.replaceFirst("^ROLE_", ""), weight));
+
+        Gauge.builder("asr.audio.send.waiting", rotation, BlockingQueue::size)
+                .description("Streams with audio waiting for their turn on the upstream senders")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = threadFactory.newThread(this::serve);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    /** The largest weight among {@code roles}, or 1 if none of them has one */
+    public double weightFor(Collection<String> roles) {
+        double best = 0;
+        for (String role : roles) {
+            Double weight = roleWeights.get(role.replaceFirst("^ROLE_", ""));
+            if (weight != null && weight > best) best = weight;
+        }
+        return best > 0 ? best : 1;
+    }
+
+    /** Put a stream at the back of the rotation; the stream makes sure it is in it at most once */
+    void schedule(AsrWebSocketClient stream) {
+        rotation.add(stream);
+    }
+
+    private void serve() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                AsrWebSocketClient stream = rotation.take();
+                long quantum = Math.max(1, Math.round(quantumBytes * stream.getWeight()));
+                try {
+                    if (stream.drain(quantum)) rotation.add(stream);
+                } catch (RuntimeException e) {
+                    // the stream has left the rotation; it rejoins with its next frame
+                    log.warn("[AsrAudioSender] Drain failed session={} error={}", stream.getSessionId(), e.toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
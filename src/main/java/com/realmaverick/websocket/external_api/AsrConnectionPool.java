@@ -0,0 +1,507 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.audio.AudioRingBuffer;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Warm set of upstream ASR connections, opened at startup so a new client session never pays
+ * for a TCP + WebSocket handshake on its first frame.
+ *
+ * Each {@link AsrEndpointGroup} (the default {@code asr.url}, plus one per {@code asr.routes.*} entry) keeps
+ * its own warm connections, and a stream is carried by the group serving its language. A language switch
+ * moves the stream onto a warm connection of the new group; its queued audio follows it there.
+ *
+ * A group with several instances ({@code asr.urls}) gives each new stream to the {@link AsrEndpoint} with the
+ * lowest transcript latency average weighted by the streams it already carries, skipping instances whose
+ * circuit breaker is open. Streams stay on the instance they started on.
+ *
+ * Multiplexed mode spreads streams over {@code asr.pool.size} shared sockets; dedicated mode keeps
+ * that many idle sockets ready and replaces each one as soon as a session leases it.
+ * Every socket is pinged on {@code asr.pool.health-check-interval} and reconnected with
+ * exponential backoff when it drops; streams on a dropped socket are moved to another one right away.
+ * Nothing here blocks the caller on the ASR network: handshakes complete on the WebSocket client's
+ * executor and {@link AsrWebSocketClient} buffers audio until its upstream is ready.
+ */
+@Slf4j
+@Component
+public class AsrConnectionPool {
+
+    private final AsrProperties properties;
+    private final AsrAudioSender audioSender;
+    private final AudioBufferPool bufferPool;
+    private final WebSocketClient webSocketClient;
+    private final ScheduledExecutorService scheduler;
+    private final AsrMetrics metrics;
+    private final MeterRegistry meterRegistry;
+    private final Counter droppedAudio;
+
+    private final List<AsrUpstreamConnection> connections = new CopyOnWriteArrayList<>();
+    private final List<AsrEndpointGroup> groups = new ArrayList<>();
+    private final Map<String, AsrEndpointGroup> groupsByLanguage = new HashMap<>();
+    private final AsrEndpointGroup defaultGroup;
+    private final AtomicInteger connectionIds = new AtomicInteger();
+
+    private volatile boolean running;
+
+    /** Average upstream handshake time, failed ones included; guarded by this */
+    private long connectLatencyNanos;
+    private long lastConnectNanos;
+
+    public AsrConnectionPool(AsrProperties properties, AsrAudioSender audioSender, AudioBufferPool bufferPool,
+                             AsrThreads threads, AsrMetrics metrics, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.meterRegistry = meterRegistry;
+        this.audioSender = audioSender;
+        this.bufferPool = bufferPool;
+        this.scheduler = threads.newScheduler("asr-pool-", 1);
+
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        client.setTaskExecutor(threads.newHandshakeExecutor("asr-connect-"));
+        this.webSocketClient = client;
+
+        int size = properties.getPool().getSize();
+        this.defaultGroup = new AsrEndpointGroup(AsrEndpointGroup.DEFAULT,
+                urls(properties.getUrl(), properties.getUrls()), size, List.of(), properties.getBreaker());
+        groups.add(defaultGroup);
+        properties.getRoutes().forEach((name, route) -> {
+            List<String> urls = urls(route.getUrl(), route.getUrls());
+            if (urls.isEmpty()) {
+                throw new IllegalStateException("asr.routes." + name + ".url is not set");
+            }
+            AsrEndpointGroup group = new AsrEndpointGroup(name, urls,
+                    route.getPoolSize() != null ? route.getPoolSize() : size, List.copyOf(route.getLanguages()),
+                    properties.getBreaker());
+            groups.add(group);
+            for (String language : group.languages()) {
+                AsrEndpointGroup previous = groupsByLanguage.put(language.toLowerCase(Locale.ROOT), group);
+                if (previous != null) {
+                    throw new IllegalStateException("Language " + language + " is routed to both "
+                            + previous.name() + " and " + name);
+                }
+            }
+        });
+
+        this.droppedAudio = Counter.builder("asr.audio.dropped")
+                .description("Audio discarded because a session queue overflowed")
+                .baseUnit("milliseconds")
+                .tag("policy", properties.getAudio().getOverflowPolicy().name())
+                .register(meterRegistry);
+        Gauge.builder("asr.audio.queue.depth", this, pool -> pool.queueDepths().sum())
+                .description("Frames queued for the upstream across all sessions")
+                .register(meterRegistry);
+        Gauge.builder("asr.audio.queue.depth.max", this, pool -> pool.queueDepths().max().orElse(0))
+                .description("Deepest single session queue")
+                .register(meterRegistry);
+        for (AsrEndpointGroup group : groups) {
+            for (AsrEndpoint endpoint : group.endpoints()) {
+                registerGauges(endpoint);
+            }
+        }
+    }
+
+    private void registerGauges(AsrEndpoint endpoint) {
+        String group = endpoint.group().name();
+        Gauge.builder("asr.upstream.connections", connections, list -> list.stream()
+                        .filter(c -> c.getEndpoint() == endpoint && c.isOpen()).count())
+                .description("Open connections to the ASR backend")
+                .tags("group", group, "endpoint", endpoint.url(), "state", "open")
+                .register(meterRegistry);
+        Gauge.builder("asr.upstream.connections", connections, list -> list.stream()
+                        .filter(c -> c.getEndpoint() == endpoint && c.isConnecting()).count())
+                .description("Connections to the ASR backend in their handshake")
+                .tags("group", group, "endpoint", endpoint.url(), "state", "connecting")
+                .register(meterRegistry);
+        Gauge.builder("asr.upstream.streams", endpoint, this::streamCount)
+                .description("Client sessions carried by the ASR backend")
+                .tags("group", group, "endpoint", endpoint.url())
+                .register(meterRegistry);
+        Gauge.builder("asr.upstream.latency", endpoint, e -> e.latencyNanos() / 1e9)
+                .description("Average time from audio sent to a transcript back")
+                .baseUnit("seconds")
+                .tags("group", group, "endpoint", endpoint.url())
+                .register(meterRegistry);
+        Gauge.builder("asr.upstream.breaker", endpoint, e -> e.state(System.nanoTime()).ordinal())
+                .description("Circuit breaker of the ASR backend: 0 closed, 1 open, 2 half-open")
+                .tags("group", group, "endpoint", endpoint.url())
+                .register(meterRegistry);
+    }
+
+    /** {@code urls} when set, else {@code url} alone, else none */
+    private static List<String> urls(String url, List<String> urls) {
+        if (!urls.isEmpty()) return List.copyOf(urls);
+        return url != null ? List.of(url) : List.of();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        AsrProperties.Pool pool = properties.getPool();
+        for (AsrEndpointGroup group : groups) {
+            for (AsrEndpoint endpoint : group.endpoints()) {
+                for (int i = 0; i < group.size(); i++) {
+                    AsrUpstreamConnection connection = newConnection(endpoint);
+                    if (!pool.isMultiplex()) endpoint.idle().add(connection);
+                    connect(connection);
+                }
+                log.info("[AsrConnectionPool] Warming {} {} connection(s) to {} for {}", group.size(),
+                        pool.isMultiplex() ? "multiplexed" : "dedicated", endpoint.url(),
+                        group == defaultGroup ? "other languages" : group.languages());
+            }
+        }
+
+        long interval = pool.getHealthCheckInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::healthCheck, interval, interval, TimeUnit.MILLISECONDS);
+
+        // One sweep over all streams bounds packet latency without a timer per session
+        long chunkSweep = Math.max(10, properties.getAudio().getChunkMaxDelay().toMillis() / 4);
+        scheduler.scheduleAtFixedRate(this::flushChunks, chunkSweep, chunkSweep, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        for (AsrUpstreamConnection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+        for (AsrEndpointGroup group : groups) {
+            for (AsrEndpoint endpoint : group.endpoints()) {
+                endpoint.idle().clear();
+            }
+        }
+    }
+
+    /**
+     * Bind a client session to an upstream stream. Never waits on the network: the returned client
+     * buffers audio until {@link AsrWebSocketClient#ready()} completes.
+     */
+    public AsrWebSocketClient openStream(String sessionId) {
+        return openStream(sessionId, List.of());
+    }
+
+    /** A stream whose share of the upstream senders follows the user's {@code roles} */
+    public AsrWebSocketClient openStream(String sessionId, Collection<String> roles) {
+        AsrProperties.Audio audio = properties.getAudio();
+        double bytesPerMilli = audio.getSampleRate() * 2 / 1000.0;
+        AudioRingBuffer queue = new AudioRingBuffer(audio.getQueueCapacity(), audio.getOverflowPolicy(),
+                audio.getMaxCoalesceBytes(), bufferPool, bytes -> droppedAudio.increment(bytes / bytesPerMilli));
+
+        int chunkBytes = (int) (audio.getChunkMillis() * bytesPerMilli);
+
+        AsrWebSocketClient stream = new AsrWebSocketClient(sessionId, queue, chunkBytes, audioSender,
+                audioSender.weightFor(roles), bufferPool, metrics);
+        attach(stream, acquire(groupFor(stream.getLanguage()), null));
+        return stream;
+    }
+
+    /**
+     * Switch a stream's language. Within its group the backend is told on the same connection; otherwise the
+     * stream is moved to a warm connection of the group serving the language, which gets the new language on
+     * attach, and its queued audio goes there. Called from the session's inbound thread.
+     */
+    public void switchLanguage(AsrWebSocketClient stream, String language) {
+        AsrEndpointGroup target = groupFor(language);
+        synchronized (stream) {
+            AsrUpstreamConnection current = stream.getConnection();
+            if (current == null || current.getGroup() == target || stream.isClosed()) {
+                stream.setLanguage(language);
+                return;
+            }
+
+            stream.onUpstreamLost();
+            stream.setLanguageForRebind(language);
+            current.detach(stream);
+            AsrUpstreamConnection replacement = acquire(target, null);
+            log.info("[AsrConnectionPool] Moving session {} to {} for {}: connection #{} to #{}",
+                    stream.getSessionId(), target.name(), language, current.getId(), replacement.getId());
+            attach(stream, replacement);
+        }
+    }
+
+    /** The group serving {@code language}, by exact code and then by primary subtag */
+    AsrEndpointGroup groupFor(String language) {
+        if (language == null) return defaultGroup;
+        String code = language.toLowerCase(Locale.ROOT).replace('_', '-');
+        AsrEndpointGroup group = groupsByLanguage.get(code);
+        int dash = code.indexOf('-');
+        if (group == null && dash > 0) {
+            group = groupsByLanguage.get(code.substring(0, dash));
+        }
+        return group != null ? group : defaultGroup;
+    }
+
+    private IntStream queueDepths() {
+        return connections.stream()
+                .flatMap(connection -> connection.streams().stream())
+                .mapToInt(AsrWebSocketClient::queueDepth);
+    }
+
+    private void attach(AsrWebSocketClient stream, AsrUpstreamConnection connection) {
+        stream.bind(connection, connection.nextStreamId());
+        connection.attach(stream);
+        if (stream.isClosed()) {
+            // the session went away while we were moving it
+            connection.detach(stream);
+        } else if (connection.isOpen()) {
+            stream.onUpstreamReady();
+        }
+    }
+
+    private AsrUpstreamConnection acquire(AsrEndpointGroup group, AsrUpstreamConnection exclude) {
+        AsrEndpoint endpoint = choose(group);
+        return properties.getPool().isMultiplex() ? leastLoaded(endpoint, exclude) : lease(endpoint);
+    }
+
+    /**
+     * The instance of {@code group} for a new stream: the lowest latency average times the streams it would
+     * carry, among those whose breaker is not open. An instance without a sample yet counts as the group's
+     * average, so one that just joined is neither flooded nor starved.
+     */
+    private AsrEndpoint choose(AsrEndpointGroup group) {
+        List<AsrEndpoint> endpoints = group.endpoints();
+        if (endpoints.size() == 1) return endpoints.get(0);
+
+        long now = System.nanoTime();
+        long sampledNanos = 0;
+        int sampled = 0;
+        boolean anyAvailable = false;
+        for (AsrEndpoint endpoint : endpoints) {
+            long latency = endpoint.latencyNanos();
+            if (latency > 0) {
+                sampledNanos += latency;
+                sampled++;
+            }
+            anyAvailable |= endpoint.state(now) != AsrEndpoint.State.OPEN;
+        }
+        long unknownNanos = sampled > 0 ? sampledNanos / sampled : 1;
+
+        AsrEndpoint best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (AsrEndpoint endpoint : endpoints) {
+            if (anyAvailable && endpoint.state(now) == AsrEndpoint.State.OPEN) continue;
+            long latency = endpoint.latencyNanos();
+            double cost = (double) (latency > 0 ? latency : unknownNanos) * (streamCount(endpoint) + 1);
+            if (cost < bestCost) {
+                best = endpoint;
+                bestCost = cost;
+            }
+        }
+        if (!anyAvailable) {
+            log.warn("[AsrConnectionPool] Every {} backend has its breaker open, using {}", group.name(), best.url());
+        }
+        return best;
+    }
+
+    private int streamCount(AsrEndpoint endpoint) {
+        int streams = 0;
+        for (AsrUpstreamConnection connection : connections) {
+            if (connection.getEndpoint() == endpoint) streams += connection.streamCount();
+        }
+        return streams;
+    }
+
+    private AsrUpstreamConnection leastLoaded(AsrEndpoint endpoint, AsrUpstreamConnection exclude) {
+        int maxStreams = properties.getPool().getMaxStreamsPerConnection();
+        Comparator<AsrUpstreamConnection> byLoad = Comparator.comparingInt(AsrUpstreamConnection::streamCount);
+
+        return connections.stream()
+                .filter(c -> c.getEndpoint() == endpoint && c != exclude && c.isOpen() && c.streamCount() < maxStreams)
+                .min(byLoad)
+                .orElseGet(() -> {
+                    log.warn("[AsrConnectionPool] No multiplexed connection to {} with spare capacity, overcommitting",
+                            endpoint.url());
+                    return connections.stream()
+                            .filter(c -> c.getEndpoint() == endpoint && c != exclude)
+                            .min(byLoad)
+                            .orElseGet(() -> exclude != null && exclude.getEndpoint() == endpoint
+                                    ? exclude : connect(newConnection(endpoint)));
+                });
+    }
+
+    private AsrUpstreamConnection lease(AsrEndpoint endpoint) {
+        Queue<AsrUpstreamConnection> idle = endpoint.idle();
+        AsrUpstreamConnection leased = null;
+        for (AsrUpstreamConnection candidate : idle) {
+            if (candidate.isOpen() && idle.remove(candidate)) {
+                leased = candidate;
+                break;
+            }
+        }
+        if (leased == null) leased = idle.poll();
+        if (leased == null) {
+            log.warn("[AsrConnectionPool] Warm pool of {} exhausted, opening a cold connection", endpoint.url());
+            leased = connect(newConnection(endpoint));
+        }
+
+        // Top the warm pool back up for the next session
+        if (running) {
+            AsrUpstreamConnection replacement = newConnection(endpoint);
+            idle.add(replacement);
+            connect(replacement);
+        }
+        return leased;
+    }
+
+    private AsrUpstreamConnection newConnection(AsrEndpoint endpoint) {
+        AsrUpstreamConnection connection = new AsrUpstreamConnection(
+                connectionIds.incrementAndGet(), endpoint, properties.getPool().isMultiplex(), this, bufferPool);
+        connections.add(connection);
+        return connection;
+    }
+
+    private AsrUpstreamConnection connect(AsrUpstreamConnection connection) {
+        connection.clearReconnectScheduled();
+        if (!running || connection.isRetired()) return connection;
+
+        connection.setConnecting(true);
+        long start = System.nanoTime();
+        AsrEndpoint endpoint = connection.getEndpoint();
+        webSocketClient.execute(connection, endpoint.url()).whenComplete((session, ex) -> {
+            connection.setConnecting(false);
+            long now = System.nanoTime();
+            recordConnectLatency(now - start, now);
+            if (ex != null) {
+                log.warn("[AsrConnectionPool] Connection #{} handshake failed: {}", connection.getId(), ex.toString());
+                if (endpoint.handshakeFailed(now)) tripped(endpoint, "handshake");
+                scheduleReconnect(connection);
+            } else {
+                endpoint.handshakeSucceeded(now);
+                metrics.upstreamConnected(now - start);
+            }
+        });
+        return connection;
+    }
+
+    private synchronized void recordConnectLatency(long nanos, long nowNanos) {
+        connectLatencyNanos = connectLatencyNanos == 0 ? nanos : (connectLatencyNanos * 4 + nanos) / 5;
+        lastConnectNanos = nowNanos;
+    }
+
+    /**
+     * Average time of the recent upstream handshakes, failed ones included, or 0 if none finished within
+     * {@code windowNanos}: a quiet pool says nothing about how the backend is doing now.
+     */
+    public synchronized long recentConnectLatencyNanos(long windowNanos) {
+        if (connectLatencyNanos == 0 || System.nanoTime() - lastConnectNanos > windowNanos) return 0;
+        return connectLatencyNanos;
+    }
+
+    // ---------------- Callbacks from AsrUpstreamConnection ----------------
+
+    void onConnectionClosed(AsrUpstreamConnection connection) {
+        List<AsrWebSocketClient> orphans = connection.detachAll();
+        if (!running || connection.isRetired()) {
+            connections.remove(connection);
+            return;
+        }
+
+        if (connection.isMultiplexed() || connection.getEndpoint().idle().contains(connection)) {
+            scheduleReconnect(connection);
+        } else {
+            // A leased dedicated socket is replaced by a warm one rather than waited for
+            retire(connection);
+        }
+
+        for (AsrWebSocketClient orphan : orphans) {
+            synchronized (orphan) {
+                // a language switch may have moved it already
+                if (orphan.getConnection() != connection) continue;
+                orphan.onUpstreamLost();
+                AsrUpstreamConnection replacement = acquire(connection.getGroup(), connection);
+                log.info("[AsrConnectionPool] Moving session {} from connection #{} to #{}",
+                        orphan.getSessionId(), connection.getId(), replacement.getId());
+                attach(orphan, replacement);
+            }
+        }
+    }
+
+    void retire(AsrUpstreamConnection connection) {
+        connections.remove(connection);
+        connection.getEndpoint().idle().remove(connection);
+        connection.close();
+    }
+
+    void onTranscriptLatency(AsrUpstreamConnection connection, long nanos, long nowNanos) {
+        AsrEndpoint endpoint = connection.getEndpoint();
+        if (endpoint.recordLatency(nanos, nowNanos)) tripped(endpoint, "latency");
+    }
+
+    private void tripped(AsrEndpoint endpoint, String reason) {
+        log.warn("[AsrConnectionPool] Breaker open for {} on {}, no new sessions for {}", endpoint, reason,
+                properties.getBreaker().getOpenDuration());
+        Counter.builder("asr.upstream.breaker.trips")
+                .description("Times a circuit breaker took an ASR backend out of rotation")
+                .tags("group", endpoint.group().name(), "endpoint", endpoint.url(), "reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void scheduleReconnect(AsrUpstreamConnection connection) {
+        if (!running || connection.isRetired() || !connection.markReconnectScheduled()) return;
+
+        long delay = backoffMillis(connection.incrementFailedAttempts());
+        log.info("[AsrConnectionPool] Reconnecting #{} in {} ms", connection.getId(), delay);
+        try {
+            scheduler.schedule(() -> connect(connection), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    /** Exponential backoff with jitter in [delay/2, delay] so a backend restart isn't hit by every socket at once */
+    private long backoffMillis(int attempt) {
+        long min = properties.getPool().getReconnectBackoffMin().toMillis();
+        long max = properties.getPool().getReconnectBackoffMax().toMillis();
+        long delay = Math.min(max, min << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void flushChunks() {
+        long maxDelay = properties.getAudio().getChunkMaxDelay().toNanos();
+        long now = System.nanoTime();
+        for (AsrUpstreamConnection connection : connections) {
+            for (AsrWebSocketClient stream : connection.streams()) {
+                stream.flushChunk(maxDelay, now);
+            }
+        }
+    }
+
+    private void healthCheck() {
+        long deadline = System.currentTimeMillis() - 2 * properties.getPool().getHealthCheckInterval().toMillis();
+        for (AsrUpstreamConnection connection : connections) {
+            if (!connection.isOpen()) continue;
+            if (connection.getLastPongMillis() < deadline) {
+                log.warn("[AsrConnectionPool] Connection #{} missed health checks, recycling", connection.getId());
+                connection.abort();
+            } else {
+                connection.ping();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.config.AsrProperties;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One ASR backend instance of an {@link AsrEndpointGroup}, with its own warm connections, a transcript
+ * latency average and a circuit breaker.
+ *
+ * The breaker opens after {@code asr.breaker.failure-threshold} handshake failures in a row, or when the
+ * latency average exceeds {@code asr.breaker.latency-threshold}. While open the endpoint gets no new streams;
+ * streams already on it stay. After {@code asr.breaker.open-duration} it is half-open: it takes new streams
+ * again, and closes once its latency average is back under the threshold, or after a handshake when it
+ * tripped on handshakes. A failed handshake while half-open reopens it.
+ */
+final class AsrEndpoint {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Weight of the newest sample in the latency average */
+    private static final double EWMA_WEIGHT = 0.2;
+
+    /** Samples the average needs before it can open the breaker */
+    private static final int MIN_SAMPLES = 5;
+
+    private final AsrEndpointGroup group;
+    private final String url;
+    private final AsrProperties.Breaker breaker;
+    /** Dedicated mode: connected or connecting sockets not leased to a stream yet */
+    private final Queue<AsrUpstreamConnection> idle = new ConcurrentLinkedQueue<>();
+
+    // ---------------- Guarded by this ----------------
+
+    private int failures;
+    /** 0 until the first sample, and again while the breaker is open */
+    private long latencyNanos;
+    private int samples;
+    private boolean tripped;
+    private boolean trippedOnHandshakes;
+    private long openUntilNanos;
+
+    AsrEndpoint(AsrEndpointGroup group, String url, AsrProperties.Breaker breaker) {
+        this.group = group;
+        this.url = url;
+        this.breaker = breaker;
+    }
+
+    AsrEndpointGroup group() {
+        return group;
+    }
+
+    String url() {
+        return url;
+    }
+
+    Queue<AsrUpstreamConnection> idle() {
+        return idle;
+    }
+
+    synchronized State state(long nowNanos) {
+        if (!tripped) return State.CLOSED;
+        return nowNanos - openUntilNanos < 0 ? State.OPEN : State.HALF_OPEN;
+    }
+
+    /** Average time from audio sent to a transcript back, 0 before the first sample */
+    synchronized long latencyNanos() {
+        return latencyNanos;
+    }
+
+    /** @return true if this sample opened the breaker */
+    synchronized boolean recordLatency(long nanos, long nowNanos) {
+        State state = state(nowNanos);
+        // streams draining from an open endpoint say nothing about how it will do once it is half-open
+        if (state == State.OPEN) return false;
+
+        long threshold = breaker.getLatencyThreshold().toNanos();
+        // one stream that sent a long silence should not take the instance out on its own
+        long sample = threshold > 0 ? Math.min(nanos, 2 * threshold) : nanos;
+        latencyNanos = latencyNanos == 0 ? sample : latencyNanos + (long) (EWMA_WEIGHT * (sample - latencyNanos));
+        samples++;
+        if (threshold > 0 && latencyNanos > threshold) {
+            if (samples < MIN_SAMPLES) return false;
+            trip(nowNanos, false);
+            return true;
+        }
+        if (state == State.HALF_OPEN) tripped = false;
+        return false;
+    }
+
+    /** @return true if this failure opened the breaker */
+    synchronized boolean handshakeFailed(long nowNanos) {
+        failures++;
+        State state = state(nowNanos);
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= breaker.getFailureThreshold())) {
+            trip(nowNanos, true);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void handshakeSucceeded(long nowNanos) {
+        failures = 0;
+        if (trippedOnHandshakes && state(nowNanos) == State.HALF_OPEN) tripped = false;
+    }
+
+    private void trip(long nowNanos, boolean onHandshakes) {
+        tripped = true;
+        trippedOnHandshakes = onHandshakes;
+        latencyNanos = 0;
+        samples = 0;
+        openUntilNanos = nowNanos + breaker.getOpenDuration().toNanos();
+    }
+
+    @Override
+    public String toString() {
+        return group.name() + " " + url;
+    }
+}
@@ -0,0 +1,44 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.config.AsrProperties;
+
+import java.util.List;
+
+/**
+ * ASR backends serving a set of languages, with their own warm connections in the {@link AsrConnectionPool}.
+ * The default group is {@code asr.url}; others come from {@code asr.routes.*}. A group may list several
+ * instances of its backend, each an {@link AsrEndpoint}.
+ */
+final class AsrEndpointGroup {
+
+    static final String DEFAULT = "default";
+
+    private final String name;
+    private final int size;
+    private final List<String> languages;
+    private final List<AsrEndpoint> endpoints;
+
+    AsrEndpointGroup(String name, List<String> urls, int size, List<String> languages, AsrProperties.Breaker breaker) {
+        this.name = name;
+        this.size = size;
+        this.languages = languages;
+        this.endpoints = urls.stream().map(url -> new AsrEndpoint(this, url, breaker)).toList();
+    }
+
+    String name() {
+        return name;
+    }
+
+    /** Warm connections per endpoint: shared sockets when multiplexed, idle ones otherwise */
+    int size() {
+        return size;
+    }
+
+    List<String> languages() {
+        return languages;
+    }
+
+    List<AsrEndpoint> endpoints() {
+        return endpoints;
+    }
+}
@@ -0,0 +1,148 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.filter.JwtHandshakeInterceptor;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import com.realmaverick.websocket.metrics.AsrMetrics.CloseReason;
+import com.realmaverick.websocket.protocol.ClientMessage;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import com.realmaverick.websocket.ratelimiter.LeasedBucket;
+import com.realmaverick.websocket.ratelimiter.RateLimiterService;
+import com.realmaverick.websocket.registry.SessionRegistry;
+import com.realmaverick.websocket.session.SessionDrainer;
+import com.realmaverick.websocket.session.SessionResumer;
+import com.realmaverick.websocket.session.SessionTimeoutWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Setup and teardown of a client session that do not depend on the web runtime: the per-user session limit, the
+ * rate limit bucket, timeouts, the upstream stream, control messages, drain tracking and the session metrics. Shared by
+ * {@link AsrWebSocketHandler} and its Reactor Netty counterpart, which keep only what their runtime does differently.
+ */
+@Slf4j
+@Component
+public class AsrSessionSetup {
+
+    /** Shared and thread-safe: control messages are parsed without building a mapper per message */
+    private static final ObjectReader CONTROL_READER = AsrUpstreamConnection.MAPPER.readerFor(JsonNode.class);
+
+    private final SessionRegistry sessionRegistry;
+    private final SessionResumer sessionResumer;
+    private final RateLimiterService rateLimiterService;
+    private final SessionTimeoutWheel timeoutWheel;
+    private final AsrConnectionPool connectionPool;
+    private final SessionDrainer drainer;
+    private final AsrMetrics metrics;
+    private final AsrProperties.Session sessionProperties;
+
+    public AsrSessionSetup(SessionRegistry sessionRegistry, SessionResumer sessionResumer,
+                           RateLimiterService rateLimiterService, SessionTimeoutWheel timeoutWheel,
+                           AsrConnectionPool connectionPool, SessionDrainer drainer, AsrMetrics metrics,
+                           AsrProperties properties) {
+        this.sessionRegistry = sessionRegistry;
+        this.sessionResumer = sessionResumer;
+        this.rateLimiterService = rateLimiterService;
+        this.timeoutWheel = timeoutWheel;
+        this.connectionPool = connectionPool;
+        this.drainer = drainer;
+        this.metrics = metrics;
+        this.sessionProperties = properties.getSession();
+    }
+
+    /**
+     * Limit concurrent sessions per user, cluster-wide with a distributed registry. Streams parked for this
+     * user's dropped connections make way for a new session.
+     *
+     * @return false if the user is at the limit
+     */
+    public boolean register(String username, String sessionId) {
+        int maxPerUser = sessionProperties.getMaxPerUser();
+        return sessionRegistry.tryRegister(username, sessionId, maxPerUser)
+                || sessionResumer.evict(username) && sessionRegistry.tryRegister(username, sessionId, maxPerUser);
+    }
+
+    public void unregister(String username, String sessionId) {
+        sessionRegistry.unregister(username, sessionId);
+    }
+
+    /** Rate limiter on the plan of the user's roles */
+    public LeasedBucket resolveBucket(String username, Map<String, Object> attributes) {
+        return rateLimiterService.resolveBucket(username, roles(attributes));
+    }
+
+    /**
+     * Idle timeout and max duration, which counts from {@code startedAt} ({@link System#nanoTime()}), the first
+     * connection of a resumed session. {@code onExpire} gets the reason text and what the metrics call it.
+     */
+    public SessionTimeoutWheel.Timeout startTimeout(long startedAt, BiConsumer<String, CloseReason> onExpire) {
+        Duration maxDuration = sessionProperties.getMaxDuration().minusNanos(System.nanoTime() - startedAt);
+        return timeoutWheel.register(
+                sessionProperties.getIdleTimeout(),
+                maxDuration.isNegative() ? Duration.ZERO : maxDuration,
+                reason -> onExpire.accept(reason,
+                        SessionTimeoutWheel.IDLE_TIMEOUT.equals(reason) ? CloseReason.IDLE : CloseReason.MAX_DURATION)
+        );
+    }
+
+    /** Upstream stream on a pooled connection, with the user's share of the upstream senders */
+    public AsrWebSocketClient openStream(String sessionId, Map<String, Object> attributes) {
+        return connectionPool.openStream(sessionId, roles(attributes));
+    }
+
+    /** A client text message that starts like JSON, as a control message {@code {"event":..}} */
+    public JsonNode readControl(String payload) throws IOException {
+        return CONTROL_READER.readTree(payload);
+    }
+
+    /**
+     * {@code {"event":"lang","code":"hi-IN"}}: moves the stream to a warm connection of another group when the
+     * language is routed there.
+     *
+     * @return the reply for the client
+     */
+    public ClientMessage switchLanguage(String sessionId, Map<String, Object> attributes, AsrWebSocketClient client,
+                                        JsonNode control, ClientProtocol protocol) {
+        String langCode = control.get("code").asText();
+        attributes.put("language", langCode);
+        connectionPool.switchLanguage(client, langCode);
+
+        log.info("[AsrSessionSetup] Language switched session={} user={} lang={}",
+                sessionId, attributes.get("username"), langCode);
+        return protocol.languageSet(langCode);
+    }
+
+    /** The session is set up: drains reach it from now on, and it counts as open */
+    public void opened(String sessionId, String username, Map<String, Object> attributes,
+                       SessionDrainer.Drainable drainable) {
+        drainer.track(sessionId, drainable);
+        Long handshakeStart = (Long) attributes.get(JwtHandshakeInterceptor.HANDSHAKE_START);
+        metrics.sessionOpened(username, handshakeStart != null ? System.nanoTime() - handshakeStart : 0);
+    }
+
+    /**
+     * The client connection is gone, whether or not its stream outlives it.
+     *
+     * @param timeout  null if the session was refused before its timeouts started
+     * @param admitted whether the session passed the registry
+     */
+    public void closed(String sessionId, String username, SessionTimeoutWheel.Timeout timeout, boolean admitted,
+                       CloseReason reason) {
+        drainer.untrack(sessionId);
+        if (timeout != null) timeout.cancel();
+        metrics.sessionClosed(username, admitted, reason);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> roles(Map<String, Object> attributes) {
+        return (List<String>) attributes.getOrDefault("roles", List.of());
+    }
+}
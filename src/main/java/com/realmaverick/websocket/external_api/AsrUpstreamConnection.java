@@ -0,0 +1,284 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.transcript.Transcript;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One physical WebSocket to the ASR backend.
+ *
+ * In multiplexed mode the socket carries many {@link AsrWebSocketClient} streams: binary frames are
+ * prefixed with a 4-byte big-endian stream id and control/transcript JSON carries a {@code "stream"} field.
+ * In dedicated mode it carries exactly one stream and frames go out untouched.
+ */
+@Slf4j
+public class AsrUpstreamConnection implements WebSocketHandler {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    static final int STREAM_HEADER_BYTES = Integer.BYTES;
+
+    private final int id;
+    private final AsrEndpoint endpoint;
+    private final boolean multiplexed;
+    private final AsrConnectionPool pool;
+    private final AudioBufferPool bufferPool;
+    private final Map<Integer, AsrWebSocketClient> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger streamIds = new AtomicInteger();
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+    private final AtomicInteger failedAttempts = new AtomicInteger();
+
+    private volatile WebSocketSession session;
+    private volatile boolean connecting;
+    private volatile boolean retired;
+    private volatile long lastPongMillis;
+
+    AsrUpstreamConnection(int id, AsrEndpoint endpoint, boolean multiplexed, AsrConnectionPool pool,
+                          AudioBufferPool bufferPool) {
+        this.id = id;
+        this.endpoint = endpoint;
+        this.multiplexed = multiplexed;
+        this.pool = pool;
+        this.bufferPool = bufferPool;
+    }
+
+    // ---------------- WebSocketHandler ----------------
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        this.session = session;
+        this.lastPongMillis = System.currentTimeMillis();
+        failedAttempts.set(0);
+        log.info("[AsrUpstreamConnection#{}] Connected to ASR WS", id);
+
+        // Streams attached while we were connecting get their config and buffered audio now
+        for (AsrWebSocketClient stream : streams.values()) {
+            stream.onUpstreamReady();
+        }
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) {
+        if (message instanceof TextMessage textMessage) {
+            dispatch(textMessage.getPayload());
+        } else if (message instanceof PongMessage) {
+            lastPongMillis = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("[AsrUpstreamConnection#{}] Transport error: {}", id, exception.toString());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
+        this.session = null;
+        log.info("[AsrUpstreamConnection#{}] ASR connection closed: {}", id, closeStatus);
+        pool.onConnectionClosed(this);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+
+    // ---------------- Streams ----------------
+
+    int nextStreamId() {
+        return streamIds.incrementAndGet();
+    }
+
+    void attach(AsrWebSocketClient stream) {
+        streams.put(stream.getStreamId(), stream);
+    }
+
+    void detach(AsrWebSocketClient stream) {
+        if (streams.remove(stream.getStreamId()) == null) return;
+
+        if (multiplexed) {
+            sendControl(stream.getStreamId(), MAPPER.createObjectNode().put("event", "close"));
+        } else {
+            // A dedicated socket holds backend state for its one stream, so it is never reused
+            pool.retire(this);
+        }
+    }
+
+    int streamCount() {
+        return streams.size();
+    }
+
+    Collection<AsrWebSocketClient> streams() {
+        return streams.values();
+    }
+
+    /** Hand every stream back to the pool after the socket dropped, without notifying the backend */
+    List<AsrWebSocketClient> detachAll() {
+        List<AsrWebSocketClient> orphans = new ArrayList<>(streams.values());
+        streams.clear();
+        return orphans;
+    }
+
+    /** Parses the message once; the stream's listeners get the parsed form */
+    private void dispatch(String payload) {
+        Transcript transcript = Transcript.parse(payload);
+        if (!multiplexed) {
+            for (AsrWebSocketClient stream : streams.values()) {
+                deliver(stream, transcript);
+            }
+            return;
+        }
+
+        if (transcript.json() == null) {
+            log.warn("[AsrUpstreamConnection#{}] Unparseable upstream message: {}", id, payload);
+            return;
+        }
+        JsonNode streamNode = transcript.get("stream");
+        AsrWebSocketClient stream = streamNode == null ? null : streams.get(streamNode.asInt());
+        if (stream != null) {
+            deliver(stream, transcript);
+        } else {
+            log.debug("[AsrUpstreamConnection#{}] Dropping message for unknown stream: {}", id, payload);
+        }
+    }
+
+    private void deliver(AsrWebSocketClient stream, Transcript transcript) {
+        long now = System.nanoTime();
+        long waited = stream.takeResponseNanos(now);
+        if (waited > 0) pool.onTranscriptLatency(this, waited, now);
+        stream.onTranscript(transcript);
+    }
+
+    // ---------------- Sending ----------------
+
+    /**
+     * Dedicated sockets send the frame as-is; multiplexed ones copy it once behind the stream id into a
+     * pooled buffer. The caller keeps ownership of {@code pcm16} either way.
+     */
+    boolean sendAudio(int streamId, ByteBuffer pcm16) {
+        if (!multiplexed) {
+            return send(new BinaryMessage(pcm16));
+        }
+        int length = pcm16.remaining();
+        ByteBuffer framed = bufferPool.acquire(STREAM_HEADER_BYTES + length);
+        framed.putInt(0, streamId)
+                .put(STREAM_HEADER_BYTES, pcm16, pcm16.position(), length)
+                .limit(STREAM_HEADER_BYTES + length);
+        try {
+            return send(new BinaryMessage(framed));
+        } finally {
+            bufferPool.release(framed);
+        }
+    }
+
+    boolean sendControl(int streamId, ObjectNode event) {
+        if (multiplexed) {
+            event.put("stream", streamId);
+        }
+        return send(new TextMessage(event.toString()));
+    }
+
+    void ping() {
+        send(new PingMessage());
+    }
+
+    /** WebSocketSession is not safe for concurrent sends and a multiplexed socket is shared by many sessions */
+    private synchronized boolean send(WebSocketMessage<?> message) {
+        WebSocketSession current = session;
+        if (current == null || !current.isOpen()) {
+            return false;
+        }
+        try {
+            current.sendMessage(message);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException: the socket closed between the isOpen check and the send
+            log.warn("[AsrUpstreamConnection#{}] Send failed: {}", id, e.toString());
+            return false;
+        }
+    }
+
+    // ---------------- Lifecycle ----------------
+
+    boolean isOpen() {
+        WebSocketSession current = session;
+        return current != null && current.isOpen();
+    }
+
+    boolean isConnecting() {
+        return connecting;
+    }
+
+    void setConnecting(boolean connecting) {
+        this.connecting = connecting;
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    long getLastPongMillis() {
+        return lastPongMillis;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    AsrEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    AsrEndpointGroup getGroup() {
+        return endpoint.group();
+    }
+
+    /** @return true if the caller won the right to schedule the next reconnect attempt */
+    boolean markReconnectScheduled() {
+        return reconnectScheduled.compareAndSet(false, true);
+    }
+
+    void clearReconnectScheduled() {
+        reconnectScheduled.set(false);
+    }
+
+    int incrementFailedAttempts() {
+        return failedAttempts.getAndIncrement();
+    }
+
+    /** Drop an unresponsive socket; the pool reconnects it from afterConnectionClosed */
+    void abort() {
+        closeSession(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    void close() {
+        retired = true;
+        closeSession(CloseStatus.NORMAL);
+    }
+
+    private void closeSession(CloseStatus status) {
+        WebSocketSession current = session;
+        try {
+            if (current != null && current.isOpen()) current.close(status);
+        } catch (IOException e) {
+            log.warn("[AsrUpstreamConnection#{}] Close failed: {}", id, e.toString());
+        }
+    }
+}
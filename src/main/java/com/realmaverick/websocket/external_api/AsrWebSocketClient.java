@@ -1,107 +1,330 @@
 package com.realmaverick.websocket.external_api;
 
 
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.audio.AudioChunker;
+import com.realmaverick.websocket.audio.AudioRingBuffer;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import com.realmaverick.websocket.transcript.Transcript;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.web.socket.*;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 
-import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+/**
+ * One client session's logical stream to the ASR backend, carried by a pooled {@link AsrUpstreamConnection}.
+ * Obtain instances from {@link AsrSessionSetup#openStream}; they are returned immediately and
+ * complete {@link #ready()} once the upstream accepts audio.
+ *
+ * {@link #sendAudio(ByteBuffer)} re-chunks through the session's {@link AudioChunker}, when one is configured,
+ * and only enqueues into its {@link AudioRingBuffer}; the queue is drained in turns
+ * on the {@link AsrAudioSender} threads whenever the upstream is ready, including after the pool moves the
+ * stream to a replacement connection.
+ */
 @Slf4j
 public class AsrWebSocketClient {
 
-    private static final Map<String, AsrWebSocketClient> clientMap = new ConcurrentHashMap<>();
-    private WebSocketSession rivaSession;
-    private Consumer<String> transcriptListener;
-    private String language = "en-US";
-    private static final String ASR_URL = "ws://10.208.8.109:8000/ws";
+    private final String sessionId;
+    private final AudioRingBuffer queue;
+    private final AsrAudioSender sender;
+    /** Share of the senders when they are contended, relative to a stream of weight 1 */
+    private final double weight;
+    private final AudioBufferPool bufferPool;
+    private final AudioChunker chunker;
+    private final AsrMetrics metrics;
+    private final CompletableFuture<AsrWebSocketClient> ready = new CompletableFuture<>();
+    /** Set while the stream is in the sender's rotation or taking its turn */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
 
-    private AsrWebSocketClient(String sessionId) {
-        try {
-            StandardWebSocketClient client = new StandardWebSocketClient();
-            rivaSession = client.doHandshake(new WebSocketHandler() {
-                @Override
-                public void afterConnectionEstablished(WebSocketSession session) {
-                    System.out.println("[Asr WebSocketClient] Connected to ASR WS");
-                    sendConfig();
-                }
+    /** Connection and stream id together, so a send never pairs one binding's socket with another's id */
+    private record Binding(AsrUpstreamConnection connection, int streamId) {
+    }
 
-                @Override
-                public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) {
-                    if (message instanceof TextMessage) {
-                        String transcript = ((TextMessage) message).getPayload();
-                        if (transcriptListener != null) transcriptListener.accept(transcript);
-                    }
-                }
+    /** A reader waiting for the queue to go below {@code lowWater} frames */
+    private record QueueWaiter(int lowWater, CompletableFuture<Void> room) {
+    }
 
-                @Override
-                public void handleTransportError(WebSocketSession session, Throwable exception) {
-                    exception.printStackTrace();
-                }
+    private final AtomicReference<QueueWaiter> queueWaiter = new AtomicReference<>();
 
-                @Override
-                public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
-                    System.out.println("[RivaWebSocketClient] Riva connection closed: " + closeStatus);
-                }
+    private volatile Binding binding;
+    private volatile Consumer<Transcript> transcriptListener;
+    private volatile String language = "en-US";
+    private volatile boolean upstreamReady;
+    private volatile boolean closed;
+    /** {@link System#nanoTime()} of the first frame, 0 before it; written by the inbound thread only */
+    private volatile long firstAudioNanos;
+    private volatile boolean transcribed;
+    /** Set by {@link #endOfSpeech()}, cleared by the drain once it has sent the event */
+    private volatile boolean endOfSpeechPending;
+    /** {@link System#nanoTime()} of the oldest audio sent since the last transcript, 0 when none */
+    private volatile long awaitingSinceNanos;
 
-                @Override
-                public boolean supportsPartialMessages() {
-                    return false;
-                }
-            }, ASR_URL).get();
+    // ---------------- Owned by whichever thread holds scheduled ----------------
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /** Frame taken from the queue but not sent: its send failed, or it is waiting for enough credit */
+    private ByteBuffer head;
+    /** Bytes this stream may still send in the current round */
+    private long deficit;
+
+    /**
+     * @param chunkBytes packet size sent upstream, or 0 to queue client frames as they arrive
+     */
+    AsrWebSocketClient(String sessionId, AudioRingBuffer queue, int chunkBytes, AsrAudioSender sender,
+                       double weight, AudioBufferPool bufferPool, AsrMetrics metrics) {
+        this.sessionId = sessionId;
+        this.metrics = metrics;
+        this.queue = queue;
+        this.sender = sender;
+        this.weight = weight;
+        this.bufferPool = bufferPool;
+        this.chunker = chunkBytes > 0 ? new AudioChunker(chunkBytes, bufferPool, queue::offer) : null;
     }
 
-    public static AsrWebSocketClient getOrCreate(String sessionId) {
-        return clientMap.computeIfAbsent(sessionId, AsrWebSocketClient::new);
+    /** Completes the first time the upstream is open and configured for this stream */
+    public CompletableFuture<AsrWebSocketClient> ready() {
+        return ready;
     }
 
+    /**
+     * Switch language on the current upstream. To follow a language to the backend serving it, use
+     * {@link AsrConnectionPool#switchLanguage} instead.
+     */
     public void setLanguage(String language) {
         this.language = language;
-        System.out.println("[WebSocketClient] Switching Riva language to: " + language);
+        log.debug("[AsrWebSocketClient] Switching language session={} lang={}", sessionId, language);
         sendConfig();
     }
 
+    public String getLanguage() {
+        return language;
+    }
+
+    /** Language for the next upstream this stream is bound to, which sends it on connect */
+    void setLanguageForRebind(String language) {
+        this.language = language;
+    }
+
     private void sendConfig() {
-        if (rivaSession != null && rivaSession.isOpen()) {
-            try {
-                String configJson = String.format(
-                        "{\"event\":\"lang\",\"code\":\"%s\"}",
-                        language
-                );
-                log.info("configJson: {}",configJson);
-                rivaSession.sendMessage(new TextMessage(configJson));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }else{
-            log.error("rivaSession is null or : {}",rivaSession);
+        Binding current = binding;
+        if (current != null && current.connection().isOpen()) {
+            log.info("session {} lang: {}", sessionId, language);
+            current.connection().sendControl(current.streamId(), AsrUpstreamConnection.MAPPER.createObjectNode()
+                    .put("event", "lang")
+                    .put("code", language));
+        } else {
+            log.debug("Upstream for session {} not connected yet, language {} will be sent on connect", sessionId, language);
         }
     }
 
-    public void sendAudio(byte[] pcm16) throws IOException {
-        if (rivaSession != null && rivaSession.isOpen()) {
-            rivaSession.sendMessage(new BinaryMessage(pcm16));
+    /**
+     * Queue a frame for the upstream without touching the network or copying it. Must be called from one
+     * thread at a time, which the container guarantees for messages of a single session. The buffer is
+     * owned by the stream from here on, so the caller must not reuse it.
+     *
+     * @return false if the frame was rejected because the queue is full under the BACKPRESSURE policy
+     */
+    public boolean sendAudio(ByteBuffer pcm16) {
+        if (closed) {
+            bufferPool.release(pcm16);
+            return true;
         }
+        if (firstAudioNanos == 0) firstAudioNanos = System.nanoTime();
+        boolean accepted = chunker != null ? chunker.append(pcm16) : queue.offer(pcm16);
+        scheduleDrain();
+        return accepted;
     }
 
-    public void setTranscriptListener(Consumer<String> listener) {
-        this.transcriptListener = listener;
+    /**
+     * Tell the upstream the speaker has stopped, after the audio queued so far. Audio queued after this call
+     * but before the drain catches up may still go out ahead of the event.
+     */
+    public void endOfSpeech() {
+        if (closed) return;
+        if (chunker != null) chunker.flush();
+        endOfSpeechPending = true;
+        scheduleDrain();
     }
 
-    public void close() {
+    /** Send a partly filled packet that has waited {@code maxDelayNanos}; called from the pool's flush timer */
+    void flushChunk(long maxDelayNanos, long nowNanos) {
+        if (chunker != null && !closed && chunker.flushIfOlderThan(maxDelayNanos, nowNanos)) {
+            scheduleDrain();
+        }
+    }
+
+    /** Frames waiting for the upstream */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Completes once fewer than {@code lowWater} frames are queued, or the stream is closed, for an inbound side
+     * that stops reading while the queue is full. The drain completes it as it sends, so nothing polls. Only the
+     * last waiter registered is signalled.
+     */
+    public CompletableFuture<Void> awaitQueueBelow(int lowWater) {
+        CompletableFuture<Void> room = new CompletableFuture<>();
+        queueWaiter.set(new QueueWaiter(lowWater, room));
+        // the drain may have caught up before it could see the waiter
+        signalQueueRoom();
+        return room;
+    }
+
+    private void signalQueueRoom() {
+        QueueWaiter waiter = queueWaiter.get();
+        if (waiter != null && (closed || queue.size() < waiter.lowWater()) && queueWaiter.compareAndSet(waiter, null)) {
+            waiter.room().complete(null);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (upstreamReady && scheduled.compareAndSet(false, true)) {
+            sender.schedule(this);
+        }
+    }
+
+    /**
+     * One turn in the sender's deficit round robin: {@code quantum} more bytes of credit, spent on whole frames.
+     * A frame larger than the credit waits for later turns, so big frames do not get ahead of other streams'
+     * small ones.
+     *
+     * @return true if audio is left and the stream stays in the rotation, false once it has left it
+     */
+    boolean drain(long quantum) {
+        boolean more = false;
         try {
-            if (rivaSession != null && rivaSession.isOpen()) rivaSession.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            deficit += quantum;
+            while (upstreamReady && !closed) {
+                ByteBuffer frame = head != null ? head : queue.poll();
+                if (frame == null) break;
+
+                int bytes = frame.remaining();
+                if (bytes > deficit) {
+                    head = frame;
+                    break;
+                }
+                int start = frame.position();
+                Binding current = binding;
+                if (current.connection().sendAudio(current.streamId(), frame)) {
+                    if (awaitingSinceNanos == 0) awaitingSinceNanos = System.nanoTime();
+                    metrics.audioOut(bytes);
+                    deficit -= bytes;
+                    head = null;
+                    bufferPool.release(frame);
+                } else {
+                    // socket is going away; the pool rebinds us and calls onUpstreamReady
+                    head = frame.position(start);
+                    upstreamReady = false;
+                }
+            }
+            if (endOfSpeechPending && upstreamReady && !closed && head == null && queue.isEmpty()) {
+                endOfSpeechPending = false;
+                Binding current = binding;
+                current.connection().sendControl(current.streamId(), AsrUpstreamConnection.MAPPER.createObjectNode()
+                        .put("event", "end_of_speech"));
+            }
+            if (closed) {
+                bufferPool.release(head);
+                head = null;
+                queue.clear();
+            }
+            signalQueueRoom();
+            more = hasBacklog();
+        } finally {
+            if (!more) {
+                // credit is not saved up while there is nothing to send
+                deficit = 0;
+                scheduled.set(false);
+            }
         }
-        clientMap.values().remove(this);
+        // audio queued after the last check, while the stream was still scheduled
+        if (!more && hasBacklog()) scheduleDrain();
+        return more;
+    }
+
+    private boolean hasBacklog() {
+        return upstreamReady && !closed && (head != null || !queue.isEmpty() || endOfSpeechPending);
+    }
+
+    double getWeight() {
+        return weight;
+    }
+
+    public void setTranscriptListener(Consumer<Transcript> listener) {
+        this.transcriptListener = listener;
+    }
+
+    void onTranscript(Transcript transcript) {
+        if (!transcribed && firstAudioNanos != 0) {
+            transcribed = true;
+            metrics.firstTranscript(System.nanoTime() - firstAudioNanos);
+        }
+        Consumer<Transcript> listener = transcriptListener;
+        if (listener != null) listener.accept(transcript);
+    }
+
+    // ---------------- Called by the pool / connection ----------------
+
+    /**
+     * How long the backend took to answer audio: the time since the oldest frame sent after the previous
+     * transcript, or 0 if none was. Called for each transcript, from the connection's read thread.
+     */
+    long takeResponseNanos(long nowNanos) {
+        long since = awaitingSinceNanos;
+        if (since == 0) return 0;
+        awaitingSinceNanos = 0;
+        return nowNanos - since;
+    }
+
+    void bind(AsrUpstreamConnection connection, int streamId) {
+        this.upstreamReady = false;
+        this.binding = new Binding(connection, streamId);
     }
-}
 
+    /** The connection carrying this stream, or null before the pool first binds it */
+    AsrUpstreamConnection getConnection() {
+        Binding current = binding;
+        return current != null ? current.connection() : null;
+    }
+
+    void onUpstreamReady() {
+        if (closed) return;
+        sendConfig();
+        upstreamReady = true;
+        ready.complete(this);
+        scheduleDrain();
+    }
+
+    void onUpstreamLost() {
+        upstreamReady = false;
+        // a transcript from the next upstream does not answer audio sent to this one
+        awaitingSinceNanos = 0;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    int getStreamId() {
+        Binding current = binding;
+        return current != null ? current.streamId() : 0;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        ready.cancel(false);
+        if (chunker != null) chunker.discard();
+        signalQueueRoom();
+
+        AsrUpstreamConnection current = getConnection();
+        if (current != null) current.detach(this);
+    }
+}
@@ -1,188 +1,501 @@
 package com.realmaverick.websocket.external_api;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.audio.VoiceActivityDetector;
+import com.realmaverick.websocket.audio.codec.AudioCodec;
+import com.realmaverick.websocket.audio.codec.AudioDecoderPool;
+import com.realmaverick.websocket.audio.codec.AudioFormat;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.filter.JwtHandshakeInterceptor;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import com.realmaverick.websocket.metrics.AsrMetrics.CloseReason;
+import com.realmaverick.websocket.protocol.ClientMessage;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import com.realmaverick.websocket.ratelimiter.LeasedBucket;
 import com.realmaverick.websocket.ratelimiter.RateLimiterService;
-import io.github.bucket4j.Bucket;
+import com.realmaverick.websocket.recording.SessionRecorder;
+import com.realmaverick.websocket.recording.SessionRecording;
+import com.realmaverick.websocket.session.SessionDrainer;
+import com.realmaverick.websocket.session.SessionResumer;
+import com.realmaverick.websocket.session.SessionTimeoutWheel;
+import com.realmaverick.websocket.transcript.TranscriptDispatcher;
+import com.realmaverick.websocket.transcript.TranscriptRelay;
+import com.realmaverick.websocket.transcript.TranscriptReplayBuffer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
-
 
+@Slf4j
 @Component
-public class AsrWebSocketHandler extends AbstractWebSocketHandler {
-
-    private final RateLimiterService rateLimiterService;
-
-    // Config
-    private static final long IDLE_TIMEOUT_SECONDS = 60;   // auto-stop if no audio
-    private static final long MAX_SESSION_MINUTES = 10;    // max session duration
-    private static final int MAX_CONCURRENT_SESSIONS_PER_USER = 1;
-
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(5);
-
-    // Track user sessions
-    private final Map<String, CopyOnWriteArrayList<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
+public class AsrWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+
+    /** Session attributes that move to the new connection when a client resumes */
+    private static final List<String> RESUMABLE = List.of("asrClient", "transcripts", "decoder", "vad", "recording",
+            "language", "startedAt");
+
+
+    private final AsrSessionSetup sessionSetup;
+    private final SessionResumer sessionResumer;
+    private final TranscriptDispatcher transcriptDispatcher;
+    private final AudioDecoderPool decoderPool;
+    private final AudioBufferPool bufferPool;
+    private final SessionRecorder recorder;
+    private final AsrMetrics metrics;
+    private final AsrProperties.Session sessionProperties;
+    private final AsrProperties.Vad vadProperties;
+    /** Sample rate of the PCM16 sent upstream */
+    private final int sampleRate;
+    /** PCM16 mono, for charging rate limit tokens by audio duration */
+    private final int bytesPerSecond;
+
+    public AsrWebSocketHandler(AsrSessionSetup sessionSetup, SessionResumer sessionResumer,
+                               TranscriptDispatcher transcriptDispatcher,
+                               AudioDecoderPool decoderPool, AudioBufferPool bufferPool, SessionRecorder recorder,
+                               AsrMetrics metrics, AsrProperties properties) {
+        this.sessionSetup = sessionSetup;
+        this.sessionResumer = sessionResumer;
+        this.transcriptDispatcher = transcriptDispatcher;
+        this.decoderPool = decoderPool;
+        this.bufferPool = bufferPool;
+        this.recorder = recorder;
+        this.metrics = metrics;
+        this.sessionProperties = properties.getSession();
+        this.vadProperties = properties.getVad();
+        this.sampleRate = properties.getAudio().getSampleRate();
+        this.bytesPerSecond = sampleRate * 2;
+    }
 
-    public AsrWebSocketHandler(RateLimiterService rateLimiterService) {
-        this.rateLimiterService = rateLimiterService;
+    /** Protocol versions, for the client to pick one at the upgrade; see {@link ClientProtocol} */
+    @Override
+    public List<String> getSubProtocols() {
+        return ClientProtocol.SUBPROTOCOLS;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        ClientProtocol protocol = ClientProtocol.forSubprotocol(session.getAcceptedProtocol());
+        session.getAttributes().put("protocol", protocol);
+
         String username = (String) session.getAttributes().get("username");
         if (username == null) {
+            session.getAttributes().put("closeReason", CloseReason.UNAUTHORIZED);
             session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Unauthorized"));
             return;
         }
 
-        // Limit concurrent sessions per user
-        userSessions.putIfAbsent(username, new CopyOnWriteArrayList<>());
-        List<WebSocketSession> sessions = userSessions.get(username);
-        if (sessions.size() >= MAX_CONCURRENT_SESSIONS_PER_USER) {
+        // A reconnect within the grace takes over the stream of its dropped connection
+        String resumeToken = (String) session.getAttributes().get(JwtHandshakeInterceptor.RESUME_TOKEN);
+        Map<String, Object> resumed = resumeToken != null ? sessionResumer.resume(resumeToken, username) : null;
+        if (resumed != null) {
+            sessionSetup.unregister(username, (String) resumed.remove("parkedSession"));
+        }
+
+        if (!sessionSetup.register(username, session.getId())) {
+            if (resumed != null) releaseStream(resumed);
+            session.getAttributes().put("closeReason", CloseReason.TOO_MANY_SESSIONS);
             session.close(CloseStatus.POLICY_VIOLATION.withReason("Too many concurrent sessions"));
             return;
         }
-        sessions.add(session);
 
-        // Initialize rate limiter
-        Bucket bucket = rateLimiterService.resolveBucket(username);
-        session.getAttributes().put("bucket", bucket);
-        session.getAttributes().put("startTime", System.currentTimeMillis());
+        session.getAttributes().put("bucket", sessionSetup.resolveBucket(username, session.getAttributes()));
+
+        long startedAt = resumed != null ? (Long) resumed.get("startedAt") : System.nanoTime();
+        session.getAttributes().put("timeout",
+                sessionSetup.startTimeout(startedAt, (reason, cause) -> closeSession(session, reason, cause)));
+
+        // Transcripts flow back through a relay that never blocks the ASR receive thread
+        TranscriptRelay relay = transcriptDispatcher.register(session, protocol);
+        session.getAttributes().put("relay", relay);
+
+        // the presented token is spent; a later reconnect uses the one issued here, told before any transcript
+        if (sessionResumer.isEnabled()) {
+            String token = sessionResumer.newToken();
+            session.getAttributes().put(JwtHandshakeInterceptor.RESUME_TOKEN, token);
+            send(session, protocol.event(AsrUpstreamConnection.MAPPER.createObjectNode()
+                    .put("event", "session")
+                    .put("resume_token", token)
+                    .put("resumed", resumed != null)));
+        } else {
+            session.getAttributes().remove(JwtHandshakeInterceptor.RESUME_TOKEN);
+        }
+
+        if (resumed != null) {
+            // same upstream stream, language, format, VAD and recording; transcripts missed in between come first
+            session.getAttributes().putAll(resumed);
+            int droppedFinals = ((TranscriptReplayBuffer) resumed.get("transcripts")).attach(relay);
+            if (droppedFinals > 0) {
+                log.warn("[AsrWebSocketHandler] Resumed session={} lost {} finals to a full replay buffer",
+                        session.getId(), droppedFinals);
+            }
+            metrics.sessionResumed();
+        } else {
+            session.getAttributes().put("startedAt", startedAt);
+            openStream(session, username, relay);
+        }
 
-        // Idle timeout
-        ScheduledFuture<?> idleFuture = scheduler.schedule(
-                () -> closeSession(session, "Idle timeout"),
-                IDLE_TIMEOUT_SECONDS,
-                TimeUnit.SECONDS
-        );
-        session.getAttributes().put("idleFuture", idleFuture);
+        sessionSetup.opened(session.getId(), username, session.getAttributes(), new SessionDrainer.Drainable() {
+            @Override
+            public void redirect(Duration delay) {
+                AsrWebSocketHandler.this.redirect(session, delay);
+            }
 
-        System.out.println("WebSocket connected: " + username);
+            @Override
+            public void close() {
+                closeSession(session, CloseStatus.GOING_AWAY.withReason("Server draining"), CloseReason.DRAINED);
+            }
+        });
+        log.info("[AsrWebSocketHandler] Session {} session={} user={} protocol={}",
+                resumed != null ? "resumed" : "opened", session.getId(), username, protocol.version());
     }
 
     @Override
     protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
-        Bucket bucket = (Bucket) session.getAttributes().get("bucket");
-
-        if (!bucket.tryConsume(1)) {
-            session.sendMessage(new TextMessage("{\"error\":\"Rate limit exceeded\"}"));
-            closeSession(session, "Rate limit exceeded");
+        LeasedBucket bucket = (LeasedBucket) session.getAttributes().get("bucket");
+        if (bucket == null) {
+            // rejected in afterConnectionEstablished and closing; frames already in flight are dropped
             return;
         }
-
-        resetIdleTimer(session);
-
-        long startTime = (long) session.getAttributes().get("startTime");
-        if (System.currentTimeMillis() - startTime > TimeUnit.MINUTES.toMillis(MAX_SESSION_MINUTES)) {
-            closeSession(session, "Max session duration reached");
+        if (session.getAttributes().containsKey("redirected")) {
+            // told to reconnect elsewhere; the upstream is finishing what came before
             return;
         }
+        metrics.audioIn(message.getPayloadLength());
+
+        // Negotiated codecs are decoded to PCM16 here, so everything downstream sees one format
+        ByteBuffer audio = message.getPayload();
+        AudioDecoderPool.Lease decoder = (AudioDecoderPool.Lease) session.getAttributes().get("decoder");
+        if (decoder != null) {
+            audio = decoder.decode(audio);
+            if (audio == null) return; // released by a concurrent close
+        }
 
-        AsrWebSocketClient rivaClient = AsrWebSocketClient.getOrCreate(session.getId());
-        rivaClient.sendAudio(message.getPayload().array());
-        rivaClient.setTranscriptListener(transcript -> {
-            try {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(transcript));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        AsrWebSocketClient rivaClient = (AsrWebSocketClient) session.getAttributes().get("asrClient");
+
+        // Silence is held back or dropped: it costs no tokens and does not count as activity
+        VoiceActivityDetector vad = (VoiceActivityDetector) session.getAttributes().get("vad");
+        if (vad != null) {
+            switch (vad.classify(audio)) {
+                case SILENCE:
+                    return;
+                case SPEECH_END:
+                    if (vadProperties.isEndOfSpeechEvent()) rivaClient.endOfSpeech();
+                    return;
+                case SPEECH_START:
+                    ByteBuffer held;
+                    while ((held = vad.pollPreRoll()) != null) {
+                        if (!forward(session, bucket, rivaClient, held)) {
+                            bufferPool.release(audio);
+                            return;
+                        }
+                    }
+                    break;
+                default:
+                    break;
             }
-        });
+        }
+
+        forward(session, bucket, rivaClient, audio);
     }
 
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        if (!session.getAttributes().containsKey("asrClient")) {
+            return;
+        }
+
+        ClientProtocol protocol = protocol(session);
         String payload = message.getPayload();
         if (payload.startsWith("{")) {
             try {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode node = mapper.readTree(payload);
+                JsonNode node = sessionSetup.readControl(payload);
                 String event = node.get("event").asText();
 
                 switch (event) {
                     case "lang":
-                        String langCode = node.get("code").asText();
-                        session.getAttributes().put("language", langCode);
-
-                        AsrWebSocketClient rivaClient = AsrWebSocketClient.getOrCreate(session.getId());
-                        rivaClient.setLanguage(langCode);
-
-                        System.out.println("[AsrWebSocketHandler] User '"
-                                + session.getAttributes().get("username")
-                                + "' switched language to: " + langCode);
+                        AsrWebSocketClient rivaClient = (AsrWebSocketClient) session.getAttributes().get("asrClient");
+                        send(session, sessionSetup.switchLanguage(session.getId(), session.getAttributes(), rivaClient,
+                                node, protocol));
+                        break;
 
-                        session.sendMessage(new TextMessage("Language set to: " + langCode));
+                    case "format":
+                        negotiateFormat(session, node);
                         break;
 
                     case "stop":
-                        closeSession(session, "Stopped by user");
+                        closeSession(session, "Stopped by user", CloseReason.STOPPED);
                         break;
 
                     default:
-                        session.sendMessage(new TextMessage("Unknown event: " + event));
+                        send(session, protocol.unknownEvent(event));
                 }
 
             } catch (Exception e) {
-                e.printStackTrace();
-                session.sendMessage(new TextMessage("{\"error\":\"Invalid control message\"}"));
+                log.warn("[AsrWebSocketHandler] Invalid control message session={} error={}", session.getId(), e.toString());
+                send(session, protocol.error("invalid_control", "Invalid control message"));
             }
         } else {
-            session.sendMessage(new TextMessage("Server ACK: " + payload));
+            send(session, protocol.ack(payload));
         }
     }
 
     @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        ScheduledFuture<?> idleFuture = (ScheduledFuture<?>) session.getAttributes().get("idleFuture");
-        if (idleFuture != null) idleFuture.cancel(false);
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        session.getAttributes().put("transportError", exception);
+        log.warn("[AsrWebSocketHandler] Transport error session={} error={}", session.getId(), exception.toString());
+    }
 
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String username = (String) session.getAttributes().get("username");
-        if (username != null && userSessions.containsKey(username)) {
-            userSessions.get(username).remove(session);
+
+        CloseReason reason = (CloseReason) session.getAttributes().get("closeReason");
+        // A close frame, GOING_AWAY included, means the client left on purpose; only a lost connection is resumable
+        boolean dropped = reason == null && (status.equalsCode(CloseStatus.NO_CLOSE_FRAME)
+                || status.equalsCode(CloseStatus.SESSION_NOT_RELIABLE)
+                || session.getAttributes().containsKey("transportError"));
+        if (reason == null) {
+            reason = status.equalsCode(CloseStatus.NORMAL) || status.equalsCode(CloseStatus.GOING_AWAY)
+                    || status.equalsCode(CloseStatus.NO_STATUS_CODE) ? CloseReason.CLIENT : CloseReason.ERROR;
+        }
+        // the bucket is only set once the session passed the registry
+        sessionSetup.closed(session.getId(), username, (SessionTimeoutWheel.Timeout) session.getAttributes().get("timeout"),
+                session.getAttributes().containsKey("bucket"), reason);
+
+        // Neither side closed it on purpose: keep the stream and its registry slot for a resume
+        if (dropped && park(session, username)) {
+            log.info("[AsrWebSocketHandler] Session dropped, parked for resume session={} user={} status={}",
+                    session.getId(), username, status.getCode());
+            return;
         }
 
-        AsrWebSocketClient client = AsrWebSocketClient.getOrCreate(session.getId());
-        client.close();
+        if (username != null) {
+            sessionSetup.unregister(username, session.getId());
+        }
+        releaseStream(session.getAttributes());
 
-        System.out.println("WebSocket disconnected: " + username + ", reason: " + status.getReason());
+        log.info("[AsrWebSocketHandler] Session closed session={} user={} reason={} status={}",
+                session.getId(), username, reason, status.getCode());
     }
 
     // ---------------- Helper Methods ----------------
 
-    private void resetIdleTimer(WebSocketSession session) {
+    /** Open the upstream stream of a new session, with what hangs off it */
+    private void openStream(WebSocketSession session, String username, TranscriptRelay relay) {
+        AsrWebSocketClient asrClient = sessionSetup.openStream(session.getId(), session.getAttributes());
+        session.getAttributes().put("asrClient", asrClient);
+
+        // Transcripts pass through a buffer that holds them while the client reconnects
+        TranscriptReplayBuffer transcripts = new TranscriptReplayBuffer(sessionProperties.getResumeBufferFinals());
+        transcripts.attach(relay);
+        session.getAttributes().put("transcripts", transcripts);
+
+        // A sampled share of sessions is recorded off the request path
+        SessionRecording recording = recorder.startRecording(session.getId(), username);
+        if (recording != null) {
+            session.getAttributes().put("recording", recording);
+            asrClient.setTranscriptListener(transcript -> {
+                transcripts.accept(transcript);
+                recording.transcript(transcript);
+            });
+        } else {
+            asrClient.setTranscriptListener(transcripts);
+        }
+
+        if (vadProperties.isEnabled()) {
+            session.getAttributes().put("vad",
+                    new VoiceActivityDetector(vadProperties, sampleRate, bufferPool, metrics::silenceSkipped));
+        }
+    }
+
+    /** Hand a dropped session's stream to the resumer; false if it cannot be resumed */
+    private boolean park(WebSocketSession session, String username) {
+        String token = (String) session.getAttributes().get(JwtHandshakeInterceptor.RESUME_TOKEN);
+        AsrWebSocketClient client = (AsrWebSocketClient) session.getAttributes().get("asrClient");
+        if (token == null || client == null || client.isClosed()) return false;
+
+        Map<String, Object> state = new HashMap<>();
+        for (String key : RESUMABLE) {
+            Object value = session.getAttributes().get(key);
+            if (value != null) state.put(key, value);
+        }
+        state.put("parkedSession", session.getId());
+
+        // audio already queued keeps draining upstream; transcripts wait for the reconnect
+        TranscriptReplayBuffer transcripts = (TranscriptReplayBuffer) state.get("transcripts");
+        transcripts.detach();
+        String sessionId = session.getId();
+        if (sessionResumer.park(token, username, state, parked -> {
+            sessionSetup.unregister(username, sessionId);
+            releaseStream(parked);
+        })) {
+            return true;
+        }
+        transcripts.attach((TranscriptRelay) session.getAttributes().get("relay"));
+        return false;
+    }
+
+    /** Close the upstream stream and give back what the session held */
+    private void releaseStream(Map<String, Object> attributes) {
+        AsrWebSocketClient client = (AsrWebSocketClient) attributes.get("asrClient");
+        if (client != null) client.close();
+
+        AudioDecoderPool.Lease decoder = (AudioDecoderPool.Lease) attributes.remove("decoder");
+        if (decoder != null) decoder.release();
+
+        VoiceActivityDetector vad = (VoiceActivityDetector) attributes.get("vad");
+        if (vad != null) vad.discard();
+
+        SessionRecording recording = (SessionRecording) attributes.get("recording");
+        if (recording != null) recording.close();
+    }
+
+    /**
+     * {@code {"event":"format","codec":"opus","sample_rate":48000}}: decode this session's audio from now on.
+     * The rate defaults to 8 kHz for G.711, 48 kHz for Opus and the upstream rate for PCM16. Answered with the
+     * same event on success, or an error that leaves the current format in place.
+     */
+    private void negotiateFormat(WebSocketSession session, JsonNode node) throws IOException {
+        AudioDecoderPool.Lease lease;
+        AudioFormat format;
         try {
-            ScheduledFuture<?> idleFuture = (ScheduledFuture<?>) session.getAttributes().get("idleFuture");
-            if (idleFuture != null) idleFuture.cancel(false);
+            AudioCodec codec = AudioCodec.fromWireName(node.path("codec").asText(AudioCodec.PCM16.wireName()));
+            int defaultRate = switch (codec) {
+                case PCM16 -> sampleRate;
+                case MULAW, ALAW -> 8_000;
+                case OPUS -> 48_000;
+            };
+            format = new AudioFormat(codec, node.path("sample_rate").asInt(defaultRate));
+            lease = decoderPool.acquire(format);
+        } catch (IllegalArgumentException e) {
+            send(session, protocol(session).error("unsupported_format", e.getMessage()));
+            return;
+        }
 
-            ScheduledFuture<?> newIdleFuture = scheduler.schedule(
-                    () -> closeSession(session, "Idle timeout"),
-                    IDLE_TIMEOUT_SECONDS,
-                    TimeUnit.SECONDS
-            );
-            session.getAttributes().put("idleFuture", newIdleFuture);
-        } catch (Exception e) {
-            e.printStackTrace();
+        AudioDecoderPool.Lease previous = (AudioDecoderPool.Lease) (lease != null
+                ? session.getAttributes().put("decoder", lease)
+                : session.getAttributes().remove("decoder"));
+        if (previous != null) previous.release();
+
+        log.info("[AsrWebSocketHandler] Audio format session={} codec={} rate={}",
+                session.getId(), format.codec().wireName(), format.sampleRate());
+        send(session, protocol(session).event(AsrUpstreamConnection.MAPPER.createObjectNode()
+                .put("event", "format")
+                .put("codec", format.codec().wireName())
+                .put("sample_rate", format.sampleRate())));
+    }
+
+    /**
+     * Charge a PCM16 frame to the user's bucket and queue it upstream; the client owns the frame afterwards.
+     *
+     * @return false if the rate limit refused it and the session is closing
+     */
+    private boolean forward(WebSocketSession session, LeasedBucket bucket, AsrWebSocketClient rivaClient,
+                            ByteBuffer audio) throws IOException {
+        // charged by audio duration, whatever the codec
+        if (!bucket.tryConsume(RateLimiterService.tokensFor(audio.remaining(), bytesPerSecond))) {
+            bufferPool.release(audio);
+            metrics.rateLimited();
+            send(session, protocol(session).error("rate_limit", "Rate limit exceeded"));
+            closeSession(session, "Rate limit exceeded", CloseReason.RATE_LIMIT);
+            return false;
         }
+
+        ((SessionTimeoutWheel.Timeout) session.getAttributes().get("timeout")).touch();
+
+        // copied before the client takes the frame over
+        SessionRecording recording = (SessionRecording) session.getAttributes().get("recording");
+        if (recording != null) recording.audio(audio);
+
+        if (!rivaClient.sendAudio(audio)) {
+            // Queue full under the BACKPRESSURE policy: tell the client once until it recovers
+            if (session.getAttributes().putIfAbsent("backpressure", Boolean.TRUE) == null) {
+                send(session, backpressure(session, "on"));
+            }
+        } else if (session.getAttributes().remove("backpressure") != null) {
+            send(session, backpressure(session, "off"));
+        }
+        return true;
+    }
+
+    /**
+     * Drain: {@code {"event":"reconnect","delay_ms":4200,"resume":{"language":"hi-IN","codec":"opus","sample_rate":48000}}}
+     * tells the client to come back after the delay, which the load balancer routes to another node, and to set up
+     * the new session as this one was. Audio the client sends from here on is dropped; what is already queued goes
+     * upstream ahead of an end of speech, so its final transcript still arrives before the close.
+     */
+    private void redirect(WebSocketSession session, Duration delay) {
+        session.getAttributes().put("redirected", Boolean.TRUE);
+        AsrWebSocketClient asrClient = (AsrWebSocketClient) session.getAttributes().get("asrClient");
+
+        ObjectNode message = AsrUpstreamConnection.MAPPER.createObjectNode()
+                .put("event", "reconnect")
+                .put("delay_ms", delay.toMillis());
+        ObjectNode resume = message.putObject("resume");
+        if (asrClient != null) resume.put("language", asrClient.getLanguage());
+        AudioDecoderPool.Lease decoder = (AudioDecoderPool.Lease) session.getAttributes().get("decoder");
+        if (decoder != null) {
+            resume.put("codec", decoder.format().codec().wireName())
+                    .put("sample_rate", decoder.format().sampleRate());
+        }
+        try {
+            send(session, protocol(session).event(message));
+        } catch (IOException e) {
+            log.warn("[AsrWebSocketHandler] Reconnect message failed session={} error={}", session.getId(), e.toString());
+        }
+
+        if (asrClient != null) asrClient.endOfSpeech();
+        log.info("[AsrWebSocketHandler] Session redirected session={} user={} delay={}ms",
+                session.getId(), session.getAttributes().get("username"), delay.toMillis());
+    }
+
+    private ClientMessage backpressure(WebSocketSession session, String state) {
+        return protocol(session).event(AsrUpstreamConnection.MAPPER.createObjectNode()
+                .put("event", "backpressure")
+                .put("state", state));
+    }
+
+    private static ClientProtocol protocol(WebSocketSession session) {
+        return (ClientProtocol) session.getAttributes().get("protocol");
+    }
+
+    /** In the client's protocol version, through {@link #outbound} */
+    private void send(WebSocketSession session, ClientMessage message) throws IOException {
+        outbound(session).sendMessage(message.toMessage());
+    }
+
+    /** Writes share the relay's decorated session so they never race a transcript delivery */
+    private WebSocketSession outbound(WebSocketSession session) {
+        TranscriptRelay relay = (TranscriptRelay) session.getAttributes().get("relay");
+        return relay != null ? relay.session() : session;
+    }
+
+    private void closeSession(WebSocketSession session, String reason, CloseReason cause) {
+        closeSession(session, CloseStatus.NORMAL.withReason(reason), cause);
     }
 
-    private void closeSession(WebSocketSession session, String reason) {
+    private void closeSession(WebSocketSession session, CloseStatus status, CloseReason cause) {
+        session.getAttributes().putIfAbsent("closeReason", cause);
         try {
             if (session.isOpen()) {
-                session.close(CloseStatus.NORMAL.withReason(reason));
+                session.close(status);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warn("[AsrWebSocketHandler] Close failed session={} error={}", session.getId(), e.toString());
         }
     }
 }
@@ -0,0 +1,156 @@
+package com.realmaverick.websocket.filter;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.external_api.AsrConnectionPool;
+import com.realmaverick.websocket.session.SessionDrainer;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for upgrade requests, ahead of the JWT check, so a reconnect storm after a deploy or a
+ * network blip is turned away cheaply instead of saturating token verification and the ASR backend.
+ *
+ * At most {@code asr.admission.max-concurrent-handshakes} upgrades are in progress at once (503), and
+ * {@code asr.admission.handshake-rate} are accepted per second with a burst allowance (429). Both limits
+ * shrink while upstream handshakes take longer than {@code asr.admission.upstream-connect-target}, in
+ * proportion to the overrun. Refused clients get a {@code Retry-After} with jitter, so their retries do not
+ * arrive together again. A draining node refuses every upgrade with 503.
+ */
+@Slf4j
+@Component
+public class HandshakeAdmissionInterceptor implements HandshakeInterceptor {
+
+    /** Bucket tokens per handshake at full share, so the cost can grow in fine steps as the share shrinks */
+    private static final long TOKENS_PER_HANDSHAKE = 1_000;
+
+    private final AsrProperties.Admission properties;
+    private final AsrConnectionPool connectionPool;
+    private final SessionDrainer drainer;
+    private final Bucket bucket;
+    private final long bucketCapacity;
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final Counter throttled;
+    private final Counter overloaded;
+    private final Counter draining;
+
+    public HandshakeAdmissionInterceptor(AsrProperties properties, AsrConnectionPool connectionPool,
+                                         SessionDrainer drainer, MeterRegistry meterRegistry) {
+        this.properties = properties.getAdmission();
+        this.connectionPool = connectionPool;
+        this.drainer = drainer;
+        this.bucketCapacity = Math.max(1, this.properties.getHandshakeBurst()) * TOKENS_PER_HANDSHAKE;
+        this.bucket = Bucket.builder()
+                .addLimit(Bandwidth.classic(bucketCapacity, Refill.greedy(
+                        Math.max(1, this.properties.getHandshakeRate()) * TOKENS_PER_HANDSHAKE, Duration.ofSeconds(1))))
+                .build();
+
+        this.throttled = Counter.builder("asr.handshakes.rejected")
+                .description("Upgrade requests refused by admission control")
+                .tag("reason", "rate")
+                .register(meterRegistry);
+        this.overloaded = Counter.builder("asr.handshakes.rejected")
+                .description("Upgrade requests refused by admission control")
+                .tag("reason", "concurrency")
+                .register(meterRegistry);
+        this.draining = Counter.builder("asr.handshakes.rejected")
+                .description("Upgrade requests refused by admission control")
+                .tag("reason", "draining")
+                .register(meterRegistry);
+        Gauge.builder("asr.handshakes.pending", inProgress, AtomicInteger::get)
+                .description("Upgrade requests being authenticated and upgraded")
+                .register(meterRegistry);
+        Gauge.builder("asr.handshakes.admission.share", this, HandshakeAdmissionInterceptor::share)
+                .description("Fraction of the configured handshake limits in force, lowered by slow upstream handshakes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request,
+                                   ServerHttpResponse response,
+                                   WebSocketHandler wsHandler,
+                                   Map<String, Object> attributes) {
+        HttpStatus refused = tryAdmit(response.getHeaders());
+        if (refused == null) return true;
+        response.setStatusCode(refused);
+        return false;
+    }
+
+    /** Called for every admitted request, whether or not a later interceptor or the upgrade failed */
+    @Override
+    public void afterHandshake(ServerHttpRequest request,
+                               ServerHttpResponse response,
+                               WebSocketHandler wsHandler,
+                               Exception exception) {
+        release();
+    }
+
+    /**
+     * Admit a handshake, which then counts as in progress until {@link #release()}. Shared with the reactive
+     * runtime, whose upgrade goes through a WebFlux {@code WebSocketService}.
+     *
+     * @return null if admitted, else the status to refuse it with; {@code Retry-After} is set on the headers
+     */
+    public HttpStatus tryAdmit(HttpHeaders responseHeaders) {
+        if (drainer.isDraining()) {
+            draining.increment();
+            return refuse(responseHeaders, HttpStatus.SERVICE_UNAVAILABLE, 1);
+        }
+        double share = share();
+
+        int limit = Math.max(1, (int) (properties.getMaxConcurrentHandshakes() * share));
+        if (inProgress.incrementAndGet() > limit) {
+            inProgress.decrementAndGet();
+            overloaded.increment();
+            return refuse(responseHeaders, HttpStatus.SERVICE_UNAVAILABLE, 1);
+        }
+
+        long cost = Math.min(bucketCapacity, (long) Math.ceil(TOKENS_PER_HANDSHAKE / share));
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(cost);
+        if (!probe.isConsumed()) {
+            inProgress.decrementAndGet();
+            throttled.increment();
+            return refuse(responseHeaders, HttpStatus.TOO_MANY_REQUESTS,
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + 999_999_999)));
+        }
+        return null;
+    }
+
+    public void release() {
+        inProgress.decrementAndGet();
+    }
+
+    /** 1 while upstream handshakes are within target, else target / latency, never below the minimum share */
+    double share() {
+        long latency = connectionPool.recentConnectLatencyNanos(properties.getUpstreamLatencyWindow().toNanos());
+        long target = properties.getUpstreamConnectTarget().toNanos();
+        if (latency <= target) return 1;
+        return Math.max(properties.getMinimumShare(), (double) target / latency);
+    }
+
+    private HttpStatus refuse(HttpHeaders responseHeaders, HttpStatus status, long waitSeconds) {
+        long jitter = properties.getRetryAfterJitter().toSeconds();
+        long retryAfter = waitSeconds + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        responseHeaders.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        log.debug("[HandshakeAdmissionInterceptor] Refused upgrade status={} retryAfter={}s", status.value(), retryAfter);
+        return status;
+    }
+}
@@ -1,7 +1,9 @@
 package com.realmaverick.websocket.filter;
 
 import com.realmaverick.websocket.security.JwtTokenService;
+import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -9,13 +11,21 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Component
 @Slf4j
 public class JwtHandshakeInterceptor implements HandshakeInterceptor {
 
+    /** Session attribute: {@link System#nanoTime()} when the upgrade request arrived, for the handshake latency metric */
+    public static final String HANDSHAKE_START = "handshakeStartNanos";
+
+    /** Session attribute: the {@code resume} query parameter of a client reconnecting to its stream */
+    public static final String RESUME_TOKEN = "resumeToken";
+
     private final JwtTokenService jwtTokenService;
 
     public JwtHandshakeInterceptor(JwtTokenService jwtTokenService) {
@@ -28,30 +38,43 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
                                    WebSocketHandler wsHandler,
                                    Map<String, Object> attributes) throws Exception {
 
+        attributes.put(HANDSHAKE_START, System.nanoTime());
+        if (authenticate(request.getHeaders(), request.getURI(), attributes)) {
+            return true;
+        }
+
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        return false;
+    }
+
+    /**
+     * Verify the upgrade request's JWT and put the user, roles and resume token into {@code attributes}.
+     * Shared with the reactive runtime, whose upgrade goes through a WebFlux {@code WebSocketService}.
+     *
+     * @return false if there is no valid token
+     */
+    public boolean authenticate(HttpHeaders headers, URI uri, Map<String, Object> attributes) {
         String token = null;
 
         // Try getting token from Authorization header first
-        List<String> authHeaders = request.getHeaders().get("Authorization");
+        List<String> authHeaders = headers.get("Authorization");
         if(authHeaders != null && !authHeaders.isEmpty() && authHeaders.get(0).startsWith("Bearer ")) {
             token = authHeaders.get(0).substring(7);
-        } else if (request.getURI().getQuery() != null) {
+        } else {
             // fallback: read token from query param
-            String query = request.getURI().getQuery();
-            for (String param : query.split("&")) {
-                if (param.startsWith("token=")) {
-                    token = param.split("=")[1];
-                    break;
-                }
-            }
+            token = queryParam(uri, "token");
         }
 
-        if (token != null && jwtTokenService.validateToken(token)) {
-            String username = jwtTokenService.extractUsername(token);
-            attributes.put("username", username);
+        // one verification per token; repeats within its lifetime are served from the cache
+        Optional<Claims> claims = token != null ? jwtTokenService.verify(token) : Optional.empty();
+        if (claims.isPresent() && claims.get().getSubject() != null) {
+            attributes.put("username", claims.get().getSubject());
+            attributes.put("roles", jwtTokenService.extractRoles(claims.get()));
+
+            String resumeToken = queryParam(uri, "resume");
+            if (resumeToken != null) attributes.put(RESUME_TOKEN, resumeToken);
             return true;
         }
-
-        response.setStatusCode(HttpStatus.UNAUTHORIZED);
         return false;
     }
 
@@ -64,4 +87,15 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
             Exception ex) {
         // no-op
     }
+
+    private static String queryParam(URI uri, String name) {
+        String query = uri.getQuery();
+        if (query == null) return null;
+        for (String param : query.split("&")) {
+            if (param.startsWith(name + "=")) {
+                return param.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,218 @@
+package com.realmaverick.websocket.metrics;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gateway meters, exported through Actuator at {@code /actuator/prometheus}.
+ *
+ * Every meter is registered up front and held in a field, so the per-frame calls ({@link #audioIn(int)},
+ * {@link #audioOut(int)}) are a counter increment with no registry lookup, tag array or boxing. The
+ * per-session calls may allocate.
+ */
+@Component
+public class AsrMetrics {
+
+    /** Why a client session ended, the {@code reason} tag of {@code asr.sessions.closed} */
+    public enum CloseReason {
+        /** The client closed or the connection dropped */
+        CLIENT,
+        /** The client sent a {@code stop} event */
+        STOPPED,
+        IDLE,
+        MAX_DURATION,
+        RATE_LIMIT,
+        TOO_MANY_SESSIONS,
+        UNAUTHORIZED,
+        /** Told to reconnect elsewhere while this node drained */
+        DRAINED,
+        /** Closed with an error status by the container, e.g. a transport error or a client that stopped reading */
+        ERROR;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final boolean perUserSessions;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final Map<String, UserSessions> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<CloseReason, Counter> closures = new EnumMap<>(CloseReason.class);
+
+    private final Counter framesIn;
+    private final Counter bytesIn;
+    private final Counter framesOut;
+    private final Counter bytesOut;
+    private final Counter rateLimited;
+    private final Counter resumed;
+    private final Counter silenceSkipped;
+    private final Timer handshake;
+    private final Timer firstTranscript;
+    private final Timer upstreamConnect;
+
+    public AsrMetrics(MeterRegistry registry, AsrProperties properties) {
+        this.registry = registry;
+        this.perUserSessions = properties.getMetrics().isPerUserSessions();
+
+        Gauge.builder("asr.sessions.active", activeSessions, AtomicInteger::get)
+                .description("Client sessions streaming audio on this node")
+                .register(registry);
+        Gauge.builder("asr.sessions.active.user.max", sessionsByUser, AsrMetrics::busiestUser)
+                .description("Sessions held by the user with the most sessions on this node")
+                .register(registry);
+        for (CloseReason reason : CloseReason.values()) {
+            closures.put(reason, Counter.builder("asr.sessions.closed")
+                    .description("Client sessions ended, by reason")
+                    .tag("reason", reason.tag)
+                    .register(registry));
+        }
+
+        this.framesIn = audioFrames("in", "Audio frames received from clients");
+        this.bytesIn = audioBytes("in", "Audio received from clients");
+        this.framesOut = audioFrames("out", "Audio packets sent to the ASR backend");
+        this.bytesOut = audioBytes("out", "Audio sent to the ASR backend");
+
+        this.resumed = Counter.builder("asr.sessions.resumed")
+                .description("Reconnects that took over the stream of their dropped connection")
+                .register(registry);
+
+        this.rateLimited = Counter.builder("asr.ratelimit.rejected")
+                .description("Audio frames refused by a user's rate limit; each one closes its session")
+                .register(registry);
+
+        this.silenceSkipped = Counter.builder("asr.vad.skipped")
+                .description("Silent audio not sent to the ASR backend")
+                .baseUnit("bytes")
+                .register(registry);
+
+        this.handshake = latency("asr.session.handshake",
+                "From the WebSocket upgrade request to the session being bound to an upstream stream",
+                Duration.ofMillis(1), Duration.ofSeconds(10));
+        this.firstTranscript = latency("asr.transcript.first",
+                "From a session's first audio frame to its first transcript from the ASR backend",
+                Duration.ofMillis(10), Duration.ofSeconds(30));
+        this.upstreamConnect = latency("asr.upstream.connect",
+                "WebSocket handshakes with the ASR backend",
+                Duration.ofMillis(1), Duration.ofSeconds(30));
+    }
+
+    // ---------------- Per frame: allocation-free ----------------
+
+    public void audioIn(int bytes) {
+        framesIn.increment();
+        bytesIn.increment(bytes);
+    }
+
+    public void audioOut(int bytes) {
+        framesOut.increment();
+        bytesOut.increment(bytes);
+    }
+
+    public void silenceSkipped(int bytes) {
+        silenceSkipped.increment(bytes);
+    }
+
+    public void rateLimited() {
+        rateLimited.increment();
+    }
+
+    // ---------------- Per session ----------------
+
+    public void sessionOpened(String username, long handshakeNanos) {
+        activeSessions.incrementAndGet();
+        handshake.record(handshakeNanos, TimeUnit.NANOSECONDS);
+        sessionsByUser.compute(username, (user, sessions) -> {
+            if (sessions == null) sessions = new UserSessions(user);
+            sessions.count++;
+            return sessions;
+        });
+    }
+
+    /** @param opened whether {@link #sessionOpened} was called for it; rejected sessions only count as closures */
+    public void sessionClosed(String username, boolean opened, CloseReason reason) {
+        closures.get(reason).increment();
+        if (!opened) return;
+
+        activeSessions.decrementAndGet();
+        sessionsByUser.computeIfPresent(username, (user, sessions) -> {
+            if (--sessions.count > 0) return sessions;
+            if (sessions.gauge != null) registry.remove(sessions.gauge);
+            return null;
+        });
+    }
+
+    public void sessionResumed() {
+        resumed.increment();
+    }
+
+    public void firstTranscript(long nanos) {
+        firstTranscript.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void upstreamConnected(long nanos) {
+        upstreamConnect.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // ---------------- Helpers ----------------
+
+    /** Session count of one user; only changed inside {@link ConcurrentHashMap#compute} for its key */
+    private final class UserSessions {
+
+        private volatile int count;
+        private final Gauge gauge;
+
+        UserSessions(String username) {
+            this.gauge = perUserSessions
+                    ? Gauge.builder("asr.sessions.active.user", this, sessions -> sessions.count)
+                            .description("Client sessions streaming audio on this node, per user")
+                            .tag("user", username)
+                            .strongReference(true)
+                            .register(registry)
+                    : null;
+        }
+    }
+
+    private static double busiestUser(Map<String, UserSessions> sessionsByUser) {
+        int max = 0;
+        for (UserSessions sessions : sessionsByUser.values()) {
+            max = Math.max(max, sessions.count);
+        }
+        return max;
+    }
+
+    private Counter audioFrames(String direction, String description) {
+        return Counter.builder("asr.audio.frames")
+                .description(description)
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private Counter audioBytes(String direction, String description) {
+        return Counter.builder("asr.audio.bytes")
+                .description(description)
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private Timer latency(String name, String description, Duration min, Duration max) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(min)
+                .maximumExpectedValue(max)
+                .register(registry);
+    }
+}
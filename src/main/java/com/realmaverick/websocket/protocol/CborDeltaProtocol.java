@@ -0,0 +1,130 @@
+package com.realmaverick.websocket.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.realmaverick.websocket.transcript.Transcript;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@value ClientProtocol#V2}. Transcripts become
+ * {@code {"event":"partial","keep":3,"words":["to","the"],"times":[900,1100,1100,1240]}}: keep the first
+ * {@code keep} words of the previous partial and append {@code words}. A final, {@code {"event":"final","words":[..]}},
+ * carries all its words and starts the next utterance from nothing. {@code times} holds a start and end in
+ * milliseconds per word, when the backend reports word timings, and {@code audio_ms} is passed through.
+ *
+ * Keys stay readable: with permessage-deflate they repeat in every message and cost almost nothing.
+ */
+class CborDeltaProtocol extends ClientProtocol {
+
+    /** Thread-safe once configured */
+    private static final CBORMapper CBOR = new CBORMapper();
+
+    private record Word(String text, long start, long end) {
+    }
+
+    /** Words of the last partial sent, empty after a final */
+    private List<Word> previous = List.of();
+
+    @Override
+    public String version() {
+        return V2;
+    }
+
+    @Override
+    public ClientMessage transcript(Transcript upstream) {
+        JsonNode node = upstream.json();
+        if (node == null || !node.isObject() || !node.has("text")) {
+            ObjectNode message = CBOR.createObjectNode().put("event", "upstream");
+            if (node != null && node.isObject()) {
+                message.set("data", node);
+            } else {
+                message.put("text", upstream.raw());
+            }
+            return encode(message);
+        }
+
+        boolean isFinal = node.path("is_final").asBoolean(false);
+        boolean timed = node.path("words").isArray();
+        List<Word> words = words(node, timed);
+
+        ObjectNode message = CBOR.createObjectNode().put("event", isFinal ? "final" : "partial");
+        int keep = 0;
+        if (!isFinal) {
+            int common = Math.min(words.size(), previous.size());
+            while (keep < common && words.get(keep).equals(previous.get(keep))) keep++;
+            message.put("keep", keep);
+        }
+        previous = isFinal ? List.of() : words;
+
+        ArrayNode text = message.putArray("words");
+        ArrayNode times = timed ? message.putArray("times") : null;
+        for (Word word : words.subList(keep, words.size())) {
+            text.add(word.text());
+            if (times != null) times.add(word.start()).add(word.end());
+        }
+        if (node.has("audio_ms")) message.put("audio_ms", node.get("audio_ms").asLong());
+        return encode(message);
+    }
+
+    @Override
+    public void partialDropped() {
+        previous = List.of();
+    }
+
+    @Override
+    public ClientMessage event(ObjectNode event) {
+        return encode(event);
+    }
+
+    @Override
+    public ClientMessage ack(String text) {
+        return encode(CBOR.createObjectNode().put("event", "ack").put("text", text));
+    }
+
+    @Override
+    public ClientMessage languageSet(String code) {
+        return encode(CBOR.createObjectNode().put("event", "lang").put("code", code));
+    }
+
+    @Override
+    public ClientMessage unknownEvent(String event) {
+        return error("unknown_event", "Unknown event: " + event);
+    }
+
+    @Override
+    public ClientMessage error(String code, String message) {
+        return encode(CBOR.createObjectNode().put("event", "error").put("code", code).put("message", message));
+    }
+
+    /**
+     * Words with timings from {@code words}, as the backend reports them ({@code [{"word":..,"start_time":..,"end_time":..}]},
+     * in milliseconds), else the text split on whitespace
+     */
+    private static List<Word> words(JsonNode node, boolean timed) {
+        List<Word> words = new ArrayList<>();
+        if (timed) {
+            for (JsonNode word : node.get("words")) {
+                words.add(new Word(word.path("word").asText(), word.path("start_time").asLong(), word.path("end_time").asLong()));
+            }
+            return words;
+        }
+        for (String word : node.get("text").asText().trim().split("\\s+")) {
+            if (!word.isEmpty()) words.add(new Word(word, 0, 0));
+        }
+        return words;
+    }
+
+    private static ClientMessage encode(ObjectNode message) {
+        try {
+            return ClientMessage.binary(CBOR.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
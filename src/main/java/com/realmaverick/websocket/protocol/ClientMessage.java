@@ -0,0 +1,26 @@
+package com.realmaverick.websocket.protocol;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/** One message for the client, encoded by its {@link ClientProtocol}: text, or a binary frame when {@link #binary} is set */
+public record ClientMessage(String text, byte[] binary) {
+
+    static ClientMessage text(String text) {
+        return new ClientMessage(text, null);
+    }
+
+    static ClientMessage binary(byte[] binary) {
+        return new ClientMessage(null, binary);
+    }
+
+    public boolean isBinary() {
+        return binary != null;
+    }
+
+    /** As a message of the servlet runtime */
+    public WebSocketMessage<?> toMessage() {
+        return isBinary() ? new BinaryMessage(binary) : new TextMessage(text);
+    }
+}
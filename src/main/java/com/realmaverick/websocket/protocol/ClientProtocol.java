@@ -0,0 +1,60 @@
+package com.realmaverick.websocket.protocol;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.transcript.Transcript;
+
+import java.util.List;
+
+/**
+ * Encodes what a session sends its client, in the protocol version the client asked for as a WebSocket
+ * subprotocol at the upgrade:
+ * <ul>
+ *   <li>{@value #V1}, also when the client asks for none: upstream transcripts as they arrive, JSON events, and
+ *   plain-text replies such as {@code Language set to: hi-IN}.</li>
+ *   <li>{@value #V2}: every message a binary CBOR map with an {@code event}. Transcripts are split into words with
+ *   their timings, and a partial carries only the words that changed since the partial before it.</li>
+ * </ul>
+ * Control messages from the client are JSON text in both versions.
+ *
+ * An instance belongs to one session. {@link #transcript} keeps state between calls and must be called in the
+ * order the messages are sent; the other methods are thread-safe.
+ */
+public abstract class ClientProtocol {
+
+    public static final String V1 = "asr.v1";
+
+    public static final String V2 = "asr.v2";
+
+    /** Offered at the upgrade, newest first */
+    public static final List<String> SUBPROTOCOLS = List.of(V2, V1);
+
+    /** @param subprotocol the one accepted at the upgrade, null or empty if the client asked for none */
+    public static ClientProtocol forSubprotocol(String subprotocol) {
+        return V2.equals(subprotocol) ? new CborDeltaProtocol() : new TextProtocol();
+    }
+
+    public abstract String version();
+
+    /** A message from the ASR backend, usually {@code {"text":..,"is_final":..}} */
+    public abstract ClientMessage transcript(Transcript upstream);
+
+    /** The last partial encoded was never sent, so the next one must not be a delta against it */
+    public void partialDropped() {
+    }
+
+    /** {@code {"event":..}} notices: session, format, backpressure, reconnect */
+    public abstract ClientMessage event(ObjectNode event);
+
+    /** Reply to a client text message that is not a control message */
+    public abstract ClientMessage ack(String text);
+
+    public abstract ClientMessage languageSet(String code);
+
+    public abstract ClientMessage unknownEvent(String event);
+
+    /**
+     * @param code stable identifier for clients to act on, e.g. {@code rate_limit}
+     * @param message human-readable detail
+     */
+    public abstract ClientMessage error(String code, String message);
+}
@@ -0,0 +1,46 @@
+package com.realmaverick.websocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.transcript.Transcript;
+
+/** {@value ClientProtocol#V1}: the messages clients got before protocol versions were negotiated, unchanged */
+class TextProtocol extends ClientProtocol {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public String version() {
+        return V1;
+    }
+
+    @Override
+    public ClientMessage transcript(Transcript upstream) {
+        return ClientMessage.text(upstream.raw());
+    }
+
+    @Override
+    public ClientMessage event(ObjectNode event) {
+        return ClientMessage.text(event.toString());
+    }
+
+    @Override
+    public ClientMessage ack(String text) {
+        return ClientMessage.text("Server ACK: " + text);
+    }
+
+    @Override
+    public ClientMessage languageSet(String code) {
+        return ClientMessage.text("Language set to: " + code);
+    }
+
+    @Override
+    public ClientMessage unknownEvent(String event) {
+        return ClientMessage.text("Unknown event: " + event);
+    }
+
+    @Override
+    public ClientMessage error(String code, String message) {
+        return ClientMessage.text(MAPPER.createObjectNode().put("error", message).toString());
+    }
+}
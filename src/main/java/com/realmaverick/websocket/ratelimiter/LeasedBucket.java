@@ -0,0 +1,41 @@
+package com.realmaverick.websocket.ratelimiter;
+
+import com.realmaverick.websocket.registry.SessionRegistry;
+
+/**
+ * This node's share of a user's rate limit. Tokens are leased from the {@link SessionRegistry} in batches
+ * and spent locally, so a distributed registry is only consulted once per batch instead of once per frame.
+ * At most one unspent batch per node is held back from the rest of the cluster.
+ */
+public class LeasedBucket {
+
+    private final SessionRegistry registry;
+    private final String key;
+    private final RateLimitPlan plan;
+    private final long batchSize;
+
+    /** Leased and not yet spent; guarded by this */
+    private long available;
+
+    public LeasedBucket(SessionRegistry registry, String key, RateLimitPlan plan, long batchSize) {
+        this.registry = registry;
+        this.key = key;
+        this.plan = plan;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public RateLimitPlan plan() {
+        return plan;
+    }
+
+    public synchronized boolean tryConsume(long tokens) {
+        if (available < tokens) {
+            available += registry.leaseTokens(key, Math.max(batchSize, tokens - available), plan);
+        }
+        if (available < tokens) {
+            return false;
+        }
+        available -= tokens;
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package com.realmaverick.websocket.ratelimiter;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Token bucket shape: up to {@code capacity} tokens, refilled greedily at {@code capacity} per {@code period}.
+ * A token is one millisecond of audio (see {@link RateLimiterService#tokensFor(int, int)}).
+ * Serializable so a distributed {@link com.realmaverick.websocket.registry.SessionRegistry} can ship it to
+ * the member that owns the bucket.
+ */
+public record RateLimitPlan(long capacity, Duration period) implements Serializable {
+
+    /** Tokens refilled per second, for comparing plans */
+    public double ratePerSecond() {
+        return capacity * 1000.0 / period.toMillis();
+    }
+}
@@ -1,20 +1,73 @@
 package com.realmaverick.websocket.ratelimiter;
 
-import io.github.bucket4j.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.registry.SessionRegistry;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Per-user audio budgets. Limits are counted in milliseconds of audio rather than messages, so a client
+ * sending 10 ms frames and one sending 5 s blobs are held to the same rate.
+ *
+ * Buckets on this node are dropped after {@code asr.rate-limit.bucket-idle-timeout} without a new session,
+ * and beyond {@code asr.rate-limit.max-buckets} users, so memory stays flat however many users come and go.
+ * A session keeps the bucket it was given; dropping it only forfeits the unspent part of its leased batch,
+ * as the registry holds the user's actual balance.
+ */
 @Service
 public class RateLimiterService {
-    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
-
-    public Bucket resolveBucket(String username) {
-        return buckets.computeIfAbsent(username, key ->
-                Bucket4j.builder()
-                        .addLimit(Bandwidth.classic(100, Refill.greedy(100, Duration.ofMinutes(1)))) // 100 requests/min
-                        .build()
-        );
+
+    private final Cache<String, LeasedBucket> buckets;
+
+    private final SessionRegistry registry;
+    private final RateLimitPlan defaultPlan;
+    private final Map<String, RateLimitPlan> rolePlans = new HashMap<>();
+    private final long leaseBatch;
+
+    public RateLimiterService(SessionRegistry registry, AsrProperties properties) {
+        AsrProperties.RateLimit rateLimit = properties.getRateLimit();
+        this.registry = registry;
+        this.defaultPlan = new RateLimitPlan(rateLimit.getAudio().toMillis(), rateLimit.getPeriod()); // 70 s of audio/min by default
+        rateLimit.getRoles().forEach((role, plan) ->
+                rolePlans.put(role.replaceFirst("^ROLE_", ""), new RateLimitPlan(plan.getAudio().toMillis(), plan.getPeriod())));
+        this.leaseBatch = rateLimit.getLeaseBatch().toMillis();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(rateLimit.getMaxBuckets())
+                .expireAfterAccess(rateLimit.getBucketIdleTimeout())
+                .build();
+    }
+
+    /**
+     * Tokens charged for one frame: its duration in milliseconds at {@code bytesPerSecond}, rounded up, so
+     * every frame costs at least one token.
+     */
+    public static long tokensFor(int bytes, int bytesPerSecond) {
+        return (bytes * 1000L + bytesPerSecond - 1) / bytesPerSecond;
+    }
+
+    /** The most generous plan among {@code roles}, or the default plan if none of them has one */
+    public RateLimitPlan planFor(Collection<String> roles) {
+        RateLimitPlan best = null;
+        for (String role : roles) {
+            RateLimitPlan plan = rolePlans.get(role.replaceFirst("^ROLE_", ""));
+            if (plan != null && (best == null || plan.ratePerSecond() > best.ratePerSecond())) {
+                best = plan;
+            }
+        }
+        return best != null ? best : defaultPlan;
+    }
+
+    /** One bucket per user on this node, drawing on the user's cluster-wide budget */
+    public LeasedBucket resolveBucket(String username, Collection<String> roles) {
+        RateLimitPlan plan = planFor(roles);
+        // a user whose roles changed since their last session starts on the new plan
+        return buckets.asMap().compute(username, (key, bucket) -> bucket != null && bucket.plan().equals(plan)
+                ? bucket
+                : new LeasedBucket(registry, key, plan, leaseBatch));
     }
-}
\ No newline at end of file
+}
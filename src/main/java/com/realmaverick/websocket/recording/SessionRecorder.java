@@ -0,0 +1,308 @@
+package com.realmaverick.websocket.recording;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.transcript.Transcript;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Records the audio sent upstream and the transcripts of a sampled share of sessions, for QA and model
+ * training.
+ *
+ * The session threads only copy each frame into a pooled buffer and offer it to a bounded queue. One writer
+ * thread drains the queue in batches and appends through {@link FileChannel}s, gathering consecutive frames
+ * of a session into a single write. When the queue is full a frame is left out of the recording rather than
+ * slowing the session, and the gap is reported in the recording's last line.
+ *
+ * A recording is a directory under {@code asr.recording.directory} named after the session, with
+ * {@code audio-NNN.wav} segments of up to {@code asr.recording.segment-duration} and a
+ * {@code transcripts.jsonl} whose lines carry the audio position each transcript arrived at. A segment's WAV
+ * sizes are written when it is closed. While the directory holds {@code asr.recording.max-disk-usage}, open
+ * recordings are finished and no new ones start; it is measured again every minute, so moving files away
+ * resumes recording.
+ */
+@Slf4j
+@Component
+public class SessionRecorder {
+
+    private static final int MAX_BATCH = 256;
+    private static final long POLL_MILLIS = 100;
+    private static final long RESCAN_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** One queued write; a close when it carries neither audio nor a transcript */
+    private record Entry(SessionRecording recording, ByteBuffer audio, Transcript transcript, long atNanos) {
+    }
+
+    private final AsrProperties.Recording properties;
+    private final AudioBufferPool bufferPool;
+    private final AsrThreads threads;
+    private final Path directory;
+    private final int sampleRate;
+    private final long segmentBytes;
+    private final long maxDiskBytes;
+    private final BlockingQueue<Entry> queue;
+
+    private volatile boolean running;
+    private volatile boolean full;
+    private Thread writer;
+
+    // ---------------- Writer thread only ----------------
+
+    private final List<Entry> batch = new ArrayList<>(MAX_BATCH);
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_BATCH];
+    private final Set<SessionRecording> open = new HashSet<>();
+    private long diskUsage;
+    private long measuredAt;
+
+    public SessionRecorder(AsrProperties properties, AudioBufferPool bufferPool, AsrThreads threads) {
+        this.properties = properties.getRecording();
+        this.bufferPool = bufferPool;
+        this.threads = threads;
+        this.directory = Paths.get(this.properties.getDirectory()).toAbsolutePath();
+        this.sampleRate = properties.getAudio().getSampleRate();
+        // whole 16-bit samples, and well inside the 4 GiB a WAV header can describe
+        this.segmentBytes = Math.min(this.properties.getSegmentDuration().toMillis() * sampleRate / 1000, Integer.MAX_VALUE / 2) * 2;
+        this.maxDiskBytes = this.properties.getMaxDiskUsage().toBytes();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, this.properties.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!properties.isEnabled()) return;
+
+        Files.createDirectories(directory);
+        diskUsage = measure();
+        full = diskUsage >= maxDiskBytes;
+        measuredAt = System.nanoTime();
+        if (full) {
+            log.warn("[SessionRecorder] {} already holds {} MB, recording paused", directory, diskUsage >> 20);
+        }
+
+        running = true;
+        writer = threads.threadFactory("asr-recorder-").newThread(this::run);
+        writer.start();
+        log.info("[SessionRecorder] Recording {}% of sessions to {}", properties.getSessionFraction() * 100, directory);
+    }
+
+    /** Write out what is queued and finish every open recording */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /** @return a recording for this session if it is sampled, else null */
+    public SessionRecording startRecording(String sessionId, String username) {
+        if (!running || full || ThreadLocalRandom.current().nextDouble() >= properties.getSessionFraction()) {
+            return null;
+        }
+        log.info("[SessionRecorder] Recording session={} user={}", sessionId, username);
+        return new SessionRecording(this, sessionId, username);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    int sampleRate() {
+        return sampleRate;
+    }
+
+    long segmentBytes() {
+        return segmentBytes;
+    }
+
+    // ---------------- Session threads: never block ----------------
+
+    void offerAudio(SessionRecording recording, ByteBuffer pcm16) {
+        int bytes = pcm16.remaining();
+        if (queue.remainingCapacity() == 0) {
+            recording.dropped(bytes);
+            return;
+        }
+        ByteBuffer copy = bufferPool.acquire(bytes);
+        copy.put(0, pcm16, pcm16.position(), bytes).limit(bytes);
+        if (!queue.offer(new Entry(recording, copy, null, 0))) {
+            bufferPool.release(copy);
+            recording.dropped(bytes);
+        }
+    }
+
+    void offerTranscript(SessionRecording recording, Transcript transcript) {
+        if (!queue.offer(new Entry(recording, null, transcript, System.nanoTime()))) {
+            recording.droppedTranscript();
+        }
+    }
+
+    void offerClose(SessionRecording recording) {
+        // a close that does not fit is picked up once the queue has drained
+        queue.offer(new Entry(recording, null, null, 0));
+    }
+
+    // ---------------- Writer thread ----------------
+
+    private void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    finishClosed();
+                    if (full) remeasure();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                write();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("[SessionRecorder] Writer stopped", e);
+        } finally {
+            for (Entry entry : batch) bufferPool.release(entry.audio());
+            batch.clear();
+            for (SessionRecording recording : open) finish(recording, "shutdown");
+            open.clear();
+            running = false;
+        }
+    }
+
+    private void write() {
+        int size = batch.size();
+        int i = 0;
+        while (i < size) {
+            Entry entry = batch.get(i);
+            SessionRecording recording = entry.recording();
+
+            if (entry.audio() != null) {
+                // consecutive frames of one session go out in one gathering write
+                int count = 0;
+                long bytes = 0;
+                while (i < size && batch.get(i).recording() == recording && batch.get(i).audio() != null) {
+                    gather[count] = batch.get(i).audio();
+                    bytes += gather[count].remaining();
+                    count++;
+                    i++;
+                }
+                if (admit(recording, bytes)) {
+                    try {
+                        diskUsage += recording.writeAudio(gather, count);
+                    } catch (IOException e) {
+                        fail(recording, e);
+                    }
+                }
+                for (int j = 0; j < count; j++) {
+                    bufferPool.release(gather[j]);
+                    gather[j] = null;
+                }
+                continue;
+            }
+
+            if (entry.transcript() != null) {
+                if (admit(recording, entry.transcript().raw().length())) {
+                    try {
+                        diskUsage += recording.writeTranscript(entry.transcript(), entry.atNanos());
+                    } catch (IOException e) {
+                        fail(recording, e);
+                    }
+                }
+            } else if (open.remove(recording)) {
+                finish(recording, "closed");
+            }
+            i++;
+        }
+        batch.clear();
+    }
+
+    /** Whether a write of this size may go ahead; finishes recordings once the disk budget is spent */
+    private boolean admit(SessionRecording recording, long bytes) {
+        if (recording.isFinished()) return false;
+        if (diskUsage + bytes + SessionRecording.WAV_HEADER_BYTES > maxDiskBytes) {
+            if (!full) {
+                full = true;
+                log.warn("[SessionRecorder] {} reached asr.recording.max-disk-usage, recording paused", directory);
+            }
+            for (SessionRecording other : open) finish(other, "disk_full");
+            open.clear();
+            finish(recording, "disk_full");
+            return false;
+        }
+        open.add(recording);
+        return true;
+    }
+
+    /** Sessions whose close did not fit in the queue; everything they queued has been written by now */
+    private void finishClosed() {
+        open.removeIf(recording -> {
+            if (!recording.isClosed()) return false;
+            finish(recording, "closed");
+            return true;
+        });
+    }
+
+    private void finish(SessionRecording recording, String reason) {
+        try {
+            diskUsage += recording.finish(reason);
+            if (recording.droppedBytes() > 0) {
+                log.warn("[SessionRecorder] Recording session={} lost {} bytes of audio to a full queue",
+                        recording.sessionId(), recording.droppedBytes());
+            }
+        } catch (IOException e) {
+            fail(recording, e);
+        }
+    }
+
+    private void fail(SessionRecording recording, IOException e) {
+        log.warn("[SessionRecorder] Recording session={} abandoned error={}", recording.sessionId(), e.toString());
+        recording.abandon();
+    }
+
+    private void remeasure() {
+        long now = System.nanoTime();
+        if (now - measuredAt < RESCAN_NANOS) return;
+        measuredAt = now;
+        try {
+            diskUsage = measure();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[SessionRecorder] Could not measure {} error={}", directory, e.toString());
+            return;
+        }
+        if (diskUsage < maxDiskBytes) {
+            full = false;
+            log.info("[SessionRecorder] {} down to {} MB, recording resumed", directory, diskUsage >> 20);
+        }
+    }
+
+    private long measure() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return 0; // removed while walking
+                }
+            }).sum();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.realmaverick.websocket.recording;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.transcript.Transcript;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One session's recording. The session's threads call {@link #audio}, {@link #transcript} and {@link #close},
+ * which only enqueue; the files are written by the {@link SessionRecorder}'s writer thread, which alone
+ * touches the fields below the marker.
+ */
+public final class SessionRecording {
+
+    static final int WAV_HEADER_BYTES = 44;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SessionRecorder recorder;
+    private final String sessionId;
+    private final String username;
+    private final long startNanos = System.nanoTime();
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong droppedTranscripts = new AtomicLong();
+    private volatile boolean closed;
+
+    // ---------------- Writer thread only ----------------
+
+    private FileChannel wav;
+    private FileChannel transcripts;
+    private int segment;
+    private long segmentBytes;
+    private long audioBytes;
+    private boolean finished;
+
+    SessionRecording(SessionRecorder recorder, String sessionId, String username) {
+        this.recorder = recorder;
+        this.sessionId = sessionId;
+        this.username = username;
+    }
+
+    /** Copy a PCM16 frame into the recording; the caller keeps the buffer and its position */
+    public void audio(ByteBuffer pcm16) {
+        if (!closed) recorder.offerAudio(this, pcm16);
+    }
+
+    public void transcript(Transcript transcript) {
+        if (!closed) recorder.offerTranscript(this, transcript);
+    }
+
+    /** Finish the recording once what was queued before has been written; later calls are no-ops */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        recorder.offerClose(this);
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void dropped(int bytes) {
+        droppedBytes.addAndGet(bytes);
+    }
+
+    void droppedTranscript() {
+        droppedTranscripts.incrementAndGet();
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    // ---------------- Writes, on the writer thread ----------------
+
+    /** Append frames, starting a new segment whenever the next frame would overflow the current one */
+    long writeAudio(ByteBuffer[] frames, int count) throws IOException {
+        long written = 0;
+        int from = 0;
+        long run = 0;
+        for (int i = 0; i < count; i++) {
+            int bytes = frames[i].remaining();
+            if (wav != null && segmentBytes + run > 0 && segmentBytes + run + bytes > recorder.segmentBytes()) {
+                written += append(frames, from, i, run);
+                from = i;
+                run = 0;
+                finishSegment();
+            }
+            if (wav == null) written += openSegment();
+            run += bytes;
+        }
+        return written + append(frames, from, count, run);
+    }
+
+    long writeTranscript(Transcript message, long atNanos) throws IOException {
+        JsonNode transcript = message.json() != null ? message.json() : MAPPER.getNodeFactory().textNode(message.raw());
+        ObjectNode line = MAPPER.createObjectNode()
+                .put("at_ms", TimeUnit.NANOSECONDS.toMillis(atNanos - startNanos))
+                .put("audio_ms", audioMillis(audioBytes))
+                .put("segment", segment);
+        line.set("transcript", transcript);
+        return writeLine(line);
+    }
+
+    /** Fix up the open segment's header and close the files; the reason goes into the last transcript line */
+    long finish(String reason) throws IOException {
+        if (finished) return 0;
+        finished = true;
+        try {
+            finishSegment();
+            return writeLine(MAPPER.createObjectNode()
+                    .put("event", "end")
+                    .put("reason", reason)
+                    .put("audio_ms", audioMillis(audioBytes))
+                    .put("segments", segment)
+                    .put("dropped_audio_ms", audioMillis(droppedBytes.get()))
+                    .put("dropped_transcripts", droppedTranscripts.get()));
+        } finally {
+            abandon();
+        }
+    }
+
+    /** Close the files without writing anything more, after an I/O error */
+    void abandon() {
+        finished = true;
+        closeQuietly(wav);
+        closeQuietly(transcripts);
+        wav = null;
+        transcripts = null;
+    }
+
+    long droppedBytes() {
+        return droppedBytes.get();
+    }
+
+    private long append(ByteBuffer[] frames, int from, int to, long bytes) throws IOException {
+        if (bytes == 0) return 0;
+        long left = bytes;
+        while (left > 0) {
+            left -= wav.write(frames, from, to - from);
+        }
+        segmentBytes += bytes;
+        audioBytes += bytes;
+        return bytes;
+    }
+
+    private long openSegment() throws IOException {
+        long written = 0;
+        Path directory = recorder.directory().resolve(sessionId);
+        if (transcripts == null) {
+            Files.createDirectories(directory);
+            transcripts = FileChannel.open(directory.resolve("transcripts.jsonl"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            written += writeLine(MAPPER.createObjectNode()
+                    .put("event", "start")
+                    .put("session", sessionId)
+                    .put("user", username)
+                    .put("started_at", startedAt.toString())
+                    .put("sample_rate", recorder.sampleRate()));
+        }
+
+        segment++;
+        segmentBytes = 0;
+        wav = FileChannel.open(directory.resolve(String.format("audio-%03d.wav", segment)),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = wavHeader(recorder.sampleRate(), 0);
+        while (header.hasRemaining()) {
+            wav.write(header);
+        }
+        return written + WAV_HEADER_BYTES;
+    }
+
+    /** Write the real sizes into the header, which a crash leaves at zero */
+    private void finishSegment() throws IOException {
+        if (wav == null) return;
+        try {
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            size.putInt(0, (int) (36 + segmentBytes));
+            wav.write(size, 4);
+            size.clear().putInt(0, (int) segmentBytes);
+            wav.write(size, 40);
+        } finally {
+            wav.close();
+            wav = null;
+        }
+    }
+
+    private long writeLine(ObjectNode line) throws IOException {
+        if (transcripts == null) return 0;
+        ByteBuffer bytes = ByteBuffer.wrap((line.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        int length = bytes.remaining();
+        while (bytes.hasRemaining()) {
+            transcripts.write(bytes);
+        }
+        return length;
+    }
+
+    private long audioMillis(long bytes) {
+        return bytes * 1000 / (recorder.sampleRate() * 2L);
+    }
+
+    /** Canonical 44-byte header of 16-bit mono PCM */
+    static ByteBuffer wavHeader(int sampleRate, long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt((int) (36 + dataBytes))
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) 1)            // PCM
+                .putShort((short) 1)            // mono
+                .putInt(sampleRate)
+                .putInt(sampleRate * 2)         // byte rate
+                .putShort((short) 2)            // block align
+                .putShort((short) 16)           // bits per sample
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataBytes);
+        return header.flip();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already failing or finished
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.realmaverick.websocket.registry;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.realmaverick.websocket.config.AsrProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Starts an embedded Hazelcast member on every node and backs the {@link SessionRegistry} with it.
+ * Only active with {@code asr.registry.type=hazelcast}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "asr.registry.type", havingValue = "hazelcast")
+public class HazelcastRegistryConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public HazelcastInstance asrHazelcastInstance(AsrProperties properties) {
+        return Hazelcast.newHazelcastInstance(hazelcastConfig(properties.getRegistry().getHazelcast()));
+    }
+
+    @Bean
+    public SessionRegistry hazelcastSessionRegistry(HazelcastInstance asrHazelcastInstance, AsrProperties properties) {
+        // sessions never outlive max-duration, so anything older belongs to a node that died
+        return new HazelcastSessionRegistry(asrHazelcastInstance,
+                properties.getSession().getMaxDuration().plus(properties.getRegistry().getSessionTtlGrace()));
+    }
+
+    static Config hazelcastConfig(AsrProperties.Registry.Hazelcast settings) {
+        Config config = new Config();
+        config.setClusterName(settings.getClusterName());
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.getNetworkConfig().setPort(settings.getPort()).setPortAutoIncrement(true);
+
+        // no member list means multicast discovery, fine on a single L2 segment
+        if (!settings.getMembers().isEmpty()) {
+            JoinConfig join = config.getNetworkConfig().getJoin();
+            join.getMulticastConfig().setEnabled(false);
+            join.getAutoDetectionConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true).setMembers(settings.getMembers());
+        }
+        return config;
+    }
+}
@@ -0,0 +1,109 @@
+package com.realmaverick.websocket.registry;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import com.hazelcast.map.IMap;
+import com.realmaverick.websocket.ratelimiter.RateLimitPlan;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide registry on Hazelcast, used with {@code asr.registry.type=hazelcast}.
+ *
+ * Each user's sessions and each rate limit bucket live in one map entry and are changed by entry processors,
+ * so every check-and-update is atomic on the member owning the key and costs one round trip. Sessions of a
+ * node that dies without unregistering are dropped once they are older than {@code sessionTtl}, which is
+ * set just above the maximum session duration. A bucket entry expires one plan period after its last lease,
+ * when it would be full again anyway.
+ */
+public class HazelcastSessionRegistry implements SessionRegistry {
+
+    static final String SESSIONS_MAP = "asr-user-sessions";
+    static final String BUCKETS_MAP = "asr-rate-buckets";
+
+    private final IMap<String, HashMap<String, Long>> sessions;
+    private final IMap<String, TokenState> buckets;
+    private final long sessionTtlMillis;
+
+    public HazelcastSessionRegistry(HazelcastInstance hazelcast, Duration sessionTtl) {
+        this.sessions = hazelcast.getMap(SESSIONS_MAP);
+        this.buckets = hazelcast.getMap(BUCKETS_MAP);
+        this.sessionTtlMillis = sessionTtl.toMillis();
+    }
+
+    @Override
+    public boolean tryRegister(String username, String sessionId, int maxSessions) {
+        return sessions.executeOnKey(username, new Register(sessionId, maxSessions, sessionTtlMillis));
+    }
+
+    @Override
+    public void unregister(String username, String sessionId) {
+        sessions.executeOnKey(username, new Unregister(sessionId));
+    }
+
+    @Override
+    public long leaseTokens(String key, long requested, RateLimitPlan plan) {
+        return buckets.executeOnKey(key, new Lease(requested, plan));
+    }
+
+    /** Session id to the time it was registered */
+    private record Register(String sessionId, int maxSessions, long ttlMillis)
+            implements EntryProcessor<String, HashMap<String, Long>, Boolean> {
+
+        @Override
+        public Boolean process(Map.Entry<String, HashMap<String, Long>> entry) {
+            long now = System.currentTimeMillis();
+            HashMap<String, Long> ids = entry.getValue() != null ? entry.getValue() : new HashMap<>();
+            ids.values().removeIf(registeredAt -> now - registeredAt > ttlMillis);
+
+            boolean registered = ids.containsKey(sessionId) || ids.size() < maxSessions;
+            if (registered) ids.putIfAbsent(sessionId, now);
+            entry.setValue(ids.isEmpty() ? null : ids);
+            return registered;
+        }
+    }
+
+    private record Unregister(String sessionId) implements EntryProcessor<String, HashMap<String, Long>, Void> {
+
+        @Override
+        public Void process(Map.Entry<String, HashMap<String, Long>> entry) {
+            HashMap<String, Long> ids = entry.getValue();
+            if (ids != null && ids.remove(sessionId) != null) {
+                entry.setValue(ids.isEmpty() ? null : ids);
+            }
+            return null;
+        }
+    }
+
+    /** Greedy token bucket refilled from the owning member's clock */
+    private record Lease(long requested, RateLimitPlan plan) implements EntryProcessor<String, TokenState, Long> {
+
+        @Override
+        public Long process(Map.Entry<String, TokenState> entry) {
+            long now = System.currentTimeMillis();
+            TokenState state = entry.getValue();
+            if (state == null) {
+                state = new TokenState(plan.capacity(), now);
+            } else {
+                long elapsed = Math.max(0, now - state.refilledAt());
+                double refill = (double) elapsed * plan.capacity() / plan.period().toMillis();
+                state = new TokenState(Math.min(plan.capacity(), state.tokens() + refill), now);
+            }
+
+            long granted = Math.min(requested, (long) state.tokens());
+            // Hazelcast keeps TTLs in whole seconds and treats a sub-second one as already expired
+            long ttlSeconds = Math.max(1, (plan.period().toMillis() + 999) / 1000);
+            ((ExtendedMapEntry<String, TokenState>) entry).setValue(new TokenState(state.tokens() - granted, now),
+                    ttlSeconds, TimeUnit.SECONDS);
+            return granted;
+        }
+    }
+
+    record TokenState(double tokens, long refilledAt) implements Serializable {
+    }
+}
@@ -0,0 +1,89 @@
+package com.realmaverick.websocket.registry;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.ratelimiter.RateLimitPlan;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM-local registry, used with {@code asr.registry.type=memory} (the default). Limits hold per node only.
+ *
+ * A bucket is dropped one plan period after its last lease: by then it has refilled completely, so a
+ * fresh bucket is indistinguishable from it. At most {@code asr.rate-limit.max-buckets} are kept.
+ */
+@Component
+@ConditionalOnProperty(name = "asr.registry.type", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionRegistry implements SessionRegistry {
+
+    private final Map<String, Set<String>> sessions = new ConcurrentHashMap<>();
+    private final Cache<String, PlannedBucket> buckets;
+
+    public InMemorySessionRegistry(AsrProperties properties) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getRateLimit().getMaxBuckets())
+                .expireAfter(new Expiry<String, PlannedBucket>() {
+                    @Override
+                    public long expireAfterCreate(String key, PlannedBucket bucket, long currentTime) {
+                        return bucket.plan().period().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, PlannedBucket bucket, long currentTime, long currentDuration) {
+                        return bucket.plan().period().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, PlannedBucket bucket, long currentTime, long currentDuration) {
+                        return bucket.plan().period().toNanos();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public boolean tryRegister(String username, String sessionId, int maxSessions) {
+        boolean[] registered = {false};
+        sessions.compute(username, (key, ids) -> {
+            if (ids == null) ids = new HashSet<>();
+            if (ids.contains(sessionId) || ids.size() < maxSessions) {
+                ids.add(sessionId);
+                registered[0] = true;
+            }
+            return ids.isEmpty() ? null : ids;
+        });
+        return registered[0];
+    }
+
+    @Override
+    public void unregister(String username, String sessionId) {
+        sessions.computeIfPresent(username, (key, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    @Override
+    public long leaseTokens(String key, long requested, RateLimitPlan plan) {
+        PlannedBucket bucket = buckets.asMap().compute(key, (k, current) -> current != null && current.plan().equals(plan)
+                ? current
+                : new PlannedBucket(plan, Bucket.builder()
+                        .addLimit(Bandwidth.classic(plan.capacity(), Refill.greedy(plan.capacity(), plan.period())))
+                        .build()));
+        return bucket.bucket().tryConsumeAsMuchAsPossible(requested);
+    }
+
+    /** A plan change starts a new bucket rather than reshaping the old one */
+    private record PlannedBucket(RateLimitPlan plan, Bucket bucket) {
+    }
+}
@@ -0,0 +1,31 @@
+package com.realmaverick.websocket.registry;
+
+import com.realmaverick.websocket.ratelimiter.RateLimitPlan;
+
+/**
+ * Where per-user limits are enforced. The in-memory default only sees this node; a distributed
+ * implementation shares sessions and rate limit buckets across every node behind the load balancer.
+ *
+ * Methods may block on the network, so they are called on connect and disconnect and, for tokens,
+ * once per leased batch rather than per audio frame (see {@link com.realmaverick.websocket.ratelimiter.LeasedBucket}).
+ */
+public interface SessionRegistry {
+
+    /**
+     * Record a session for {@code username} unless the user already has {@code maxSessions} open.
+     * Registering the same session id twice is a no-op that returns true.
+     *
+     * @return false if the user is at the limit
+     */
+    boolean tryRegister(String username, String sessionId, int maxSessions);
+
+    /** Forget a session; unknown ids are ignored */
+    void unregister(String username, String sessionId);
+
+    /**
+     * Take up to {@code requested} tokens from the bucket for {@code key}, created from {@code plan} on first use.
+     *
+     * @return the number of tokens granted, between 0 and {@code requested}
+     */
+    long leaseTokens(String key, long requested, RateLimitPlan plan);
+}
@@ -27,7 +27,7 @@ public class AuthController {
                     new UsernamePasswordAuthenticationToken(username, password)
             );
 
-            String token = jwtTokenService.generateToken(username);
+            String token = jwtTokenService.generateToken(username, auth.getAuthorities());
 
             return Map.of("token", token, "type", "Bearer");
         } catch (org.springframework.security.authentication.BadCredentialsException ex) {
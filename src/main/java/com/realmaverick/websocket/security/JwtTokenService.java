@@ -1,14 +1,27 @@
 package com.realmaverick.websocket.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtTokenService {
@@ -16,37 +29,92 @@ public class JwtTokenService {
     private static final SecretKey SECRET_KEY = Keys.hmacShaKeyFor("MySuperSecretKeyForJwt1234567890".getBytes());
     private static final long EXPIRATION_MS = 1000 * 60 * 60; // 1 hour
 
+    /** Claim listing the user's authorities, e.g. {@code ["ROLE_USER"]}, so a handshake can pick a rate limit plan */
+    public static final String ROLES_CLAIM = "roles";
+
+    /** Immutable and thread-safe, so one instance serves every request */
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(SECRET_KEY)
+            .build();
+
+    /** Verified tokens remembered until they expire; reconnect storms replay the same few tokens */
+    private static final long MAX_CACHED_TOKENS = 10_000;
+
+    /**
+     * Claims of tokens that passed signature and expiry checks, keyed by the token's SHA-256 so raw bearer
+     * tokens are not kept on the heap. Each entry is evicted at the token's {@code exp}. Rejected tokens are
+     * never cached.
+     */
+    private final Cache<String, Claims> verified = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_TOKENS)
+            .expireAfter(new Expiry<String, Claims>() {
+                @Override
+                public long expireAfterCreate(String hash, Claims claims, long currentTime) {
+                    long millis = claims.getExpiration().getTime() - System.currentTimeMillis();
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+                }
+
+                @Override
+                public long expireAfterUpdate(String hash, Claims claims, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String hash, Claims claims, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
     /** Generate JWT token for given username */
     public String generateToken(String username) {
+        return generateToken(username, List.of());
+    }
+
+    /** Generate JWT token carrying the user's authorities in {@value #ROLES_CLAIM} */
+    public String generateToken(String username, Collection<? extends GrantedAuthority> authorities) {
         return Jwts.builder()
                 .setSubject(username)
+                .claim(ROLES_CLAIM, authorities.stream().map(GrantedAuthority::getAuthority).toList())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
                 .signWith(SECRET_KEY, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Verify the token once and return its claims, from the cache when it has been seen before.
+     *
+     * @return empty if the signature is wrong, the token has expired or it cannot be parsed
+     */
+    public Optional<Claims> verify(String token) {
+        String hash = hash(token);
+        Claims claims = verified.getIfPresent(hash);
+        if (claims != null) {
+            return Optional.of(claims);
+        }
+
+        try {
+            claims = PARSER.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (claims.getExpiration() != null) {
+            verified.put(hash, claims);
+        }
+        return Optional.of(claims);
+    }
+
     /** Extract username from JWT token */
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return verify(token)
+                .map(Claims::getSubject)
+                .orElseThrow(() -> new JwtException("Invalid JWT token"));
     }
 
     /** Validate token (expiration + signature) */
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return verify(token).isPresent();
     }
 
     /** ===== Additional methods for WebSocket interceptor ===== */
@@ -58,15 +126,24 @@ public class JwtTokenService {
 
     /** Extract username if token is valid, else return empty */
     public Optional<String> extractUsernameIfValid(String token) {
+        return verify(token).map(Claims::getSubject);
+    }
+
+    /** Authorities from {@value #ROLES_CLAIM}; empty for tokens issued without it */
+    public List<String> extractRoles(Claims claims) {
+        Object roles = claims.get(ROLES_CLAIM);
+        if (!(roles instanceof Collection<?> values)) {
+            return List.of();
+        }
+        return values.stream().map(String::valueOf).toList();
+    }
+
+    private static String hash(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            return Optional.ofNullable(claims.getSubject());
-        } catch (Exception e) {
-            return Optional.empty();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every JRE", e);
         }
     }
 }
@@ -0,0 +1,39 @@
+package com.realmaverick.websocket.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bearer token to user, for the JWT filters of both runtimes. Users are cached briefly, so a burst of requests
+ * from one user loads it once.
+ */
+@Component
+public class JwtUserResolver {
+
+    /** Short enough that role changes and removed accounts take effect quickly */
+    private static final Duration USER_CACHE_TTL = Duration.ofSeconds(30);
+
+    private final JwtTokenService jwtTokenService;
+    private final UserDetailsService userDetailsService;
+    private final Cache<String, UserDetails> users = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(USER_CACHE_TTL)
+            .build();
+
+    public JwtUserResolver(JwtTokenService jwtTokenService, UserDetailsService userDetailsService) {
+        this.jwtTokenService = jwtTokenService;
+        this.userDetailsService = userDetailsService;
+    }
+
+    /** @return the user the token was issued to, or empty if the token is invalid or expired */
+    public Optional<UserDetails> resolve(String token) {
+        return jwtTokenService.extractUsernameIfValid(token)
+                .map(username -> users.get(username, userDetailsService::loadUserByUsername));
+    }
+}
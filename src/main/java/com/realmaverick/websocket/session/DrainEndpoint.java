@@ -0,0 +1,32 @@
+package com.realmaverick.websocket.session;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/drain}: GET reports drain progress, POST starts a drain ahead of a shutdown, e.g. from a
+ * pre-stop hook. Admins only.
+ */
+@Component
+@Endpoint(id = "drain")
+public class DrainEndpoint {
+
+    private final SessionDrainer drainer;
+
+    public DrainEndpoint(SessionDrainer drainer) {
+        this.drainer = drainer;
+    }
+
+    @ReadOperation
+    public SessionDrainer.Status status() {
+        return drainer.status();
+    }
+
+    @WriteOperation
+    public SessionDrainer.Status drain() {
+        drainer.drain();
+        return drainer.status();
+    }
+}
@@ -0,0 +1,219 @@
+package com.realmaverick.websocket.session;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drains this node for a rolling deploy, so its clients move to the other nodes a few at a time instead of all
+ * reconnecting the moment the sockets close and landing on JWT validation and upstream handshakes together.
+ *
+ * A drain starts on shutdown, ahead of the web server, or from {@code POST /actuator/drain}. From then on new
+ * upgrades are refused with 503 and readiness reports {@code REFUSING_TRAFFIC}, so the load balancer sends new
+ * clients elsewhere. Sessions have {@code asr.drain.deadline} to end on their own. The rest are told to reconnect
+ * after a random delay up to {@code asr.drain.reconnect-jitter}, and are closed with 1001 once the audio they had
+ * queued upstream has had {@code asr.drain.flush-timeout} to be transcribed.
+ *
+ * The WebSocket handlers {@link #track} each session they open and {@link #untrack} it when it closes.
+ */
+@Slf4j
+@Component
+public class SessionDrainer implements SmartLifecycle {
+
+    public enum State {
+        SERVING,
+        /** Refusing new sessions, waiting for the open ones to end */
+        DRAINING,
+        /** Past the deadline: the sessions left have been told to reconnect */
+        REDIRECTING,
+        DRAINED
+    }
+
+    /** A session as its handler ends it for the drain */
+    public interface Drainable {
+
+        /**
+         * Tell the client to reconnect after {@code delay}, and stop taking its audio. What is already queued keeps
+         * going upstream, followed by an end of speech so the backend finalizes it.
+         */
+        void redirect(Duration delay);
+
+        /** Close with 1001 Going Away and release the upstream stream */
+        void close();
+    }
+
+    public record Status(State state, int sessions, long elapsedMillis) {
+    }
+
+    private final AsrProperties.Drain properties;
+    private final ApplicationEventPublisher events;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Drainable> sessions = new ConcurrentHashMap<>();
+    private final AtomicReference<State> state = new AtomicReference<>(State.SERVING);
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private final Counter finished;
+    private final Counter redirected;
+    private final Timer duration;
+    private volatile long drainStartNanos;
+    private volatile boolean running;
+
+    public SessionDrainer(AsrProperties properties, AsrThreads threads, ApplicationEventPublisher events,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties.getDrain();
+        this.events = events;
+        this.scheduler = threads.newScheduler("asr-drain-", 1);
+
+        this.finished = Counter.builder("asr.drain.sessions")
+                .description("Sessions that ended during a drain")
+                .tag("outcome", "finished")
+                .register(meterRegistry);
+        this.redirected = Counter.builder("asr.drain.sessions")
+                .description("Sessions that ended during a drain")
+                .tag("outcome", "redirected")
+                .register(meterRegistry);
+        this.duration = Timer.builder("asr.drain.duration")
+                .description("Time from the start of a drain to its last session closing")
+                .register(meterRegistry);
+        Gauge.builder("asr.drain.state", state, current -> current.get().ordinal())
+                .description("0 serving, 1 draining, 2 redirecting past the deadline, 3 drained")
+                .register(meterRegistry);
+        Gauge.builder("asr.drain.sessions.remaining", this, drainer -> drainer.isDraining() ? drainer.sessions.size() : 0)
+                .description("Sessions still open on a draining node")
+                .register(meterRegistry);
+    }
+
+    public boolean isDraining() {
+        return state.get() != State.SERVING;
+    }
+
+    public Status status() {
+        long start = drainStartNanos;
+        return new Status(state.get(), sessions.size(),
+                isDraining() ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : 0);
+    }
+
+    /**
+     * Start draining; there is no way back short of a restart.
+     *
+     * @return false if a drain had already started
+     */
+    public boolean drain() {
+        if (!state.compareAndSet(State.SERVING, State.DRAINING)) return false;
+        drainStartNanos = System.nanoTime();
+        AvailabilityChangeEvent.publish(events, this, ReadinessState.REFUSING_TRAFFIC);
+        log.info("[SessionDrainer] Draining sessions={} deadline={}", sessions.size(), properties.getDeadline());
+
+        scheduler.schedule(this::redirectRemaining, properties.getDeadline().toMillis(), TimeUnit.MILLISECONDS);
+        if (sessions.isEmpty()) finish();
+        return true;
+    }
+
+    public void track(String sessionId, Drainable session) {
+        sessions.put(sessionId, session);
+        // admitted before the drain began, but opened after its deadline
+        State current = state.get();
+        if (current == State.REDIRECTING || current == State.DRAINED) {
+            redirect(session);
+            scheduler.schedule(() -> close(session), properties.getFlushTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void untrack(String sessionId) {
+        if (sessions.remove(sessionId) == null) return;
+        State current = state.get();
+        if (current == State.DRAINING) finished.increment();
+        if (current != State.SERVING && sessions.isEmpty()) finish();
+    }
+
+    // ---------------- Lifecycle ----------------
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        stop(() -> { });
+    }
+
+    /**
+     * Drain before the web server shuts down: the default phase is stopped first. Shutdown waits for the drain
+     * for up to {@code spring.lifecycle.timeout-per-shutdown-phase}.
+     */
+    @Override
+    public void stop(Runnable callback) {
+        drain();
+        drained.whenComplete((ignored, error) -> {
+            running = false;
+            scheduler.shutdownNow();
+            callback.run();
+        });
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ---------------- Helper Methods ----------------
+
+    private void redirectRemaining() {
+        if (!state.compareAndSet(State.DRAINING, State.REDIRECTING)) return;
+        log.info("[SessionDrainer] Deadline passed, redirecting sessions={}", sessions.size());
+        for (Drainable session : sessions.values()) {
+            redirect(session);
+        }
+        long flushMillis = properties.getFlushTimeout().toMillis();
+        scheduler.schedule(() -> sessions.values().forEach(this::close), flushMillis, TimeUnit.MILLISECONDS);
+        // sessions whose close never completes do not hold the shutdown up any further
+        scheduler.schedule(this::finish, 2 * flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void redirect(Drainable session) {
+        long jitter = properties.getReconnectJitter().toMillis();
+        Duration delay = Duration.ofMillis(jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        redirected.increment();
+        try {
+            session.redirect(delay);
+        } catch (RuntimeException e) {
+            log.warn("[SessionDrainer] Redirect failed error={}", e.toString());
+        }
+    }
+
+    private void close(Drainable session) {
+        try {
+            session.close();
+        } catch (RuntimeException e) {
+            log.warn("[SessionDrainer] Close failed error={}", e.toString());
+        }
+    }
+
+    private synchronized void finish() {
+        State current = state.get();
+        if (current == State.SERVING || current == State.DRAINED) return;
+        state.set(State.DRAINED);
+        long elapsed = System.nanoTime() - drainStartNanos;
+        duration.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("[SessionDrainer] Drained in {}ms sessionsLeft={}", TimeUnit.NANOSECONDS.toMillis(elapsed), sessions.size());
+        drained.complete(null);
+    }
+}
@@ -0,0 +1,112 @@
+package com.realmaverick.websocket.session;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds the state of sessions whose connection dropped, keyed by the resume token they were issued, for
+ * {@code asr.session.resume-grace}. A reconnect by the same user that presents the token takes the state
+ * over; otherwise it is released when the grace runs out.
+ *
+ * The state is whatever the handler chooses to carry across connections, as session attributes. Parked
+ * sessions live on the node that held the connection, so a reconnect routed to another node starts afresh.
+ */
+@Slf4j
+@Component
+public class SessionResumer {
+
+    private record Parked(String username, Map<String, Object> state, Consumer<Map<String, Object>> release,
+                          SessionTimeoutWheel.Timeout grace) {
+    }
+
+    private final SessionTimeoutWheel timeoutWheel;
+    private final Duration grace;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Parked> parked = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+
+    public SessionResumer(AsrProperties properties, SessionTimeoutWheel timeoutWheel) {
+        this.timeoutWheel = timeoutWheel;
+        this.grace = properties.getSession().getResumeGrace();
+    }
+
+    public boolean isEnabled() {
+        return !grace.isNegative() && !grace.isZero();
+    }
+
+    /** An unguessable token for the client to present when it reconnects */
+    public String newToken() {
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Keep {@code state} for a reconnect; {@code release} gets it back if none comes within the grace.
+     *
+     * @return false if resuming is off or shutting down, leaving the state with the caller
+     */
+    public boolean park(String token, String username, Map<String, Object> state,
+                        Consumer<Map<String, Object>> release) {
+        if (!isEnabled() || stopped) return false;
+        SessionTimeoutWheel.Timeout timeout = timeoutWheel.register(grace, grace, reason -> expire(token, "grace expired"));
+        parked.put(token, new Parked(username, state, release, timeout));
+        return true;
+    }
+
+    /** @return the parked state, now owned by the caller, or null if the token is unknown, expired or another user's */
+    public Map<String, Object> resume(String token, String username) {
+        Parked session = parked.get(token);
+        if (session == null || !session.username().equals(username) || !parked.remove(token, session)) {
+            return null;
+        }
+        session.grace().cancel();
+        return session.state();
+    }
+
+    /** Whether a session is parked under {@code token}, waiting for its client */
+    public boolean isParked(String token) {
+        return parked.containsKey(token);
+    }
+
+    /**
+     * Release every session {@code username} has parked, to make room for a connection that did not resume one.
+     *
+     * @return whether there were any
+     */
+    public boolean evict(String username) {
+        boolean evicted = false;
+        for (Map.Entry<String, Parked> entry : parked.entrySet()) {
+            if (entry.getValue().username().equals(username)) {
+                entry.getValue().grace().cancel();
+                evicted |= expire(entry.getKey(), "evicted by a new session");
+            }
+        }
+        return evicted;
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        for (String token : parked.keySet()) {
+            expire(token, "shutdown");
+        }
+    }
+
+    private boolean expire(String token, String why) {
+        Parked session = parked.remove(token);
+        if (session == null) return false;
+        log.info("[SessionResumer] Released parked session user={} reason={}", session.username(), why);
+        session.release().accept(session.state());
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package com.realmaverick.websocket.session;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel enforcing idle and maximum-duration timeouts for any number of sessions.
+ *
+ * Recording activity is a single volatile write ({@link Timeout#touch()}), so per-frame cost is O(1) with
+ * no executor traffic. Deadlines are checked lazily: when a timeout's slot comes round, the wheel compares
+ * the last activity with the idle limit and either fires or re-files the timeout at its new deadline.
+ * Resolution is one tick ({@code asr.session.timeout-tick}).
+ */
+@Slf4j
+@Component
+public class SessionTimeoutWheel {
+
+    public static final String IDLE_TIMEOUT = "Idle timeout";
+    public static final String MAX_DURATION = "Max session duration reached";
+
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService ticker;
+    private final Executor expiry;
+
+    /** Only touched by the ticker thread */
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionTimeoutWheel(AsrProperties properties, AsrThreads threads) {
+        AsrProperties.Session session = properties.getSession();
+        this.tickNanos = session.getTimeoutTick().toNanos();
+
+        int slots = Integer.highestOneBit(Math.max(2, session.getTimeoutWheelSlots()) - 1) << 1;
+        this.wheel = new ArrayDeque[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = slots - 1;
+
+        this.ticker = threads.newScheduler("asr-session-wheel-", 1);
+        this.expiry = threads.newExecutor("asr-session-expiry-", 2);
+    }
+
+    @PostConstruct
+    public void start() {
+        long tickMillis = TimeUnit.NANOSECONDS.toMillis(tickNanos);
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        if (expiry instanceof ExecutorService service) service.shutdownNow();
+    }
+
+    /**
+     * Start tracking a session. {@code onExpire} receives {@link #IDLE_TIMEOUT} or {@link #MAX_DURATION}
+     * and runs at most once, off the ticker thread.
+     */
+    public Timeout register(Duration idleTimeout, Duration maxDuration, Consumer<String> onExpire) {
+        Timeout timeout = new Timeout(idleTimeout.toNanos(), maxDuration.toNanos(), onExpire);
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    private void advance() {
+        try {
+            long now = System.nanoTime();
+            Timeout timeout;
+            while ((timeout = incoming.poll()) != null) {
+                schedule(timeout, now);
+            }
+
+            ArrayDeque<Timeout> bucket = wheel[(int) (tick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                timeout = bucket.poll();
+                if (timeout.cancelled) continue;
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    bucket.add(timeout);
+                    continue;
+                }
+
+                String reason = timeout.expiredReason(now);
+                if (reason != null) {
+                    fire(timeout, reason);
+                } else {
+                    schedule(timeout, now);
+                }
+            }
+            tick++;
+        } catch (RuntimeException e) {
+            // never let an exception cancel the periodic task
+            log.error("[SessionTimeoutWheel] Tick failed", e);
+        }
+    }
+
+    private void schedule(Timeout timeout, long now) {
+        long delay = Math.max(0, timeout.deadline() - now);
+        long ticksAhead = Math.max(1, (delay + tickNanos - 1) / tickNanos);
+        timeout.rounds = (ticksAhead - 1) / wheel.length;
+        wheel[(int) ((tick + ticksAhead) & mask)].add(timeout);
+    }
+
+    private void fire(Timeout timeout, String reason) {
+        timeout.cancelled = true;
+        try {
+            expiry.execute(() -> timeout.onExpire.accept(reason));
+        } catch (RejectedExecutionException e) {
+            log.warn("[SessionTimeoutWheel] Dropped expiry during shutdown: {}", reason);
+        }
+    }
+
+    /** Handle for one session's timeouts */
+    public static final class Timeout {
+
+        private final long startNanos = System.nanoTime();
+        private final long idleNanos;
+        private final long maxNanos;
+        private final Consumer<String> onExpire;
+
+        private volatile long lastActivityNanos = startNanos;
+        private volatile boolean cancelled;
+        private long rounds;
+
+        private Timeout(long idleNanos, long maxNanos, Consumer<String> onExpire) {
+            this.idleNanos = idleNanos;
+            this.maxNanos = maxNanos;
+            this.onExpire = onExpire;
+        }
+
+        /** Record activity; call on every frame */
+        public void touch() {
+            lastActivityNanos = System.nanoTime();
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private long deadline() {
+            return Math.min(lastActivityNanos + idleNanos, startNanos + maxNanos);
+        }
+
+        private String expiredReason(long now) {
+            if (now - startNanos >= maxNanos) return MAX_DURATION;
+            if (now - lastActivityNanos >= idleNanos) return IDLE_TIMEOUT;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.realmaverick.websocket.transcript;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * A message from the ASR backend, usually {@code {"text":..,"is_final":..}}, parsed once where it arrives from
+ * the upstream socket. The relay, the client protocols and the recorder all read the parsed form.
+ *
+ * @param raw  the message as the backend sent it, forwarded as-is to v1 clients
+ * @param json the parsed message, null if it is not JSON
+ */
+public record Transcript(String raw, JsonNode json) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static Transcript parse(String message) {
+        JsonNode json = null;
+        try {
+            json = MAPPER.readTree(message);
+        } catch (IOException e) {
+            // not JSON, kept as text
+        }
+        return new Transcript(message, json == null || json.isMissingNode() ? null : json);
+    }
+
+    public boolean isFinal() {
+        return json != null && json.path("is_final").asBoolean(false);
+    }
+
+    /** The value of {@code field} if this is a JSON object that has it, else null */
+    public JsonNode get(String field) {
+        return json != null ? json.get(field) : null;
+    }
+}
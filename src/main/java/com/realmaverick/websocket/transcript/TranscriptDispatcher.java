@@ -0,0 +1,80 @@
+package com.realmaverick.websocket.transcript;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Delivers transcripts from the ASR receive threads to browser sessions.
+ *
+ * Finals are handed to a delivery thread immediately. Partials only mark their {@link TranscriptRelay} dirty;
+ * a sweep every {@code asr.transcript.partial-window} sends the latest partial of each dirty relay, so a burst
+ * of hypotheses within one window reaches the client as one message. Writes go through a
+ * {@link ConcurrentWebSocketSessionDecorator}, which buffers behind a slow client instead of blocking.
+ */
+@Slf4j
+@Component
+public class TranscriptDispatcher {
+
+    private final AsrProperties.Transcript properties;
+    private final Executor delivery;
+    private final ScheduledExecutorService sweeper;
+    private final Queue<TranscriptRelay> dirty = new ConcurrentLinkedQueue<>();
+
+    public TranscriptDispatcher(AsrProperties properties, AsrThreads threads) {
+        this.properties = properties.getTranscript();
+        this.delivery = threads.newExecutor("asr-transcript-", this.properties.getDeliveryThreads());
+        this.sweeper = threads.newScheduler("asr-transcript-sweep-", 1);
+    }
+
+    @PostConstruct
+    public void start() {
+        long window = properties.getPartialWindow().toMillis();
+        sweeper.scheduleAtFixedRate(this::sweep, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+        if (delivery instanceof ExecutorService service) service.shutdownNow();
+    }
+
+    /**
+     * Wrap a browser session for transcript delivery, encoded for the client by {@code protocol}; all other writes
+     * to it should use {@link TranscriptRelay#session()} too
+     */
+    public TranscriptRelay register(WebSocketSession session, ClientProtocol protocol) {
+        WebSocketSession outbound = new ConcurrentWebSocketSessionDecorator(session,
+                (int) properties.getSendTimeLimit().toMillis(), properties.getSendBufferSize());
+        return new TranscriptRelay(outbound, protocol, this);
+    }
+
+    void markDirty(TranscriptRelay relay) {
+        dirty.add(relay);
+    }
+
+    void deliver(TranscriptRelay relay) {
+        try {
+            delivery.execute(relay::flush);
+        } catch (RejectedExecutionException e) {
+            log.debug("[TranscriptDispatcher] Delivery rejected during shutdown");
+        }
+    }
+
+    private void sweep() {
+        TranscriptRelay relay;
+        while ((relay = dirty.poll()) != null) {
+            relay.clearDirty();
+            deliver(relay);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.realmaverick.websocket.transcript;
+
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One browser session's transcript outbox. {@link #accept(Transcript)} is the session's transcript listener and
+ * runs on the ASR receive thread; it only records the message, so it never waits on the browser.
+ *
+ * Finals are always delivered, in order. Only the newest partial is kept: a newer partial or a final
+ * supersedes it. Transcripts are encoded for the client as they are sent, so a delta partial is taken against the
+ * partial the client actually got.
+ */
+@Slf4j
+public class TranscriptRelay {
+
+    private final WebSocketSession session;
+    private final ClientProtocol protocol;
+    private final TranscriptDispatcher dispatcher;
+    private final Queue<Transcript> finals = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Transcript> latestPartial = new AtomicReference<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    TranscriptRelay(WebSocketSession session, ClientProtocol protocol, TranscriptDispatcher dispatcher) {
+        this.session = session;
+        this.protocol = protocol;
+        this.dispatcher = dispatcher;
+    }
+
+    /** The decorated, thread-safe view of the browser session */
+    public WebSocketSession session() {
+        return session;
+    }
+
+    public void accept(Transcript transcript) {
+        if (transcript.isFinal()) {
+            latestPartial.set(null);
+            finals.add(transcript);
+            dispatcher.deliver(this);
+        } else {
+            latestPartial.set(transcript);
+            if (dirty.compareAndSet(false, true)) dispatcher.markDirty(this);
+        }
+    }
+
+    void clearDirty() {
+        dirty.set(false);
+    }
+
+    void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            // the running flush re-checks before it lets go
+            return;
+        }
+        try {
+            do {
+                Transcript message;
+                while ((message = finals.poll()) != null) {
+                    send(message);
+                }
+                message = latestPartial.getAndSet(null);
+                if (message != null) send(message);
+            } while (!finals.isEmpty());
+        } finally {
+            flushing.set(false);
+        }
+        if (!finals.isEmpty()) dispatcher.deliver(this);
+    }
+
+    private void send(Transcript transcript) {
+        if (!session.isOpen()) return;
+        try {
+            session.sendMessage(protocol.transcript(transcript).toMessage());
+        } catch (IOException | RuntimeException e) {
+            // SessionLimitExceededException closes the session for a client that stopped reading
+            log.warn("Transcript delivery to session {} failed: {}", session.getId(), e.toString());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.realmaverick.websocket.transcript;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Sits between an upstream stream's transcript listener and the browser session's {@link TranscriptRelay}, so
+ * the stream can outlive a dropped connection.
+ *
+ * While detached it keeps what the client is missing: finals in order, up to a bound past which the oldest
+ * are dropped, and the newest partial unless a final has superseded it. {@link #attach} replays them to the
+ * new relay ahead of anything newer. Runs on the ASR receive thread like the relay; uncontended except at
+ * the moment of a detach or attach.
+ */
+public class TranscriptReplayBuffer implements Consumer<Transcript> {
+
+    private final int maxFinals;
+    private final ArrayDeque<Transcript> finals = new ArrayDeque<>();
+    private Transcript partial;
+    private TranscriptRelay relay;
+    private int dropped;
+
+    public TranscriptReplayBuffer(int maxFinals) {
+        this.maxFinals = Math.max(1, maxFinals);
+    }
+
+    @Override
+    public synchronized void accept(Transcript transcript) {
+        if (relay != null) {
+            relay.accept(transcript);
+            return;
+        }
+        if (transcript.isFinal()) {
+            partial = null;
+            if (finals.size() == maxFinals) {
+                finals.poll();
+                dropped++;
+            }
+            finals.add(transcript);
+        } else {
+            partial = transcript;
+        }
+    }
+
+    /** Buffer from now on; transcripts the relay already took are delivered or lost with the old connection */
+    public synchronized void detach() {
+        relay = null;
+    }
+
+    /**
+     * Replay what was buffered to {@code relay}, then forward to it directly.
+     *
+     * @return finals dropped while detached because the buffer was full
+     */
+    public synchronized int attach(TranscriptRelay relay) {
+        Transcript transcript;
+        while ((transcript = finals.poll()) != null) {
+            relay.accept(transcript);
+        }
+        if (partial != null) {
+            relay.accept(partial);
+            partial = null;
+        }
+        this.relay = relay;
+
+        int lost = dropped;
+        dropped = 0;
+        return lost;
+    }
+}
@@ -0,0 +1,86 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realmaverick.websocket.fakeasr.AsrStreamClient;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.security.JwtTokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** /api/asr-stream on Reactor Netty: same login, JWT, session limit and transcripts as the servlet runtime */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.main.web-application-type=reactive")
+class ReactiveStreamingTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static FakeAsrServer fakeAsr;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtTokenService jwtTokenService;
+
+	@DynamicPropertySource
+	static void asrUrl(DynamicPropertyRegistry registry) throws Exception {
+		fakeAsr = new FakeAsrServer(0).setPartialEvery(Duration.ofMillis(100)).start();
+		registry.add("asr.url", fakeAsr::getUrl);
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		fakeAsr.stop();
+	}
+
+	@Test
+	void audioIsTranscribedAndSecondSessionOfUserIsRefused() throws Exception {
+		AsrStreamClient client = connect(jwtTokenService.generateToken("user"));
+		client.sendAudio(1);
+		assertTrue(client.next("text").get("text").asText().startsWith("[en-US]"));
+
+		AsrStreamClient second = connect(jwtTokenService.generateToken("user"));
+		assertEquals(1008, second.closeStatus(), "policy violation");
+
+		client.sendText("{\"event\":\"stop\"}");
+		assertEquals(WebSocket.NORMAL_CLOSURE, client.closeStatus());
+	}
+
+	@Test
+	void loginIssuesATokenTheUpgradeAccepts() throws Exception {
+		HttpResponse<String> login = HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+						.uri(URI.create("http://localhost:" + port + "/auth/login?username=admin&password=admin123"))
+						.POST(HttpRequest.BodyPublishers.noBody())
+						.build(),
+				HttpResponse.BodyHandlers.ofString());
+		String token = MAPPER.readTree(login.body()).get("token").asText();
+
+		AsrStreamClient client = connect(token);
+		client.sendText("hello");
+		assertEquals("Server ACK: hello", client.nextReply());
+		client.close();
+
+		CompletionException refused = assertThrows(CompletionException.class, () -> connect("not-a-token"));
+		assertEquals(401, ((WebSocketHandshakeException) refused.getCause()).getResponse().statusCode());
+	}
+
+	private AsrStreamClient connect(String token) {
+		return AsrStreamClient.connect("ws://localhost:" + port + "/api/asr-stream", token);
+	}
+}
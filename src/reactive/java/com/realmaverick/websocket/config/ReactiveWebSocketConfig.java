@@ -0,0 +1,107 @@
+package com.realmaverick.websocket.config;
+
+import com.realmaverick.websocket.external_api.ReactiveAsrWebSocketHandler;
+import com.realmaverick.websocket.filter.HandshakeAdmissionInterceptor;
+import com.realmaverick.websocket.filter.JwtHandshakeInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.WebsocketServerSpec;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reactor Netty runtime, selected with {@code spring.main.web-application-type=reactive} (the "reactive" profile).
+ * The upgrade passes the same admission control and JWT check as in {@link WebSocketConfig}.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSocketConfig implements WebFluxConfigurer {
+
+    private final HandshakeAdmissionInterceptor admissionInterceptor;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+    private final boolean deflate;
+
+    public ReactiveWebSocketConfig(HandshakeAdmissionInterceptor admissionInterceptor,
+                                   JwtHandshakeInterceptor jwtHandshakeInterceptor, AsrProperties properties) {
+        this.admissionInterceptor = admissionInterceptor;
+        this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
+        this.deflate = properties.getProtocol().isDeflate();
+    }
+
+    /** Tomcat is on the classpath for the servlet runtime and would otherwise be picked ahead of Netty */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public HandlerMapping asrStreamHandlerMapping(ReactiveAsrWebSocketHandler handler) {
+        return new SimpleUrlHandlerMapping(Map.of("/api/asr-stream", handler), -1);
+    }
+
+    @Override
+    public WebSocketService getWebSocketService() {
+        // chosen explicitly: detection from the classpath would pick Tomcat's. Reactor Netty leaves
+        // permessage-deflate off unless asked, unlike Tomcat
+        HandshakeWebSocketService upgrade = new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder().compress(deflate)));
+
+        return (exchange, handler) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            ServerHttpResponse response = exchange.getResponse();
+
+            HttpStatus refused = admissionInterceptor.tryAdmit(response.getHeaders());
+            if (refused != null) {
+                response.setStatusCode(refused);
+                return response.setComplete();
+            }
+
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put(JwtHandshakeInterceptor.HANDSHAKE_START, System.nanoTime());
+            if (!jwtHandshakeInterceptor.authenticate(request.getHeaders(), request.getURI(), attributes)) {
+                admissionInterceptor.release();
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return response.setComplete();
+            }
+
+            // in progress until the session starts or the upgrade fails; the returned Mono lasts as long as the session
+            AtomicBoolean admitted = new AtomicBoolean(true);
+            Runnable release = () -> {
+                if (admitted.getAndSet(false)) admissionInterceptor.release();
+            };
+            return upgrade.handleRequest(exchange, new WebSocketHandler() {
+                        // the subprotocols the handler offers are negotiated by the upgrade
+                        @Override
+                        public List<String> getSubProtocols() {
+                            return handler.getSubProtocols();
+                        }
+
+                        @Override
+                        public Mono<Void> handle(WebSocketSession session) {
+                            release.run();
+                            // the session's attributes, as the servlet interceptors set them
+                            session.getAttributes().putAll(attributes);
+                            return handler.handle(session);
+                        }
+                    })
+                    .doFinally(signal -> release.run());
+        };
+    }
+}
@@ -0,0 +1,306 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import com.realmaverick.websocket.metrics.AsrMetrics.CloseReason;
+import com.realmaverick.websocket.protocol.ClientMessage;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import com.realmaverick.websocket.ratelimiter.LeasedBucket;
+import com.realmaverick.websocket.ratelimiter.RateLimiterService;
+import com.realmaverick.websocket.session.SessionDrainer;
+import com.realmaverick.websocket.session.SessionTimeoutWheel;
+import com.realmaverick.websocket.transcript.Transcript;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link AsrWebSocketHandler} for the Reactor Netty runtime.
+ *
+ * Audio frames are taken from the socket one at a time, and only while the session's upstream queue has room:
+ * a slow ASR backend stops reads from the client's connection, and TCP flow control slows the client down,
+ * instead of the queue dropping audio. JWT, admission control, session limits, rate limits and timeouts are the
+ * same as the servlet handler's, set up by the same {@link AsrSessionSetup}, and so are the protocol versions.
+ * Audio format negotiation, voice activity detection, recording and resume are not available in this runtime yet.
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAsrWebSocketHandler implements WebSocketHandler {
+
+    /** Messages held for a client that reads slower than transcripts arrive; partials are dropped beyond this */
+    private static final int OUTBOUND_BUFFER = 256;
+
+    /** The servlet runtime's {@code CloseStatus.SESSION_NOT_RELIABLE}, for a client that stopped reading */
+    private static final CloseStatus NOT_READING = new CloseStatus(4500);
+
+    private final AsrSessionSetup sessionSetup;
+    private final AudioBufferPool bufferPool;
+    private final AsrMetrics metrics;
+    /** Reads resume once the queue is down to this, leaving room for a client frame that spans several packets */
+    private final int queueLimit;
+    /** PCM16 mono, for charging rate limit tokens by audio duration */
+    private final int bytesPerSecond;
+
+    public ReactiveAsrWebSocketHandler(AsrSessionSetup sessionSetup, AudioBufferPool bufferPool, AsrMetrics metrics,
+                                       AsrProperties properties) {
+        this.sessionSetup = sessionSetup;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        this.queueLimit = Math.max(1, properties.getAudio().getQueueCapacity() / 2);
+        this.bytesPerSecond = properties.getAudio().getSampleRate() * 2;
+    }
+
+    /** Protocol versions, for the client to pick one at the upgrade; see {@link ClientProtocol} */
+    @Override
+    public List<String> getSubProtocols() {
+        return ClientProtocol.SUBPROTOCOLS;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String username = (String) session.getAttributes().get("username");
+        if (username == null) {
+            sessionSetup.closed(session.getId(), null, null, false, CloseReason.UNAUTHORIZED);
+            return session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Unauthorized"));
+        }
+
+        if (!sessionSetup.register(username, session.getId())) {
+            sessionSetup.closed(session.getId(), username, null, false, CloseReason.TOO_MANY_SESSIONS);
+            log.info("[ReactiveAsrWebSocketHandler] Session refused session={} user={} reason={}",
+                    session.getId(), username, CloseReason.TOO_MANY_SESSIONS);
+            return session.close(CloseStatus.POLICY_VIOLATION.withReason("Too many concurrent sessions"));
+        }
+
+        return new Stream(session, username).run();
+    }
+
+    /** One client session and its upstream stream */
+    private final class Stream implements SessionDrainer.Drainable {
+
+        private final WebSocketSession session;
+        private final String username;
+        private final ClientProtocol protocol;
+        /** Transcripts and replies to the client; emits are synchronized on this stream */
+        private final Sinks.Many<ClientMessage> outbound =
+                Sinks.many().unicast().onBackpressureBuffer(Queues.<ClientMessage>get(OUTBOUND_BUFFER).get());
+
+        private LeasedBucket bucket;
+        private SessionTimeoutWheel.Timeout timeout;
+        private AsrWebSocketClient client;
+        private boolean backpressure;
+        /** Told to reconnect elsewhere by a drain; its audio is no longer taken */
+        private volatile boolean redirected;
+
+        /** Set once the server decides to end the session; the close is sent after what is queued for the client */
+        private volatile CloseReason closeReason;
+        private volatile CloseStatus closeStatus;
+
+        Stream(WebSocketSession session, String username) {
+            this.session = session;
+            this.username = username;
+            this.protocol = ClientProtocol.forSubprotocol(session.getHandshakeInfo().getSubProtocol());
+        }
+
+        Mono<Void> run() {
+            bucket = sessionSetup.resolveBucket(username, session.getAttributes());
+            timeout = sessionSetup.startTimeout(System.nanoTime(), this::close);
+            client = sessionSetup.openStream(session.getId(), session.getAttributes());
+            client.setTranscriptListener(this::transcript);
+            sessionSetup.opened(session.getId(), username, session.getAttributes(), this);
+            log.info("[ReactiveAsrWebSocketHandler] Session opened session={} user={} protocol={}",
+                    session.getId(), username, protocol.version());
+
+            // Netty releases a frame once it is handed over, so it is copied out before anything waits on it
+            Mono<Void> input = session.receive()
+                    .filter(message -> message.getType() == WebSocketMessage.Type.BINARY
+                            || message.getType() == WebSocketMessage.Type.TEXT)
+                    .map(this::copy)
+                    .concatMap(this::handleFrame, 1)
+                    .doOnDiscard(ByteBuffer.class, bufferPool::release)
+                    .then()
+                    .doFinally(signal -> completeOutbound());
+
+            Mono<Void> output = session.send(outbound.asFlux().map(this::toMessage))
+                    .then(Mono.defer(() -> closeStatus != null ? session.close(closeStatus) : Mono.empty()));
+
+            return Mono.when(input, output).doFinally(this::closed);
+        }
+
+        /** Audio as a pooled buffer the upstream client can own, text as a string */
+        private Object copy(WebSocketMessage message) {
+            if (message.getType() == WebSocketMessage.Type.TEXT) {
+                return message.getPayloadAsText();
+            }
+            DataBuffer payload = message.getPayload();
+            metrics.audioIn(payload.readableByteCount());
+            ByteBuffer audio = bufferPool.acquire(payload.readableByteCount());
+            try (DataBuffer.ByteBufferIterator buffers = payload.readableByteBuffers()) {
+                while (buffers.hasNext()) audio.put(buffers.next());
+            }
+            return audio.flip();
+        }
+
+        private Mono<Void> handleFrame(Object frame) {
+            if (frame instanceof String text) {
+                control(text);
+                return Mono.empty();
+            }
+            ByteBuffer audio = (ByteBuffer) frame;
+            if (redirected) {
+                bufferPool.release(audio);
+                return Mono.empty();
+            }
+            if (client.queueDepth() < queueLimit) {
+                forward(audio);
+                return Mono.empty();
+            }
+
+            // no more reads until the upstream catches up; the client is told, as in the servlet runtime
+            setBackpressure(true);
+            // the upstream drain signals once the queue is back under the limit
+            return Mono.fromFuture(() -> client.awaitQueueBelow(queueLimit))
+                    .doOnCancel(() -> bufferPool.release(audio))
+                    .then(Mono.fromRunnable(() -> {
+                        setBackpressure(false);
+                        forward(audio);
+                    }));
+        }
+
+        /** Charge a PCM16 frame to the user's bucket and queue it upstream; the client owns the frame afterwards */
+        private void forward(ByteBuffer audio) {
+            // charged by audio duration, as in the servlet runtime
+            if (!bucket.tryConsume(RateLimiterService.tokensFor(audio.remaining(), bytesPerSecond))) {
+                bufferPool.release(audio);
+                metrics.rateLimited();
+                emit(protocol.error("rate_limit", "Rate limit exceeded"));
+                close("Rate limit exceeded", CloseReason.RATE_LIMIT);
+                return;
+            }
+
+            timeout.touch();
+            client.sendAudio(audio);
+        }
+
+        private void control(String payload) {
+            if (!payload.startsWith("{")) {
+                emit(protocol.ack(payload));
+                return;
+            }
+            try {
+                JsonNode node = sessionSetup.readControl(payload);
+                String event = node.get("event").asText();
+
+                switch (event) {
+                    case "lang":
+                        emit(sessionSetup.switchLanguage(session.getId(), session.getAttributes(), client, node, protocol));
+                        break;
+
+                    case "stop":
+                        close("Stopped by user", CloseReason.STOPPED);
+                        break;
+
+                    default:
+                        emit(protocol.unknownEvent(event));
+                }
+
+            } catch (Exception e) {
+                log.warn("[ReactiveAsrWebSocketHandler] Invalid control message session={} error={}",
+                        session.getId(), e.toString());
+                emit(protocol.error("invalid_control", "Invalid control message"));
+            }
+        }
+
+        private void setBackpressure(boolean on) {
+            if (backpressure == on) return;
+            backpressure = on;
+            emit(protocol.event(AsrUpstreamConnection.MAPPER.createObjectNode()
+                    .put("event", "backpressure")
+                    .put("state", on ? "on" : "off")));
+        }
+
+        /** Runs on the ASR receive thread; never waits on the client */
+        private synchronized void transcript(Transcript upstream) {
+            if (emit(protocol.transcript(upstream))) return;
+            if (upstream.isFinal()) {
+                // a client this far behind on finals has stopped reading
+                if (closeReason == null) closeReason = CloseReason.ERROR;
+                session.close(NOT_READING).subscribe();
+            } else {
+                protocol.partialDropped();
+            }
+        }
+
+        /** @return false if the client is so far behind that the message was dropped */
+        private synchronized boolean emit(ClientMessage message) {
+            return outbound.tryEmitNext(message) != Sinks.EmitResult.FAIL_OVERFLOW;
+        }
+
+        private WebSocketMessage toMessage(ClientMessage message) {
+            return message.isBinary()
+                    ? session.binaryMessage(factory -> factory.wrap(message.binary()))
+                    : session.textMessage(message.text());
+        }
+
+        /** Drain: the reconnect event of the servlet runtime; queued audio goes upstream ahead of an end of speech */
+        @Override
+        public void redirect(Duration delay) {
+            redirected = true;
+            ObjectNode message = AsrUpstreamConnection.MAPPER.createObjectNode()
+                    .put("event", "reconnect")
+                    .put("delay_ms", delay.toMillis());
+            message.putObject("resume").put("language", client.getLanguage());
+            emit(protocol.event(message));
+            client.endOfSpeech();
+            log.info("[ReactiveAsrWebSocketHandler] Session redirected session={} user={} delay={}ms",
+                    session.getId(), username, delay.toMillis());
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.GOING_AWAY.withReason("Server draining"), CloseReason.DRAINED);
+        }
+
+        /** End the session once what is queued for the client has been sent */
+        private void close(String reason, CloseReason cause) {
+            close(CloseStatus.NORMAL.withReason(reason), cause);
+        }
+
+        private synchronized void close(CloseStatus status, CloseReason cause) {
+            if (closeReason == null) closeReason = cause;
+            if (closeStatus == null) closeStatus = status;
+            outbound.tryEmitComplete();
+        }
+
+        private synchronized void completeOutbound() {
+            outbound.tryEmitComplete();
+        }
+
+        private void closed(SignalType signal) {
+            CloseReason reason = closeReason;
+            if (reason == null) reason = signal == SignalType.ON_ERROR ? CloseReason.ERROR : CloseReason.CLIENT;
+            sessionSetup.closed(session.getId(), username, timeout, true, reason);
+            client.close();
+            sessionSetup.unregister(username, session.getId());
+
+            log.info("[ReactiveAsrWebSocketHandler] Session closed session={} user={} reason={}",
+                    session.getId(), username, reason);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.realmaverick.websocket.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/** {@link JwtAuthenticationFilter} for the reactive runtime */
+public class JwtAuthenticationWebFilter implements WebFilter {
+
+    private final JwtUserResolver userResolver;
+
+    public JwtAuthenticationWebFilter(JwtUserResolver userResolver) {
+        this.userResolver = userResolver;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String header = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if (header == null || !header.startsWith("Bearer ")) {
+            return chain.filter(exchange);
+        }
+
+        // in-memory users: the lookup does not block the event loop
+        var userDetails = userResolver.resolve(header.substring(7)).orElse(null);
+        if (userDetails == null) {
+            return chain.filter(exchange);
+        }
+
+        UsernamePasswordAuthenticationToken auth =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+
+        return chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(auth));
+    }
+}
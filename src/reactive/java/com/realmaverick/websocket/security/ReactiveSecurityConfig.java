@@ -0,0 +1,51 @@
+package com.realmaverick.websocket.security;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+/**
+ * The rules of {@link SecurityConfig} for the reactive runtime, which shares its users, password encoder and
+ * authentication provider.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+
+    /** For {@link AuthController}, which checks passwords the same way in both runtimes */
+    @Bean
+    public AuthenticationManager authenticationManager(AuthenticationProvider authenticationProvider) {
+        return new ProviderManager(authenticationProvider);
+    }
+
+    /** Password checks off the event loop; also keeps Spring Boot from generating a default user */
+    @Bean
+    public ReactiveAuthenticationManager reactiveAuthenticationManager(AuthenticationManager authenticationManager) {
+        return new ReactiveAuthenticationManagerAdapter(authenticationManager);
+    }
+
+    @Bean
+    public SecurityWebFilterChain webFilterChain(ServerHttpSecurity http, JwtUserResolver userResolver) {
+        JwtAuthenticationWebFilter jwtFilter = new JwtAuthenticationWebFilter(userResolver);
+
+        http.csrf(csrf -> csrf.disable())
+                .authorizeExchange(auth -> auth
+                        .pathMatchers("/auth/**").permitAll()
+                        .pathMatchers("/api/**").permitAll()
+                        .pathMatchers("/actuator/health", "/actuator/health/**", "/actuator/prometheus").permitAll()
+                        .pathMatchers("/actuator/drain").hasRole("ADMIN")
+                        .anyExchange().authenticated()
+                )
+                .addFilterAt(jwtFilter, SecurityWebFiltersOrder.AUTHENTICATION);
+
+        return http.build();
+    }
+}
@@ -0,0 +1,49 @@
+package com.realmaverick.websocket.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioChunkerTests {
+
+	private final List<ByteBuffer> packets = new ArrayList<>();
+	private final AudioChunker chunker = new AudioChunker(4, new AudioBufferPool(4096, 4), packets::add);
+
+	@Test
+	void coalescesSmallFramesAndSplitsLargeOnes() {
+		chunker.append(frame(1, 2));
+		assertTrue(packets.isEmpty());
+
+		chunker.append(frame(3, 4, 5, 6, 7, 8, 9, 10, 11, 12));
+
+		assertEquals(List.of(frame(1, 2, 3, 4), frame(5, 6, 7, 8), frame(9, 10, 11, 12)), packets);
+	}
+
+	@Test
+	void exactSizedFramePassesThroughUncopied() {
+		ByteBuffer frame = frame(1, 2, 3, 4);
+		chunker.append(frame);
+
+		assertSame(frame, packets.get(0));
+	}
+
+	@Test
+	void partialPacketIsFlushedOnlyOnceOldEnough() {
+		chunker.append(frame(1, 2));
+		long now = System.nanoTime();
+
+		assertFalse(chunker.flushIfOlderThan(1_000_000_000L, now));
+		assertTrue(chunker.flushIfOlderThan(0, now + 1));
+		assertEquals(List.of(frame(1, 2)), packets);
+	}
+
+	private static ByteBuffer frame(int... bytes) {
+		ByteBuffer frame = ByteBuffer.allocate(bytes.length);
+		for (int b : bytes) frame.put((byte) b);
+		return frame.flip();
+	}
+}
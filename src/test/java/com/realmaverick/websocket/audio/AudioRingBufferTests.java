@@ -0,0 +1,118 @@
+package com.realmaverick.websocket.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioRingBufferTests {
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AudioBufferPool bufferPool = new AudioBufferPool(4096, 4);
+
+	@Test
+	void dropOldestEvictsHead() {
+		AudioRingBuffer buffer = new AudioRingBuffer(2, OverflowPolicy.DROP_OLDEST, 0, bufferPool, dropped::addAndGet);
+		buffer.offer(frame(1));
+		buffer.offer(frame(2));
+		assertTrue(buffer.offer(frame(3, 3)));
+
+		assertEquals(1, dropped.get());
+		assertEquals(frame(2), buffer.poll());
+		assertEquals(frame(3, 3), buffer.poll());
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	void coalesceMergesOverflowInOrder() {
+		AudioRingBuffer buffer = new AudioRingBuffer(2, OverflowPolicy.COALESCE, 4, bufferPool, dropped::addAndGet);
+		buffer.offer(frame(1));
+		buffer.offer(frame(2));
+		buffer.offer(frame(3));
+		buffer.offer(frame(4, 5));
+		buffer.offer(frame(6, 7));
+
+		// staged [3,4,5,6,7] trimmed to the 4-byte cap
+		assertEquals(1, dropped.get());
+		assertEquals(3, buffer.size());
+		assertEquals(frame(1), buffer.poll());
+		assertEquals(frame(2), buffer.poll());
+
+		ByteBuffer merged = buffer.poll();
+		assertEquals(frame(4, 5, 6, 7), merged);
+		assertTrue(merged.isDirect(), "merged frames come from the pool");
+		assertTrue(buffer.isEmpty());
+
+		// [4,5] and [6,7] were appended to the same staging buffer
+		bufferPool.release(merged);
+		assertEquals(1, bufferPool.idleCount());
+	}
+
+	@Test
+	void coalesceAppendsInPlaceUntilTheCap() {
+		AudioRingBuffer buffer = new AudioRingBuffer(2, OverflowPolicy.COALESCE, 6, bufferPool, dropped::addAndGet);
+		buffer.offer(frame(1));
+		buffer.offer(frame(2));
+		for (int i = 3; i <= 10; i++) buffer.offer(frame(i));
+
+		assertEquals(2, dropped.get());
+		buffer.poll();
+		buffer.poll();
+		assertEquals(frame(5, 6, 7, 8, 9, 10), buffer.poll());
+
+		// a frame larger than the cap keeps only its newest bytes
+		buffer.offer(frame(1));
+		buffer.offer(frame(2));
+		buffer.offer(frame(3));
+		buffer.offer(frame(11, 12, 13, 14, 15, 16, 17));
+		buffer.poll();
+		buffer.poll();
+		assertEquals(frame(12, 13, 14, 15, 16, 17), buffer.poll());
+		assertEquals(4, dropped.get());
+	}
+
+	@Test
+	void backpressureRejectsWhenFull() {
+		AudioRingBuffer buffer = new AudioRingBuffer(2, OverflowPolicy.BACKPRESSURE, 0, bufferPool, dropped::addAndGet);
+		assertTrue(buffer.offer(frame(1)));
+		assertTrue(buffer.offer(frame(2)));
+		assertFalse(buffer.offer(frame(3, 3)));
+		assertEquals(2, dropped.get());
+
+		buffer.poll();
+		assertTrue(buffer.offer(frame(4)));
+	}
+
+	@Test
+	void concurrentProducerAndConsumerKeepOrder() throws Exception {
+		AudioRingBuffer buffer = new AudioRingBuffer(8, OverflowPolicy.BACKPRESSURE, 0, bufferPool, dropped::addAndGet);
+		int frames = 20_000;
+
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < frames; ) {
+				if (buffer.offer(frame(i))) i++;
+				else Thread.yield();
+			}
+		});
+		producer.start();
+
+		for (int i = 0; i < frames; ) {
+			ByteBuffer frame = buffer.poll();
+			if (frame == null) {
+				Thread.yield();
+				continue;
+			}
+			assertEquals((byte) i, frame.get(0));
+			i++;
+		}
+		producer.join();
+	}
+
+	private static ByteBuffer frame(int... bytes) {
+		ByteBuffer frame = ByteBuffer.allocate(bytes.length);
+		for (int b : bytes) frame.put((byte) b);
+		return frame.flip();
+	}
+}
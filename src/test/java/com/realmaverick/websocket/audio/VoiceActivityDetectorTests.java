@@ -0,0 +1,65 @@
+package com.realmaverick.websocket.audio;
+
+import com.realmaverick.websocket.audio.VoiceActivityDetector.Activity;
+import com.realmaverick.websocket.config.AsrProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoiceActivityDetectorTests {
+
+	/** 20 ms at 16 kHz */
+	private static final int SAMPLES = 320;
+
+	private final AtomicLong discarded = new AtomicLong();
+	private final VoiceActivityDetector vad = new VoiceActivityDetector(new AsrProperties.Vad(), 16_000,
+			new AudioBufferPool(4_096, 4), discarded::addAndGet);
+
+	@Test
+	void silenceIsHeldAsPreRollAndSentAheadOfSpeech() {
+		ByteBuffer[] silence = new ByteBuffer[20];
+		for (int i = 0; i < silence.length; i++) {
+			silence[i] = frame(0, 0);
+			assertEquals(Activity.SILENCE, vad.classify(silence[i]));
+		}
+		assertEquals(5 * 640, discarded.get(), "only the last 300 ms are kept");
+
+		assertEquals(Activity.SPEECH_START, vad.classify(frame(8_000, 440)));
+		for (int i = 5; i < silence.length; i++) {
+			assertSame(silence[i], vad.pollPreRoll(), "held frames come back oldest first");
+		}
+		assertNull(vad.pollPreRoll());
+		assertEquals(Activity.SPEECH, vad.classify(frame(8_000, 440)));
+	}
+
+	@Test
+	void hangoverKeepsPausesThenEndsTheUtterance() {
+		assertEquals(Activity.SPEECH_START, vad.classify(frame(8_000, 440)));
+		for (int i = 0; i < 25; i++) {
+			assertEquals(Activity.SPEECH, vad.classify(frame(0, 0)), "within 500 ms of speech");
+		}
+		assertEquals(Activity.SPEECH_END, vad.classify(frame(0, 0)));
+		assertEquals(Activity.SILENCE, vad.classify(frame(0, 0)));
+		assertEquals(0, discarded.get());
+	}
+
+	@Test
+	void quietFricativesCountAsSpeechButQuietHumDoesNot() {
+		// -49 dB: below the -45 dB threshold, within 6 dB of it
+		assertEquals(Activity.SILENCE, vad.classify(frame(160, 100)));
+		assertEquals(Activity.SPEECH_START, vad.classify(frame(160, 6_000)));
+	}
+
+	/** 20 ms of a sine tone, amplitude 0 for silence */
+	private static ByteBuffer frame(int amplitude, int frequency) {
+		ByteBuffer pcm = ByteBuffer.allocate(SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < SAMPLES; i++) {
+			pcm.putShort((short) (Math.sin(2 * Math.PI * frequency * i / 16_000.0) * amplitude));
+		}
+		return pcm.flip();
+	}
+}
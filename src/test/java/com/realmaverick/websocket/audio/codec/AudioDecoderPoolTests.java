@@ -0,0 +1,71 @@
+package com.realmaverick.websocket.audio.codec;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import io.github.jaredmdobson.concentus.OpusApplication;
+import io.github.jaredmdobson.concentus.OpusEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioDecoderPoolTests {
+
+	private final AudioDecoderPool pool = new AudioDecoderPool(new AsrProperties(), new AudioBufferPool(65_536, 4));
+
+	@Test
+	void g711ExpandsAndUpsamplesTo16kHz() {
+		assertEquals(0, G711Decoder.mulaw(0xFF));
+		assertEquals(-32124, G711Decoder.mulaw(0x00));
+		assertEquals(8, G711Decoder.alaw(0xD5));
+		assertEquals(-8, G711Decoder.alaw(0x55));
+
+		AudioDecoderPool.Lease lease = pool.acquire(new AudioFormat(AudioCodec.MULAW, 8_000));
+		ByteBuffer pcm = lease.decode(ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80}));
+
+		assertEquals(8, pcm.remaining(), "two 8 kHz samples become four 16 kHz ones");
+		short full = G711Decoder.mulaw(0x80);
+		pcm.order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(full / 2, pcm.getShort(0), "interpolated from silence");
+		assertEquals(full, pcm.getShort(2));
+		assertEquals(full, pcm.getShort(4));
+		assertEquals(full, pcm.getShort(6));
+	}
+
+	@Test
+	void opusPacketsDecodeToUpstreamRate() throws Exception {
+		OpusEncoder encoder = new OpusEncoder(48_000, 1, OpusApplication.OPUS_APPLICATION_VOIP);
+		short[] tone = new short[960]; // 20 ms at 48 kHz
+		for (int i = 0; i < tone.length; i++) {
+			tone[i] = (short) (Math.sin(2 * Math.PI * 440 * i / 48_000.0) * 8000);
+		}
+		byte[] packet = new byte[1_275];
+		int length = encoder.encode(tone, 0, tone.length, packet, 0, packet.length);
+
+		AudioDecoderPool.Lease lease = pool.acquire(new AudioFormat(AudioCodec.OPUS, 48_000));
+		ByteBuffer pcm = lease.decode(ByteBuffer.wrap(packet, 0, length));
+
+		assertEquals(640, pcm.remaining(), "20 ms of 16 kHz PCM16");
+		ByteBuffer garbage = lease.decode(ByteBuffer.wrap(new byte[]{(byte) 0xFF, 1, 2}));
+		assertEquals(640, garbage.remaining(), "an undecodable packet is concealed, not dropped");
+	}
+
+	@Test
+	void decodersAreRecycledAndLeasesEndOnRelease() {
+		AudioFormat alaw = new AudioFormat(AudioCodec.ALAW, 8_000);
+		AudioDecoderPool.Lease first = pool.acquire(alaw);
+		first.decode(ByteBuffer.wrap(new byte[]{0x10}));
+		first.release();
+
+		assertNull(first.decode(ByteBuffer.wrap(new byte[]{0x10})), "released leases decode nothing");
+		ByteBuffer pcm = pool.acquire(alaw).decode(ByteBuffer.wrap(new byte[]{(byte) 0xD5})).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(4, pcm.getShort(0), "state was reset: interpolation starts from silence again");
+
+		assertNull(pool.acquire(new AudioFormat(AudioCodec.PCM16, 16_000)), "PCM16 at the upstream rate needs no decoder");
+		assertThrows(IllegalArgumentException.class, () -> pool.acquire(new AudioFormat(AudioCodec.PCM16, 48_000)));
+		assertThrows(IllegalArgumentException.class, () -> pool.acquire(new AudioFormat(AudioCodec.MULAW, 11_025)));
+		assertThrows(IllegalArgumentException.class, () -> AudioCodec.fromWireName("flac"));
+	}
+}
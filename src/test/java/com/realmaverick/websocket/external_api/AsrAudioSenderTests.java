@@ -0,0 +1,128 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.audio.AudioRingBuffer;
+import com.realmaverick.websocket.audio.OverflowPolicy;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.metrics.AsrMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AsrAudioSenderTests {
+
+	/** 20 ms of 16 kHz PCM16 */
+	private static final int SMALL_FRAME = 640;
+
+	/** 1 s of 16 kHz PCM16, ten turns of credit at weight 1 */
+	private static final int LARGE_FRAME = 32_000;
+
+	private final AsrProperties properties = new AsrProperties();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final AudioBufferPool bufferPool = new AudioBufferPool(properties);
+	private final AsrMetrics metrics = new AsrMetrics(registry, properties);
+	private final AsrUpstreamConnection connection = mock(AsrUpstreamConnection.class);
+	/** Stream id of every frame sent, in order */
+	private final List<Integer> sent = new CopyOnWriteArrayList<>();
+
+	@Test
+	void weightsComeFromTheMostFavouredRole() {
+		properties.getAudio().setSendWeights(Map.of("ROLE_ADMIN", 4.0, "PREMIUM", 2.0));
+		AsrAudioSender sender = new AsrAudioSender(properties, new AsrThreads(new StandardEnvironment()), registry);
+
+		assertEquals(4.0, sender.weightFor(List.of("PREMIUM", "ADMIN")));
+		assertEquals(2.0, sender.weightFor(List.of("ROLE_PREMIUM")));
+		assertEquals(1.0, sender.weightFor(List.of("USER")));
+	}
+
+	@Test
+	void streamsShareTheSendersByBytesAndWeight() throws Exception {
+		properties.getAudio().setSenderThreads(1);
+		properties.getAudio().setSendWeights(Map.of("ADMIN", 2.0));
+		AsrAudioSender sender = new AsrAudioSender(properties, new AsrThreads(new StandardEnvironment()), registry);
+		CountDownLatch done = new CountDownLatch(4 + 50 + 50);
+		when(connection.sendAudio(anyInt(), any())).thenAnswer(call -> {
+			sent.add(call.getArgument(0));
+			done.countDown();
+			return true;
+		});
+
+		// all queued before the senders start, so the turns do not depend on thread timing
+		AsrWebSocketClient heavy = stream(sender, 1, 1.0, 4, LARGE_FRAME);
+		AsrWebSocketClient light = stream(sender, 2, 1.0, 50, SMALL_FRAME);
+		AsrWebSocketClient admin = stream(sender, 3, 2.0, 50, SMALL_FRAME);
+		sender.start();
+		try {
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+		} finally {
+			sender.stop();
+		}
+
+		// per turn: 5 small frames for the light stream, 10 for the admin, a tenth of a large one for the heavy,
+		// which comes first in the rotation and sends its first frame on its tenth turn
+		int firstLarge = sent.indexOf(1);
+		assertEquals(45, count(sent.subList(0, firstLarge), 2), "the light stream is not held up by large frames");
+		assertEquals(50, count(sent.subList(0, firstLarge), 3));
+		int lastAdmin = sent.lastIndexOf(3);
+		assertEquals(25, count(sent.subList(0, lastAdmin), 2), "twice the weight, twice the share");
+
+		heavy.close();
+		light.close();
+		admin.close();
+	}
+
+	@Test
+	void queueRoomIsSignalledByTheDrain() throws Exception {
+		AsrAudioSender sender = new AsrAudioSender(properties, new AsrThreads(new StandardEnvironment()), registry);
+		when(connection.sendAudio(anyInt(), any())).thenReturn(true);
+
+		// queued before the senders start, so nothing is sent until the waiter is in place
+		AsrWebSocketClient stream = stream(sender, 1, 1.0, 8, SMALL_FRAME);
+		assertTrue(stream.awaitQueueBelow(9).isDone(), "already below");
+		CompletableFuture<Void> room = stream.awaitQueueBelow(4);
+		assertFalse(room.isDone());
+
+		sender.start();
+		try {
+			room.get(5, TimeUnit.SECONDS);
+			assertTrue(stream.queueDepth() < 4);
+		} finally {
+			sender.stop();
+		}
+
+		CompletableFuture<Void> closed = stream.awaitQueueBelow(0);
+		stream.close();
+		assertTrue(closed.isDone(), "a closed stream does not keep its reader waiting");
+	}
+
+	private AsrWebSocketClient stream(AsrAudioSender sender, int streamId, double weight, int frames, int frameBytes) {
+		AudioRingBuffer queue = new AudioRingBuffer(128, OverflowPolicy.DROP_OLDEST, 0, bufferPool, bytes -> { });
+		AsrWebSocketClient stream = new AsrWebSocketClient("session-" + streamId, queue, 0, sender, weight,
+				bufferPool, metrics);
+		for (int i = 0; i < frames; i++) {
+			stream.sendAudio(ByteBuffer.allocate(frameBytes));
+		}
+		stream.bind(connection, streamId);
+		stream.onUpstreamReady();
+		return stream;
+	}
+
+	private static long count(List<Integer> streamIds, int streamId) {
+		return streamIds.stream().filter(id -> id == streamId).count();
+	}
+}
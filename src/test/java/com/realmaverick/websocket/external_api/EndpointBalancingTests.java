@@ -0,0 +1,110 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.transcript.Transcript;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Two instances of one backend, one of which slows down until its breaker sends new sessions to the other */
+@SpringBootTest(properties = {
+		"asr.pool.size=2",
+		"asr.breaker.latency-threshold=200ms",
+		"asr.breaker.open-duration=1m"
+})
+class EndpointBalancingTests {
+
+	/** 100 ms of 16 kHz PCM16, one upstream packet and one transcript */
+	private static final int PACKET_BYTES = 3_200;
+
+	private static FakeAsrServer slow;
+	private static FakeAsrServer fast;
+
+	@Autowired
+	private AsrConnectionPool connectionPool;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void asrUrls(DynamicPropertyRegistry registry) throws Exception {
+		slow = new FakeAsrServer(0).setLatency(Duration.ofMillis(500)).setPartialEvery(Duration.ofMillis(100)).start();
+		fast = new FakeAsrServer(0).setPartialEvery(Duration.ofMillis(100)).start();
+		registry.add("asr.urls", () -> slow.getUrl() + "," + fast.getUrl());
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		slow.stop();
+		fast.stop();
+	}
+
+	@Test
+	void slowInstanceIsTakenOutOfRotationWhileItsStreamsStay() throws Exception {
+		Stream first = open("s1");
+		Stream second = open("s2");
+		assertNotEquals(first.url(), second.url(), "fresh instances share the load");
+		Stream onSlow = first.url().equals(slow.getUrl()) ? first : second;
+
+		for (int i = 0; i < 6; i++) {
+			first.sendAndAwait();
+			second.sendAndAwait();
+		}
+		assertEquals(AsrEndpoint.State.OPEN.ordinal(), breaker(slow), 0.0);
+		assertEquals(AsrEndpoint.State.CLOSED.ordinal(), breaker(fast), 0.0);
+		assertEquals(1, meterRegistry.get("asr.upstream.breaker.trips").tag("endpoint", slow.getUrl()).counter().count());
+
+		List<Stream> later = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			later.add(open("later-" + i));
+			assertEquals(fast.getUrl(), later.get(i).url(), "new sessions fail over");
+		}
+		onSlow.sendAndAwait();
+		assertEquals(slow.getUrl(), onSlow.url(), "existing streams keep their instance");
+
+		first.client.close();
+		second.client.close();
+		later.forEach(stream -> stream.client.close());
+	}
+
+	private double breaker(FakeAsrServer server) {
+		return meterRegistry.get("asr.upstream.breaker").tag("endpoint", server.getUrl()).gauge().value();
+	}
+
+	private Stream open(String sessionId) throws Exception {
+		Stream stream = new Stream(connectionPool.openStream(sessionId));
+		stream.client.setTranscriptListener(stream.transcripts::add);
+		stream.client.ready().get(5, TimeUnit.SECONDS);
+		return stream;
+	}
+
+	private record Stream(AsrWebSocketClient client, BlockingQueue<Transcript> transcripts) {
+
+		Stream(AsrWebSocketClient client) {
+			this(client, new LinkedBlockingQueue<>());
+		}
+
+		String url() {
+			return client.getConnection().getEndpoint().url();
+		}
+
+		void sendAndAwait() throws InterruptedException {
+			client.sendAudio(ByteBuffer.allocate(PACKET_BYTES));
+			assertNotNull(transcripts.poll(5, TimeUnit.SECONDS), "no transcript");
+		}
+	}
+}
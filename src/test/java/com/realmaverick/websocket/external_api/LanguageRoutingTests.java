@@ -0,0 +1,79 @@
+package com.realmaverick.websocket.external_api;
+
+import com.realmaverick.websocket.fakeasr.AsrStreamClient;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.security.JwtTokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Languages routed to their own backend, and a mid-stream switch that follows the language there */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LanguageRoutingTests {
+
+	private static FakeAsrServer general;
+	private static FakeAsrServer indic;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtTokenService jwtTokenService;
+
+	@Autowired
+	private AsrConnectionPool connectionPool;
+
+	@DynamicPropertySource
+	static void asrUrls(DynamicPropertyRegistry registry) throws Exception {
+		general = new FakeAsrServer(0).setPartialEvery(Duration.ofMillis(100)).start();
+		indic = new FakeAsrServer(0).setPartialEvery(Duration.ofMillis(100)).start();
+		registry.add("asr.url", general::getUrl);
+		registry.add("asr.routes.indic.url", indic::getUrl);
+		registry.add("asr.routes.indic.languages", () -> "hi-IN,ta");
+		registry.add("asr.routes.indic.pool-size", () -> "2");
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		general.stop();
+		indic.stop();
+	}
+
+	@Test
+	void languagesResolveByCodeThenPrimarySubtag() {
+		assertEquals("indic", connectionPool.groupFor("hi-IN").name());
+		assertEquals("indic", connectionPool.groupFor("hi_in").name());
+		assertEquals("indic", connectionPool.groupFor("ta-LK").name());
+		assertEquals(AsrEndpointGroup.DEFAULT, connectionPool.groupFor("hi").name(), "only hi-IN is routed");
+		assertEquals(AsrEndpointGroup.DEFAULT, connectionPool.groupFor("en-US").name());
+	}
+
+	@Test
+	void switchingLanguageMovesTheStreamToItsBackend() throws Exception {
+		AsrStreamClient client = AsrStreamClient.connect(url(), jwtTokenService.generateToken("user"));
+		client.sendAudio(1);
+		assertTrue(client.next("text").get("text").asText().startsWith("[en-US]"));
+
+		client.sendText("{\"event\":\"lang\",\"code\":\"hi-IN\"}");
+		long generalFrames = general.framesReceived();
+		long indicFrames = indic.framesReceived();
+		client.sendAudio(1);
+
+		assertTrue(client.next("text").get("text").asText().startsWith("[hi-IN]"));
+		assertEquals(generalFrames, general.framesReceived(), "nothing more goes to the general backend");
+		assertTrue(indic.framesReceived() > indicFrames);
+		client.close();
+	}
+
+	private String url() {
+		return "ws://localhost:" + port + "/api/asr-stream";
+	}
+}
@@ -0,0 +1,70 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.realmaverick.websocket.fakeasr.AsrStreamClient;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.security.JwtTokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Two sessions interleaved on one multiplexed upstream connection each get only their own transcripts */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"asr.pool.multiplex=true", "asr.pool.size=1"})
+class MultiplexedStreamingTests {
+
+	private static FakeAsrServer fakeAsr;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtTokenService jwtTokenService;
+
+	@DynamicPropertySource
+	static void asrUrl(DynamicPropertyRegistry registry) throws Exception {
+		fakeAsr = new FakeAsrServer(0).setMultiplexed(true).setPartialEvery(Duration.ofMillis(100)).start();
+		registry.add("asr.url", fakeAsr::getUrl);
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		fakeAsr.stop();
+	}
+
+	@Test
+	void interleavedStreamsKeepTheirOwnTranscripts() throws Exception {
+		AsrStreamClient hindi = connect("user");
+		AsrStreamClient english = connect("admin");
+		hindi.sendText("{\"event\":\"lang\",\"code\":\"hi-IN\"}");
+		assertEquals("Language set to: hi-IN", hindi.nextReply());
+
+		for (int packet = 1; packet <= 5; packet++) {
+			hindi.sendAudio(1);
+			english.sendAudio(1);
+
+			JsonNode hindiTranscript = hindi.next("text");
+			JsonNode englishTranscript = english.next("text");
+			assertEquals("[hi-IN] word " + packet, hindiTranscript.get("text").asText());
+			assertEquals("[en-US] word " + packet, englishTranscript.get("text").asText());
+			assertEquals(100 * packet, hindiTranscript.get("audio_ms").asInt(), "each stream counts only its own audio");
+			assertEquals(100 * packet, englishTranscript.get("audio_ms").asInt());
+		}
+		assertEquals(1, fakeAsr.connectionsOpened(), "both streams share one upstream connection");
+
+		hindi.close();
+		english.close();
+	}
+
+	private AsrStreamClient connect(String username) {
+		return AsrStreamClient.connect("ws://localhost:" + port + "/api/asr-stream", jwtTokenService.generateToken(username));
+	}
+}
@@ -0,0 +1,69 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.realmaverick.websocket.fakeasr.AsrStreamClient;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import com.realmaverick.websocket.security.JwtTokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** A client that asks for {@code asr.v2} gets CBOR frames: delta partials and structured replies */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ProtocolVersionTests {
+
+	private static FakeAsrServer fakeAsr;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtTokenService jwtTokenService;
+
+	@DynamicPropertySource
+	static void asrUrl(DynamicPropertyRegistry registry) throws Exception {
+		fakeAsr = new FakeAsrServer(0).setPartialEvery(Duration.ofMillis(100)).start();
+		registry.add("asr.url", fakeAsr::getUrl);
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		fakeAsr.stop();
+	}
+
+	@Test
+	void v2SendsDeltaPartialsAndStructuredReplies() throws Exception {
+		AsrStreamClient client = AsrStreamClient.connect("ws://localhost:" + port + "/api/asr-stream",
+				jwtTokenService.generateToken("user"), ClientProtocol.V2, ClientProtocol.V1);
+		assertEquals(ClientProtocol.V2, client.webSocket().getSubprotocol());
+		assertEquals("session", client.next().get("event").asText());
+
+		client.sendAudio(1);
+		JsonNode first = client.next();
+		assertEquals("partial", first.get("event").asText());
+		assertEquals(0, first.get("keep").asInt());
+		assertEquals("[\"[en-US]\",\"word\",\"1\"]", first.get("words").toString());
+
+		client.sendAudio(1);
+		JsonNode next = client.next();
+		assertEquals(2, next.get("keep").asInt(), "\"[en-US] word\" is not sent again");
+		assertEquals("[\"2\"]", next.get("words").toString());
+
+		client.sendText("{\"event\":\"pause\"}");
+		JsonNode reply = client.next();
+		while (!"error".equals(reply.get("event").asText())) reply = client.next();
+		assertEquals("unknown_event", reply.get("code").asText());
+		assertFalse(client.hasReplies(), "nothing but binary frames under asr.v2");
+
+		client.close();
+	}
+}
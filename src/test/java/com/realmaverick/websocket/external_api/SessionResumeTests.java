@@ -0,0 +1,117 @@
+package com.realmaverick.websocket.external_api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.realmaverick.websocket.fakeasr.AsrStreamClient;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import com.realmaverick.websocket.security.JwtTokenService;
+import com.realmaverick.websocket.session.SessionResumer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** A client whose socket drops reconnects to the same upstream stream and gets the transcripts it missed */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class SessionResumeTests {
+
+	private static FakeAsrServer fakeAsr;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtTokenService jwtTokenService;
+
+	@Autowired
+	private SessionResumer sessionResumer;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void asrUrl(DynamicPropertyRegistry registry) throws Exception {
+		fakeAsr = new FakeAsrServer(0)
+				.setLatency(Duration.ofMillis(500))
+				.setPartialEvery(Duration.ofMillis(100))
+				.setFinalEvery(Duration.ofMillis(200))
+				.start();
+		registry.add("asr.url", fakeAsr::getUrl);
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		fakeAsr.stop();
+	}
+
+	@Test
+	void reconnectWithinGraceResumesTheStream() throws Exception {
+		AsrStreamClient first = connect(null);
+		JsonNode session = first.next("session");
+		assertFalse(session.get("resumed").asBoolean());
+
+		String token = session.get("resume_token").asText();
+		long sent = fakeAsr.transcriptsSent();
+		first.sendAudio(4);
+		first.webSocket().abort();
+		await("the dropped session is parked", () -> sessionResumer.isParked(token));
+		// two partials and two finals for that audio, produced while no client is connected
+		await("the transcripts are sent", () -> fakeAsr.transcriptsSent() >= sent + 4);
+
+		AsrStreamClient second = connect(token);
+		assertTrue(second.next("session").get("resumed").asBoolean());
+		assertEquals(200, second.next("audio_ms").get("audio_ms").asInt(), "missed finals are replayed in order");
+		assertEquals(400, second.next("audio_ms").get("audio_ms").asInt());
+
+		second.sendAudio(1);
+		assertEquals(500, second.next("audio_ms").get("audio_ms").asInt(), "the upstream stream kept its position");
+		second.close();
+	}
+
+	@Test
+	void goingAwayIsNotParked() throws Exception {
+		AsrStreamClient first = connect(null);
+		String token = first.next("session").get("resume_token").asText();
+		first.webSocket().sendClose(1001, "navigating away").join();
+		// a parked session would keep its upstream stream open
+		await("the upstream stream is released", () -> upstreamStreams() == 0);
+		assertFalse(sessionResumer.isParked(token));
+
+		AsrStreamClient second = connect(token);
+		assertFalse(second.next("session").get("resumed").asBoolean(), "a close frame ends the stream");
+		second.close();
+	}
+
+	@Test
+	void unknownTokenStartsAFreshSession() throws Exception {
+		AsrStreamClient client = connect("not-a-token");
+		assertFalse(client.next("session").get("resumed").asBoolean());
+		client.close();
+	}
+
+	private double upstreamStreams() {
+		return meterRegistry.get("asr.upstream.streams").tag("endpoint", fakeAsr.getUrl()).gauge().value();
+	}
+
+	private static void await(String what, BooleanSupplier done) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!done.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "timed out waiting until " + what);
+			Thread.sleep(10);
+		}
+	}
+
+	private AsrStreamClient connect(String resumeToken) {
+		return AsrStreamClient.connect("ws://localhost:" + port + "/api/asr-stream"
+				+ (resumeToken != null ? "?resume=" + resumeToken : ""), jwtTokenService.generateToken("user"));
+	}
+}
@@ -0,0 +1,149 @@
+package com.realmaverick.websocket.fakeasr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * A client of the gateway's {@code /api/asr-stream}, for tests that drive it against a {@link FakeAsrServer}.
+ * JSON text frames and CBOR binary frames both arrive as {@link JsonNode}s, in order; text that is not JSON
+ * (the v1 acknowledgements) is kept apart as replies.
+ */
+public class AsrStreamClient implements WebSocket.Listener {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final CBORMapper CBOR = new CBORMapper();
+
+    /** 100 ms of 16 kHz PCM16, one upstream packet */
+    public static final int PACKET_BYTES = 3_200;
+
+    private final BlockingQueue<JsonNode> messages = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Integer> closed = new CompletableFuture<>();
+    private final StringBuilder text = new StringBuilder();
+    private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    private WebSocket webSocket;
+
+    /**
+     * @param uri          e.g. {@code ws://localhost:8080/api/asr-stream?resume=..}
+     * @param token        sent as a bearer token
+     * @param subprotocols offered in order of preference; none for the v1 protocol
+     */
+    public static AsrStreamClient connect(String uri, String token, String... subprotocols) {
+        AsrStreamClient client = new AsrStreamClient();
+        WebSocket.Builder builder = HttpClient.newHttpClient().newWebSocketBuilder()
+                .header("Authorization", "Bearer " + token);
+        if (subprotocols.length > 0) {
+            builder.subprotocols(subprotocols[0], Arrays.copyOfRange(subprotocols, 1, subprotocols.length));
+        }
+        client.webSocket = builder.buildAsync(URI.create(uri), client).join();
+        return client;
+    }
+
+    public WebSocket webSocket() {
+        return webSocket;
+    }
+
+    /** Send {@code packets} packets of silence */
+    public void sendAudio(int packets) {
+        for (int i = 0; i < packets; i++) {
+            webSocket.sendBinary(ByteBuffer.wrap(new byte[PACKET_BYTES]), true).join();
+        }
+    }
+
+    public void sendText(String text) {
+        webSocket.sendText(text, true).join();
+    }
+
+    public void close() {
+        webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done").join();
+    }
+
+    /** The next structured message, whatever it is */
+    public JsonNode next() throws InterruptedException {
+        JsonNode message = messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message, "no message");
+        return message;
+    }
+
+    /** The next message with {@code field}, or whose {@code event} is {@code field}, skipping others */
+    public JsonNode next(String field) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            JsonNode message = messages.poll(100, TimeUnit.MILLISECONDS);
+            if (message == null) continue;
+            if (message.has(field) || field.equals(message.path("event").asText())) return message;
+        }
+        fail("no message with " + field);
+        return null;
+    }
+
+    /** The next text frame that is not JSON */
+    public String nextReply() throws InterruptedException {
+        String reply = replies.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reply, "no reply");
+        return reply;
+    }
+
+    public boolean hasReplies() {
+        return !replies.isEmpty();
+    }
+
+    /** Status code of the close frame the gateway sent */
+    public int closeStatus() throws Exception {
+        return closed.get(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            try {
+                messages.add(JSON.readTree(text.toString()));
+            } catch (Exception e) {
+                replies.add(text.toString());
+            }
+            text.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        binary.writeBytes(bytes);
+        if (last) {
+            try {
+                messages.add(CBOR.readTree(binary.toByteArray()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            binary.reset();
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        closed.complete(statusCode);
+        return null;
+    }
+}
@@ -0,0 +1,306 @@
+package com.realmaverick.websocket.fakeasr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.websocket.server.WsSci;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the ASR backend on an embedded Tomcat, for benchmarks and load tests. Speaks the backend's
+ * protocol: {@code lang} and {@code end_of_speech} events and binary PCM16 in, {@code {"text":..,"is_final":..}} transcripts out.
+ *
+ * Every {@link #setPartialEvery(Duration) partialEvery} of received audio produces a partial and every
+ * {@link #setFinalEvery(Duration) finalEvery} a final, sent {@code latency} ± {@code jitter} later but always
+ * in order. Each transcript carries {@code audio_ms}, the stream position it covers, so a client can measure
+ * audio-to-transcript latency. With {@link #setMultiplexed(boolean)} it understands the pool's multiplexed
+ * framing instead.
+ *
+ * Point the gateway at it with {@code asr.url=}{@link #getUrl()}, or run it on its own:
+ * <pre>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.realmaverick.websocket.fakeasr.FakeAsrServer \
+ *     -Dexec.args="--port=8000 --latency=150ms --jitter=50ms"</pre>
+ */
+@Slf4j
+public class FakeAsrServer {
+
+    public static final String PATH = "/ws";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Tomcat tomcat = new Tomcat();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong transcriptsSent = new AtomicLong();
+    /** One thread, so transcripts due at the same instant still go out in the order they were scheduled */
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(daemon("fake-asr-"));
+
+    private volatile Duration latency = Duration.ofMillis(100);
+    private volatile Duration jitter = Duration.ZERO;
+    private volatile Duration partialEvery = Duration.ofMillis(200);
+    private volatile Duration finalEvery = Duration.ofSeconds(2);
+    private volatile int sampleRate = 16_000;
+    private volatile boolean multiplexed;
+
+    /** @param port 0 picks a free port */
+    public FakeAsrServer(int port) {
+        tomcat.setPort(port);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+
+        FakeAsrServer server = new FakeAsrServer(Integer.parseInt(options.getOrDefault("port", "8000")))
+                .setLatency(DurationStyle.detectAndParse(options.getOrDefault("latency", "100ms")))
+                .setJitter(DurationStyle.detectAndParse(options.getOrDefault("jitter", "0ms")))
+                .setPartialEvery(DurationStyle.detectAndParse(options.getOrDefault("partial-every", "200ms")))
+                .setFinalEvery(DurationStyle.detectAndParse(options.getOrDefault("final-every", "2s")))
+                .setMultiplexed(Boolean.parseBoolean(options.getOrDefault("multiplex", "false")));
+        server.start();
+        server.tomcat.getServer().await();
+    }
+
+    public FakeAsrServer start() throws Exception {
+        Path baseDir = Files.createTempDirectory("fake-asr");
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.getConnector();
+
+        Context context = tomcat.addContext("", baseDir.toString());
+        // WsFilter only sees requests that map to some servlet
+        Tomcat.addServlet(context, "none", new HttpServlet() {
+        });
+        context.addServletMappingDecoded("/", "none");
+        context.addServletContainerInitializer(new WsSci(), null);
+        context.addServletContainerInitializer((classes, servletContext) -> {
+            ServerContainer container = (ServerContainer) servletContext.getAttribute(ServerContainer.class.getName());
+            try {
+                container.addEndpoint(ServerEndpointConfig.Builder.create(AsrEndpoint.class, PATH)
+                        .configurator(new ServerEndpointConfig.Configurator() {
+                            @Override
+                            @SuppressWarnings("unchecked")
+                            public <T> T getEndpointInstance(Class<T> endpointClass) {
+                                return (T) new AsrEndpoint();
+                            }
+                        })
+                        .build());
+            } catch (DeploymentException e) {
+                throw new IllegalStateException(e);
+            }
+        }, null);
+
+        tomcat.start();
+        log.info("[FakeAsrServer] Listening on {} (latency {} ± {})", getUrl(), latency, jitter);
+        return this;
+    }
+
+    public void stop() throws LifecycleException {
+        scheduler.shutdownNow();
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    public String getUrl() {
+        return "ws://localhost:" + tomcat.getConnector().getLocalPort() + PATH;
+    }
+
+    /** Upstream connections the gateway has opened, closed ones included */
+    public long connectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long framesReceived() {
+        return framesReceived.get();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long transcriptsSent() {
+        return transcriptsSent.get();
+    }
+
+    /** Delay between the audio completing a transcript and the transcript being sent */
+    public FakeAsrServer setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Uniform random extra delay in [-jitter, +jitter] added to {@link #setLatency(Duration) latency} */
+    public FakeAsrServer setJitter(Duration jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    public FakeAsrServer setPartialEvery(Duration partialEvery) {
+        this.partialEvery = partialEvery;
+        return this;
+    }
+
+    public FakeAsrServer setFinalEvery(Duration finalEvery) {
+        this.finalEvery = finalEvery;
+        return this;
+    }
+
+    public FakeAsrServer setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /** Expect the 4-byte stream id prefix and {@code "stream"} field of {@code asr.pool.multiplex=true} */
+    public FakeAsrServer setMultiplexed(boolean multiplexed) {
+        this.multiplexed = multiplexed;
+        return this;
+    }
+
+    /** One upstream connection from the gateway */
+    private class AsrEndpoint extends Endpoint {
+
+        private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+        private Session session;
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            this.session = session;
+            connectionsOpened.incrementAndGet();
+            session.setMaxBinaryMessageBufferSize(1 << 20);
+            session.addMessageHandler(ByteBuffer.class, (MessageHandler.Whole<ByteBuffer>) this::onAudio);
+            session.addMessageHandler(String.class, (MessageHandler.Whole<String>) this::onControl);
+        }
+
+        private void onAudio(ByteBuffer audio) {
+            int streamId = multiplexed ? audio.getInt() : 0;
+            framesReceived.incrementAndGet();
+            bytesReceived.addAndGet(audio.remaining());
+            streams.computeIfAbsent(streamId, Stream::new).onAudio(audio.remaining());
+        }
+
+        private void onControl(String message) {
+            try {
+                JsonNode node = MAPPER.readTree(message);
+                int streamId = multiplexed ? node.path("stream").asInt() : 0;
+                switch (node.path("event").asText()) {
+                    case "lang" -> streams.computeIfAbsent(streamId, Stream::new).language = node.path("code").asText();
+                    case "close" -> streams.remove(streamId);
+                    case "end_of_speech" -> streams.computeIfAbsent(streamId, Stream::new).endOfSpeech();
+                    default -> log.debug("[FakeAsrServer] Ignoring {}", message);
+                }
+            } catch (IOException e) {
+                log.warn("[FakeAsrServer] Bad control message: {}", message);
+            }
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            log.debug("[FakeAsrServer] Upstream closed: {}", closeReason);
+        }
+
+        /** Recognition state of one stream; onAudio runs on the connection's read thread only */
+        private class Stream {
+
+            private final int id;
+            private volatile String language = "en-US";
+            private long bytes;
+            private long words;
+            private long lastDueNanos;
+
+            Stream(int id) {
+                this.id = id;
+            }
+
+            void onAudio(int length) {
+                long bytesPerMilli = sampleRate * 2L / 1000;
+                long before = bytes / bytesPerMilli;
+                bytes += length;
+                long after = bytes / bytesPerMilli;
+
+                long partialMillis = Math.max(1, partialEvery.toMillis());
+                long finalMillis = Math.max(partialMillis, finalEvery.toMillis());
+                if (after / finalMillis > before / finalMillis) {
+                    emit(after, true);
+                } else if (after / partialMillis > before / partialMillis) {
+                    emit(after, false);
+                }
+            }
+
+            /** Finalize the utterance so far, as a recognizer does when told the speaker stopped */
+            void endOfSpeech() {
+                if (words > 0) emit(bytes / (sampleRate * 2L / 1000), true);
+            }
+
+            private void emit(long audioMillis, boolean isFinal) {
+                ObjectNode transcript = MAPPER.createObjectNode()
+                        .put("text", "[" + language + "] word " + ++words)
+                        .put("is_final", isFinal)
+                        .put("audio_ms", audioMillis);
+                if (multiplexed) transcript.put("stream", id);
+                if (isFinal) words = 0;
+
+                long jitterNanos = jitter.toNanos();
+                long delay = latency.toNanos()
+                        + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(-jitterNanos, jitterNanos + 1) : 0);
+                // transcripts of one stream never overtake each other
+                long due = Math.max(System.nanoTime() + Math.max(0, delay), lastDueNanos);
+                lastDueNanos = due;
+
+                try {
+                    scheduler.schedule(() -> send(transcript.toString()), due - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // stopping
+                }
+            }
+        }
+
+        private void send(String transcript) {
+            synchronized (this) {
+                if (!session.isOpen()) return;
+                try {
+                    session.getBasicRemote().sendText(transcript);
+                    transcriptsSent.incrementAndGet();
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("[FakeAsrServer] Transcript not sent: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    private static CustomizableThreadFactory daemon(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
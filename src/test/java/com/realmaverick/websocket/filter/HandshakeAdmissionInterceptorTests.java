@@ -0,0 +1,99 @@
+package com.realmaverick.websocket.filter;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.external_api.AsrConnectionPool;
+import com.realmaverick.websocket.session.SessionDrainer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HandshakeAdmissionInterceptorTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final AsrConnectionPool connectionPool = mock(AsrConnectionPool.class);
+	private final SessionDrainer drainer = mock(SessionDrainer.class);
+	private final AsrProperties properties = new AsrProperties();
+
+	@Test
+	void burstIsAdmittedThenThrottledWithRetryAfter() {
+		properties.getAdmission().setHandshakeBurst(2);
+		properties.getAdmission().setHandshakeRate(1);
+		properties.getAdmission().setRetryAfterJitter(Duration.ZERO);
+		HandshakeAdmissionInterceptor admission = admission();
+
+		for (int i = 0; i < 2; i++) {
+			assertNull(handshake(admission, true));
+		}
+		ServletServerHttpResponse refused = handshake(admission, true);
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), ((MockHttpServletResponse) refused.getServletResponse()).getStatus());
+		assertEquals("1", refused.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(1, registry.get("asr.handshakes.rejected").tag("reason", "rate").counter().count());
+	}
+
+	@Test
+	void handshakesInProgressAreCappedUntilOneFinishes() {
+		properties.getAdmission().setMaxConcurrentHandshakes(2);
+		HandshakeAdmissionInterceptor admission = admission();
+
+		assertNull(handshake(admission, false));
+		assertNull(handshake(admission, false));
+		ServletServerHttpResponse refused = handshake(admission, false);
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), ((MockHttpServletResponse) refused.getServletResponse()).getStatus());
+		long retryAfter = Long.parseLong(refused.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertTrue(retryAfter >= 1 && retryAfter <= 6, "one second plus up to five of jitter");
+
+		admission.afterHandshake(null, null, null, null);
+		assertNull(handshake(admission, false));
+	}
+
+	@Test
+	void slowUpstreamHandshakesShrinkTheLimits() {
+		properties.getAdmission().setMaxConcurrentHandshakes(10);
+		when(connectionPool.recentConnectLatencyNanos(anyLong())).thenReturn(TimeUnit.SECONDS.toNanos(2));
+		HandshakeAdmissionInterceptor admission = admission();
+
+		assertEquals(0.25, registry.get("asr.handshakes.admission.share").gauge().value(), 1e-9);
+		assertNull(handshake(admission, false));
+		assertNull(handshake(admission, false));
+		assertNotNull(handshake(admission, false), "a quarter of 10 handshakes at a time");
+	}
+
+	@Test
+	void drainingNodeRefusesEveryUpgrade() {
+		HandshakeAdmissionInterceptor admission = admission();
+		when(drainer.isDraining()).thenReturn(true);
+
+		ServletServerHttpResponse refused = handshake(admission, false);
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), ((MockHttpServletResponse) refused.getServletResponse()).getStatus());
+		assertNotNull(refused.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(1, registry.get("asr.handshakes.rejected").tag("reason", "draining").counter().count());
+		assertEquals(0, registry.get("asr.handshakes.pending").gauge().value(), "never counted as in progress");
+	}
+
+	private HandshakeAdmissionInterceptor admission() {
+		return new HandshakeAdmissionInterceptor(properties, connectionPool, drainer, registry);
+	}
+
+	/** @return the response if the handshake was refused, null if admitted */
+	private static ServletServerHttpResponse handshake(HandshakeAdmissionInterceptor admission, boolean finish) {
+		ServletServerHttpRequest request = new ServletServerHttpRequest(new MockHttpServletRequest());
+		ServletServerHttpResponse response = new ServletServerHttpResponse(new MockHttpServletResponse());
+		if (!admission.beforeHandshake(request, response, null, new HashMap<>())) return response;
+		if (finish) admission.afterHandshake(request, response, null, null);
+		return null;
+	}
+}
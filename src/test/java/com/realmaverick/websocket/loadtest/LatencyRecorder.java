@@ -0,0 +1,36 @@
+package com.realmaverick.websocket.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Collects latency samples from many threads and reports percentiles; fine for a load run's worth of samples */
+class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /** @return the {@code percentile} (0-100) in milliseconds, or NaN with no samples */
+    synchronized double percentileMillis(double percentile) {
+        if (count == 0) return Double.NaN;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    String summary() {
+        return String.format("p50 %7.1f ms   p95 %7.1f ms   p99 %7.1f ms   (n=%d)",
+                percentileMillis(50), percentileMillis(95), percentileMillis(99), count());
+    }
+}
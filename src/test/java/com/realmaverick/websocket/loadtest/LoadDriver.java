@@ -0,0 +1,304 @@
+package com.realmaverick.websocket.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens N authenticated streams against a running gateway, pushes realtime-paced PCM16 on each and measures
+ * what comes back. Logs in once through {@code /auth/login} and streams to {@code /api/asr-stream}.
+ *
+ * Audio-to-transcript latency needs transcripts that carry {@code audio_ms}, as {@code FakeAsrServer}'s do:
+ * it is the time from sending the frame that completed that much audio to receiving the transcript. The
+ * gateway's per-user session limit and rate limit apply, so raise {@code asr.session.max-per-user} and
+ * {@code asr.rate-limit.audio} for the target before a large run; {@link LoadHarness} does this itself.
+ */
+@Slf4j
+public class LoadDriver {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * @param gateway                 base HTTP URL, e.g. {@code http://localhost:9090}
+     * @param frame                   audio per WebSocket message; frames are sent at this interval
+     * @param maxConcurrentHandshakes handshakes in flight during ramp-up
+     * @param drain                   how long to keep listening for transcripts after the audio ends
+     */
+    public record Options(URI gateway, String username, String password, int streams, Duration duration,
+                          Duration frame, int sampleRate, int maxConcurrentHandshakes, Duration drain) {
+    }
+
+    private final Options options;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ScheduledExecutorService pacer;
+    private final Report report = new Report();
+    private final byte[] pcm;
+    private final long frameNanos;
+    private final int framesPerStream;
+
+    public LoadDriver(Options options) {
+        this.options = options;
+        this.frameNanos = options.frame().toNanos();
+        this.framesPerStream = (int) (options.duration().toNanos() / frameNanos);
+        this.pcm = tone(options.sampleRate(), (int) options.frame().toMillis());
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("load-pacer-");
+        threadFactory.setDaemon(true);
+        this.pacer = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), threadFactory);
+    }
+
+    public Report run() throws InterruptedException {
+        report.requested = options.streams();
+        try {
+            String token;
+            try {
+                token = login();
+            } catch (IOException | IllegalStateException e) {
+                log.error("[LoadDriver] Login failed: {}", e.toString());
+                report.loginFailures.increment();
+                return report;
+            }
+
+            URI streamUri = URI.create(options.gateway().toString().replaceFirst("^http", "ws") + "/api/asr-stream");
+            Semaphore handshakes = new Semaphore(options.maxConcurrentHandshakes());
+            List<Stream> streams = new ArrayList<>();
+            for (int i = 0; i < options.streams(); i++) {
+                handshakes.acquire();
+                Stream stream = new Stream();
+                streams.add(stream);
+                stream.open(streamUri, token).whenComplete((ws, ex) -> handshakes.release());
+            }
+
+            // the last stream to connect still gets its full duration
+            handshakes.acquire(options.maxConcurrentHandshakes());
+            Thread.sleep(options.duration().plus(options.drain()).toMillis());
+
+            for (Stream stream : streams) {
+                stream.finish();
+            }
+            return report;
+        } finally {
+            pacer.shutdownNow();
+        }
+    }
+
+    private String login() throws IOException, InterruptedException {
+        String query = "username=" + URLEncoder.encode(options.username(), StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(options.password(), StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(options.gateway().resolve("/auth/login?" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        JsonNode body = MAPPER.readTree(http.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        if (!body.has("type")) {
+            // AuthController answers 200 with {"token":"In valid creds"} on bad credentials
+            throw new IllegalStateException("login rejected: " + body);
+        }
+        return body.get("token").asText();
+    }
+
+    /** One frame of a 440 Hz tone */
+    private static byte[] tone(int sampleRate, int millis) {
+        int samples = sampleRate * millis / 1000;
+        ByteBuffer buffer = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) {
+            buffer.putShort((short) (Math.sin(2 * Math.PI * 440 * i / sampleRate) * 8000));
+        }
+        return buffer.array();
+    }
+
+    /** One client stream; the pacer sends its frames, the HTTP client's threads deliver its messages */
+    private class Stream implements WebSocket.Listener {
+
+        private final long[] sentAt = new long[framesPerStream];
+        private final StringBuilder text = new StringBuilder();
+        private volatile int framesSent;
+        private volatile boolean finished;
+        private volatile WebSocket webSocket;
+        private CompletableFuture<WebSocket> tail;
+        private volatile ScheduledFuture<?> pacing;
+
+        CompletableFuture<WebSocket> open(URI uri, String token) {
+            long start = System.nanoTime();
+            return http.newWebSocketBuilder()
+                    .header("Authorization", "Bearer " + token)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .buildAsync(uri, this)
+                    .whenComplete((ws, ex) -> {
+                        if (ex != null) {
+                            report.handshakeFailures.increment();
+                            log.debug("[LoadDriver] Handshake failed: {}", ex.toString());
+                            return;
+                        }
+                        report.handshake.record(System.nanoTime() - start);
+                        report.connected.increment();
+                        webSocket = ws;
+                        tail = ws.sendText("{\"event\":\"lang\",\"code\":\"en-US\"}", true);
+
+                        // spread streams over the frame interval instead of sending them all at once
+                        long offset = ThreadLocalRandom.current().nextLong(frameNanos);
+                        pacing = pacer.scheduleAtFixedRate(this::sendFrame, offset, frameNanos, TimeUnit.NANOSECONDS);
+                    });
+        }
+
+        /** Runs on the pacer; scheduleAtFixedRate never overlaps runs of one stream */
+        private void sendFrame() {
+            int index = framesSent;
+            if (index >= framesPerStream || finished) {
+                pacing.cancel(false);
+                return;
+            }
+            sentAt[index] = System.nanoTime();
+            framesSent = index + 1;
+            report.framesSent.increment();
+
+            // a slow socket delays later frames rather than failing them, like a real client's send queue
+            tail = tail.thenCompose(ws -> ws.sendBinary(ByteBuffer.wrap(pcm), true));
+            tail.exceptionally(ex -> {
+                if (!finished && pacing.cancel(false)) {
+                    report.sendFailures.increment();
+                    log.debug("[LoadDriver] Send failed: {}", ex.toString());
+                }
+                return null;
+            });
+        }
+
+        void finish() {
+            finished = true;
+            if (pacing != null) pacing.cancel(false);
+            WebSocket ws = webSocket;
+            if (ws != null && !ws.isOutputClosed()) {
+                ws.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                onMessage(text.toString(), System.nanoTime());
+                text.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        private void onMessage(String message, long receivedAt) {
+            if (!message.startsWith("{")) return;
+            try {
+                JsonNode node = MAPPER.readTree(message);
+                if (node.has("audio_ms")) {
+                    report.transcripts.increment();
+                    int frameMillis = (int) options.frame().toMillis();
+                    int index = (int) ((node.get("audio_ms").asLong() + frameMillis - 1) / frameMillis) - 1;
+                    if (index >= 0 && index < framesSent) {
+                        LatencyRecorder recorder = node.path("is_final").asBoolean() ? report.finalLatency : report.partialLatency;
+                        recorder.record(receivedAt - sentAt[index]);
+                    }
+                } else if (node.has("error")) {
+                    report.serverErrors.increment();
+                    report.reasons.computeIfAbsent(node.get("error").asText(), r -> new AtomicLong()).incrementAndGet();
+                } else if ("backpressure".equals(node.path("event").asText()) && "on".equals(node.path("state").asText())) {
+                    report.backpressure.increment();
+                }
+            } catch (IOException e) {
+                log.debug("[LoadDriver] Unparseable message: {}", message);
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            if (!finished) {
+                report.unexpectedCloses.increment();
+                report.reasons.computeIfAbsent(statusCode + " " + reason, r -> new AtomicLong()).incrementAndGet();
+            }
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            if (!finished) {
+                report.transportErrors.increment();
+                log.debug("[LoadDriver] Transport error: {}", error.toString());
+            }
+        }
+    }
+
+    /** What one run saw */
+    public static class Report {
+
+        int requested;
+        final LongAdder connected = new LongAdder();
+        final LongAdder framesSent = new LongAdder();
+        final LongAdder transcripts = new LongAdder();
+        final LatencyRecorder handshake = new LatencyRecorder();
+        final LatencyRecorder partialLatency = new LatencyRecorder();
+        final LatencyRecorder finalLatency = new LatencyRecorder();
+
+        final LongAdder loginFailures = new LongAdder();
+        final LongAdder handshakeFailures = new LongAdder();
+        final LongAdder unexpectedCloses = new LongAdder();
+        final LongAdder transportErrors = new LongAdder();
+        final LongAdder sendFailures = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LongAdder backpressure = new LongAdder();
+        final Map<String, AtomicLong> reasons = new ConcurrentHashMap<>();
+
+        public long connected() {
+            return connected.sum();
+        }
+
+        public long transcripts() {
+            return transcripts.sum();
+        }
+
+        public long errors() {
+            return loginFailures.sum() + handshakeFailures.sum() + unexpectedCloses.sum() + transportErrors.sum()
+                    + sendFailures.sum() + serverErrors.sum();
+        }
+
+        public double partialLatencyMillis(double percentile) {
+            return partialLatency.percentileMillis(percentile);
+        }
+
+        public void print(PrintStream out) {
+            out.printf("streams            %d requested, %d connected%n", requested, connected());
+            out.printf("handshake          %s%n", handshake.summary());
+            out.printf("partial latency    %s%n", partialLatency.summary());
+            out.printf("final latency      %s%n", finalLatency.summary());
+            out.printf("frames sent        %d, transcripts received %d%n", framesSent.sum(), transcripts());
+            out.printf("errors             login %d, handshake %d, unexpected close %d, transport %d, send %d, server %d%n",
+                    loginFailures.sum(), handshakeFailures.sum(), unexpectedCloses.sum(), transportErrors.sum(),
+                    sendFailures.sum(), serverErrors.sum());
+            out.printf("backpressure       %d episodes%n", backpressure.sum());
+            reasons.forEach((reason, count) -> out.printf("  %6d x %s%n", count.get(), reason));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.realmaverick.websocket.loadtest;
+
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** A short load run through the whole gateway: login, handshake, audio upstream, transcripts back */
+@AutoConfigureObservability(tracing = false)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"asr.session.max-per-user=10", "asr.rate-limit.audio=1h"})
+class LoadDriverTests {
+
+	private static FakeAsrServer fakeAsr;
+
+	@LocalServerPort
+	private int port;
+
+	@DynamicPropertySource
+	static void asrUrl(DynamicPropertyRegistry registry) throws Exception {
+		fakeAsr = new FakeAsrServer(0).setLatency(Duration.ofMillis(50)).start();
+		registry.add("asr.url", fakeAsr::getUrl);
+	}
+
+	@AfterAll
+	static void stopFakeAsr() throws Exception {
+		fakeAsr.stop();
+	}
+
+	@Test
+	void streamsGetTranscripts() throws Exception {
+		LoadDriver.Options options = new LoadDriver.Options(URI.create("http://localhost:" + port), "user", "password",
+				2, Duration.ofSeconds(2), Duration.ofMillis(20), 16_000, 2, Duration.ofMillis(500));
+
+		LoadDriver.Report report = new LoadDriver(options).run();
+
+		assertEquals(2, report.connected());
+		assertEquals(0, report.errors());
+		assertTrue(report.transcripts() > 0, "transcripts came back through the gateway");
+		assertTrue(report.partialLatencyMillis(50) >= 50, "latency includes the fake ASR's delay");
+
+		HttpResponse<String> scrape = HttpClient.newHttpClient().send(
+				HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/prometheus")).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, scrape.statusCode());
+		assertTrue(scrape.body().contains("asr_audio_frames_total{direction=\"out\""), "upstream frames are exported");
+		assertTrue(scrape.body().contains("asr_transcript_first_seconds_bucket"), "first-transcript histogram is exported");
+	}
+}
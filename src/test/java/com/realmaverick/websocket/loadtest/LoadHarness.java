@@ -0,0 +1,133 @@
+package com.realmaverick.websocket.loadtest;
+
+import com.realmaverick.websocket.WebsocketApplication;
+import com.realmaverick.websocket.fakeasr.FakeAsrServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load run: {@link LoadDriver} against the gateway, which talks to a {@link FakeAsrServer}.
+ *
+ * Without {@code --gateway} the fake ASR and the gateway are started in this JVM, once per web stack in
+ * {@code --stack} ({@code servlet}, {@code reactive} or {@code both}; reactive needs {@code -Preactive}) and
+ * thread mode in {@code --threads} ({@code platform}, {@code virtual} or {@code both}), and the runs are
+ * compared at the end. The comparison
+ * includes connections per GB of heap: the heap in use after a collection halfway through the run, less the
+ * idle gateway's, which counts the driver's side of the connections too, alike for every run.
+ * With {@code --gateway=http://host:port} only the driver runs, against a gateway started elsewhere:
+ *
+ * <pre>mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.realmaverick.websocket.loadtest.LoadHarness \
+ *     -Dexec.args="--streams=200 --duration=30s --stack=both --asr-latency=150ms --asr-jitter=50ms"</pre>
+ *
+ * Other options: {@code --frame=20ms}, {@code --multiplex=true}, {@code --user}, {@code --password},
+ * {@code --handshakes=50} (in flight during ramp-up).
+ */
+public class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+
+        int streams = Integer.parseInt(options.getOrDefault("streams", "50"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        Duration frame = DurationStyle.detectAndParse(options.getOrDefault("frame", "20ms"));
+        String user = options.getOrDefault("user", "user");
+        String password = options.getOrDefault("password", "password");
+        int handshakes = Integer.parseInt(options.getOrDefault("handshakes", "50"));
+
+        if (options.containsKey("gateway")) {
+            LoadDriver.Options driver = new LoadDriver.Options(URI.create(options.get("gateway")), user, password,
+                    streams, duration, frame, 16_000, handshakes, Duration.ofSeconds(3));
+            new LoadDriver(driver).run().print(System.out);
+            return;
+        }
+
+        boolean multiplex = Boolean.parseBoolean(options.getOrDefault("multiplex", "false"));
+        FakeAsrServer fakeAsr = new FakeAsrServer(0)
+                .setLatency(DurationStyle.detectAndParse(options.getOrDefault("asr-latency", "100ms")))
+                .setJitter(DurationStyle.detectAndParse(options.getOrDefault("asr-jitter", "20ms")))
+                .setMultiplexed(multiplex)
+                .start();
+
+        String stack = options.getOrDefault("stack", "servlet");
+        List<String> stacks = stack.equals("both") ? List.of("servlet", "reactive") : List.of(stack);
+        String threads = options.getOrDefault("threads", "platform");
+        List<String> modes = threads.equals("both") ? List.of("platform", "virtual") : List.of(threads);
+        Map<String, LoadDriver.Report> reports = new LinkedHashMap<>();
+        Map<String, Long> heapPerRun = new LinkedHashMap<>();
+        try {
+            for (String web : stacks) {
+                for (String mode : modes) {
+                    try (ConfigurableApplicationContext gateway = startGateway(fakeAsr, streams, multiplex, web, mode)) {
+                        URI uri = URI.create("http://localhost:" + gateway.getEnvironment().getProperty("local.server.port"));
+                        LoadDriver.Options driver = new LoadDriver.Options(uri, user, password, streams, duration, frame,
+                                16_000, handshakes, Duration.ofSeconds(3));
+
+                        System.out.printf("%n=== %d streams, %s, %s threads, %s ===%n", streams, web, mode, duration);
+                        long idleHeap = usedHeapAfterGc();
+                        CompletableFuture<Long> loadedHeap = CompletableFuture.supplyAsync(LoadHarness::usedHeapAfterGc,
+                                CompletableFuture.delayedExecutor(duration.toMillis() / 2, TimeUnit.MILLISECONDS));
+                        LoadDriver.Report report = new LoadDriver(driver).run();
+                        report.print(System.out);
+                        reports.put(web + "/" + mode, report);
+                        heapPerRun.put(web + "/" + mode, Math.max(1, loadedHeap.join() - idleHeap));
+                    }
+                }
+            }
+        } finally {
+            fakeAsr.stop();
+        }
+
+        if (reports.size() > 1) {
+            System.out.printf("%n%-18s %10s %12s %12s %12s %10s %8s%n", "stack/threads", "connected", "partial p50",
+                    "partial p95", "partial p99", "conn/GB", "errors");
+            reports.forEach((run, report) -> System.out.printf("%-18s %10d %9.1f ms %9.1f ms %9.1f ms %10.0f %8d%n",
+                    run, report.connected(), report.partialLatencyMillis(50), report.partialLatencyMillis(95),
+                    report.partialLatencyMillis(99), report.connected() * (double) (1L << 30) / heapPerRun.get(run),
+                    report.errors()));
+        }
+    }
+
+    /** Heap in use after a full collection, so garbage left from the previous run does not count */
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static ConfigurableApplicationContext startGateway(FakeAsrServer fakeAsr, int streams, boolean multiplex,
+                                                               String stack, String threadMode) {
+        // passed as command line arguments so they override application.properties
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", 0);
+        properties.put("asr.url", fakeAsr.getUrl());
+        properties.put("asr.pool.multiplex", multiplex);
+        // dedicated mode: one warm socket per stream so ramp-up never waits on a cold handshake
+        properties.put("asr.pool.size", multiplex ? 4 : streams);
+        // every stream logs in as the same user
+        properties.put("asr.session.max-per-user", streams);
+        properties.put("asr.rate-limit.audio", "7d");
+        properties.put("spring.main.web-application-type", stack);
+        properties.put("spring.threads.virtual.enabled", threadMode.equals("virtual"));
+        properties.put("logging.level.com.realmaverick", "WARN");
+
+        return new SpringApplicationBuilder(WebsocketApplication.class)
+                .run(properties.entrySet().stream()
+                        .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                        .toArray(String[]::new));
+    }
+}
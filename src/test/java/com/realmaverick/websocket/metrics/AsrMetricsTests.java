@@ -0,0 +1,57 @@
+package com.realmaverick.websocket.metrics;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.metrics.AsrMetrics.CloseReason;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsrMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void sessionGaugesFollowOpensAndCloses() {
+		AsrProperties properties = new AsrProperties();
+		properties.getMetrics().setPerUserSessions(true);
+		AsrMetrics metrics = new AsrMetrics(registry, properties);
+
+		metrics.sessionOpened("alice", TimeUnit.MILLISECONDS.toNanos(5));
+		metrics.sessionOpened("alice", TimeUnit.MILLISECONDS.toNanos(7));
+		metrics.sessionOpened("bob", TimeUnit.MILLISECONDS.toNanos(9));
+
+		assertEquals(3, registry.get("asr.sessions.active").gauge().value());
+		assertEquals(2, registry.get("asr.sessions.active.user.max").gauge().value());
+		assertEquals(2, registry.get("asr.sessions.active.user").tag("user", "alice").gauge().value());
+		assertEquals(3, registry.get("asr.session.handshake").timer().count());
+
+		metrics.sessionClosed("bob", true, CloseReason.IDLE);
+		metrics.sessionClosed("alice", true, CloseReason.CLIENT);
+		metrics.sessionClosed("carol", false, CloseReason.TOO_MANY_SESSIONS);
+
+		assertEquals(1, registry.get("asr.sessions.active").gauge().value());
+		assertEquals(1, registry.get("asr.sessions.active.user").tag("user", "alice").gauge().value());
+		assertNull(registry.find("asr.sessions.active.user").tag("user", "bob").gauge(), "gone with the user's last session");
+		assertEquals(1, registry.get("asr.sessions.closed").tag("reason", "idle").counter().count());
+		assertEquals(1, registry.get("asr.sessions.closed").tag("reason", "too_many_sessions").counter().count());
+	}
+
+	@Test
+	void perUserGaugesAreOffByDefault() {
+		AsrMetrics metrics = new AsrMetrics(registry, new AsrProperties());
+
+		metrics.sessionOpened("alice", 0);
+		metrics.audioIn(3_200);
+		metrics.audioIn(3_200);
+		metrics.audioOut(6_400);
+
+		assertNull(registry.find("asr.sessions.active.user").gauge());
+		assertEquals(1, registry.get("asr.sessions.active.user.max").gauge().value());
+		assertEquals(2, registry.get("asr.audio.frames").tag("direction", "in").counter().count());
+		assertEquals(6_400, registry.get("asr.audio.bytes").tag("direction", "in").counter().count());
+		assertEquals(1, registry.get("asr.audio.frames").tag("direction", "out").counter().count());
+	}
+}
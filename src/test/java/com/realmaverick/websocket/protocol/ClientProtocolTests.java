@@ -0,0 +1,97 @@
+package com.realmaverick.websocket.protocol;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.realmaverick.websocket.transcript.Transcript;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientProtocolTests {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+	private static final CBORMapper CBOR = new CBORMapper();
+
+	@Test
+	void v1IsWhatClientsGotBefore() {
+		ClientProtocol v1 = ClientProtocol.forSubprotocol(null);
+		String transcript = "{\"text\":\"hello world\",\"is_final\":false}";
+
+		assertEquals(ClientProtocol.V1, v1.version());
+		assertEquals(transcript, v1.transcript(Transcript.parse(transcript)).text());
+		assertEquals("Language set to: hi-IN", v1.languageSet("hi-IN").text());
+		assertEquals("Server ACK: ping", v1.ack("ping").text());
+		assertEquals("Unknown event: pause", v1.unknownEvent("pause").text());
+		assertEquals("{\"error\":\"Rate limit exceeded\"}", v1.error("rate_limit", "Rate limit exceeded").text());
+		assertEquals("{\"event\":\"backpressure\",\"state\":\"on\"}",
+				v1.event(JSON.createObjectNode().put("event", "backpressure").put("state", "on")).text());
+	}
+
+	@Test
+	void v2PartialsCarryOnlyTheWordsThatChanged() throws Exception {
+		ClientProtocol v2 = ClientProtocol.forSubprotocol(ClientProtocol.V2);
+
+		JsonNode first = decode(transcript(v2, "{\"text\":\"turn left\",\"is_final\":false,\"audio_ms\":500}"));
+		assertEquals("partial", first.get("event").asText());
+		assertEquals(0, first.get("keep").asInt());
+		assertEquals("[\"turn\",\"left\"]", first.get("words").toString());
+		assertEquals(500, first.get("audio_ms").asInt());
+		assertFalse(first.has("times"), "no timings from the backend");
+
+		JsonNode second = decode(transcript(v2, "{\"text\":\"turn left at the\",\"is_final\":false}"));
+		assertEquals(2, second.get("keep").asInt());
+		assertEquals("[\"at\",\"the\"]", second.get("words").toString());
+
+		JsonNode revised = decode(transcript(v2, "{\"text\":\"turn left at that\",\"is_final\":false}"));
+		assertEquals(3, revised.get("keep").asInt());
+		assertEquals("[\"that\"]", revised.get("words").toString());
+
+		JsonNode last = decode(transcript(v2, "{\"text\":\"turn left at the light\",\"is_final\":true}"));
+		assertEquals("final", last.get("event").asText());
+		assertFalse(last.has("keep"));
+		assertEquals(5, last.get("words").size(), "finals are whole");
+
+		assertEquals(0, decode(transcript(v2, "{\"text\":\"then\",\"is_final\":false}")).get("keep").asInt(),
+				"a final starts the next utterance from nothing");
+	}
+
+	@Test
+	void v2CarriesWordTimingsAndRestartsAfterADroppedPartial() throws Exception {
+		ClientProtocol v2 = ClientProtocol.forSubprotocol(ClientProtocol.V2);
+		String partial = "{\"text\":\"hi there\",\"is_final\":false,\"words\":["
+				+ "{\"word\":\"hi\",\"start_time\":0,\"end_time\":240},"
+				+ "{\"word\":\"there\",\"start_time\":240,\"end_time\":610}]}";
+
+		JsonNode first = decode(transcript(v2, partial));
+		assertEquals("[0,240,240,610]", first.get("times").toString());
+
+		v2.partialDropped();
+		assertEquals(0, decode(transcript(v2, partial)).get("keep").asInt());
+		JsonNode unchanged = decode(transcript(v2, partial));
+		assertEquals(2, unchanged.get("keep").asInt());
+		assertEquals(0, unchanged.get("words").size());
+	}
+
+	@Test
+	void v2ControlRepliesShareOneSchema() throws Exception {
+		ClientProtocol v2 = ClientProtocol.forSubprotocol(ClientProtocol.V2);
+
+		assertEquals("{\"event\":\"lang\",\"code\":\"hi-IN\"}", decode(v2.languageSet("hi-IN")).toString());
+		assertEquals("{\"event\":\"ack\",\"text\":\"ping\"}", decode(v2.ack("ping")).toString());
+		assertEquals("unknown_event", decode(v2.unknownEvent("pause")).get("code").asText());
+		assertEquals("{\"event\":\"error\",\"code\":\"rate_limit\",\"message\":\"Rate limit exceeded\"}",
+				decode(v2.error("rate_limit", "Rate limit exceeded")).toString());
+		assertEquals("{\"event\":\"upstream\",\"data\":{\"status\":\"ready\"}}",
+				decode(transcript(v2, "{\"status\":\"ready\"}")).toString());
+	}
+
+	private static ClientMessage transcript(ClientProtocol protocol, String upstream) {
+		return protocol.transcript(Transcript.parse(upstream));
+	}
+
+	private static JsonNode decode(ClientMessage message) throws Exception {
+		assertTrue(message.isBinary());
+		return CBOR.readTree(message.binary());
+	}
+}
@@ -0,0 +1,65 @@
+package com.realmaverick.websocket.ratelimiter;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.registry.InMemorySessionRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterServiceTests {
+
+	private static final int BYTES_PER_SECOND = 32_000; // 16 kHz PCM16
+
+	@Test
+	void smallFramesAndLargeBlobsDrawTheSameBudget() {
+		AsrProperties properties = new AsrProperties();
+		properties.getRateLimit().setAudio(Duration.ofSeconds(10));
+		properties.getRateLimit().setPeriod(Duration.ofHours(1));
+		RateLimiterService service = new RateLimiterService(new InMemorySessionRegistry(properties), properties);
+
+		LeasedBucket frames = service.resolveBucket("frames", List.of());
+		int accepted = 0;
+		while (frames.tryConsume(RateLimiterService.tokensFor(320, BYTES_PER_SECOND))) {
+			accepted++;
+		}
+		assertEquals(1_000, accepted, "10 s of 10 ms frames");
+
+		LeasedBucket blobs = service.resolveBucket("blobs", List.of());
+		assertTrue(blobs.tryConsume(RateLimiterService.tokensFor(5 * BYTES_PER_SECOND, BYTES_PER_SECOND)));
+		assertTrue(blobs.tryConsume(RateLimiterService.tokensFor(5 * BYTES_PER_SECOND, BYTES_PER_SECOND)));
+		assertFalse(blobs.tryConsume(RateLimiterService.tokensFor(5 * BYTES_PER_SECOND, BYTES_PER_SECOND)),
+				"a third 5 s blob exceeds 10 s");
+	}
+
+	@Test
+	void usersGetTheMostGenerousPlanOfTheirRoles() {
+		AsrProperties properties = new AsrProperties();
+		AsrProperties.RateLimit.Plan admin = new AsrProperties.RateLimit.Plan();
+		admin.setAudio(Duration.ofMinutes(10));
+		AsrProperties.RateLimit.Plan trial = new AsrProperties.RateLimit.Plan();
+		trial.setAudio(Duration.ofMinutes(1));
+		trial.setPeriod(Duration.ofDays(1));
+		properties.getRateLimit().getRoles().put("ADMIN", admin);
+		properties.getRateLimit().getRoles().put("ROLE_TRIAL", trial);
+		RateLimiterService service = new RateLimiterService(new InMemorySessionRegistry(properties), properties);
+
+		assertEquals(new RateLimitPlan(70_000, Duration.ofMinutes(1)), service.planFor(List.of("ROLE_USER")));
+		assertEquals(new RateLimitPlan(60_000, Duration.ofDays(1)), service.planFor(List.of("TRIAL")));
+		assertEquals(new RateLimitPlan(600_000, Duration.ofMinutes(1)), service.planFor(List.of("ROLE_TRIAL", "ROLE_ADMIN")));
+
+		LeasedBucket asUser = service.resolveBucket("alice", List.of("ROLE_USER"));
+		assertSame(asUser, service.resolveBucket("alice", List.of("ROLE_USER")));
+		assertEquals(600_000, service.resolveBucket("alice", List.of("ROLE_ADMIN")).plan().capacity(),
+				"a role change takes effect on the next session");
+	}
+
+	@Test
+	void frameCostRoundsUpToWholeMilliseconds() {
+		assertEquals(10, RateLimiterService.tokensFor(320, BYTES_PER_SECOND));
+		assertEquals(1, RateLimiterService.tokensFor(2, BYTES_PER_SECOND));
+		assertEquals(0, RateLimiterService.tokensFor(0, BYTES_PER_SECOND));
+	}
+}
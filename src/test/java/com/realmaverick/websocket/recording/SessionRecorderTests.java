@@ -0,0 +1,108 @@
+package com.realmaverick.websocket.recording;
+
+import com.realmaverick.websocket.audio.AudioBufferPool;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.transcript.Transcript;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionRecorderTests {
+
+	/** 20 ms at 16 kHz */
+	private static final int FRAME_BYTES = 640;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void rotatesSegmentsAndFixesUpWavHeaders() throws Exception {
+		SessionRecorder recorder = recorder(DataSize.ofMegabytes(10));
+		SessionRecording recording = recorder.startRecording("s1", "alice");
+
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_BYTES);
+		for (int i = 0; i < 8; i++) {
+			recording.audio(frame);
+		}
+		assertEquals(FRAME_BYTES, frame.remaining(), "the caller's buffer is left as it was");
+		recording.transcript(Transcript.parse("{\"text\":\"hello\",\"is_final\":true}"));
+		recording.close();
+		recorder.stop();
+
+		// 100 ms segments hold five frames each
+		assertSegment(directory.resolve("s1/audio-001.wav"), 5 * FRAME_BYTES);
+		assertSegment(directory.resolve("s1/audio-002.wav"), 3 * FRAME_BYTES);
+
+		List<String> lines = Files.readAllLines(directory.resolve("s1/transcripts.jsonl"));
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).contains("\"event\":\"start\""), lines.get(0));
+		assertTrue(lines.get(1).contains("\"audio_ms\":160,\"segment\":2,\"transcript\":{\"text\":\"hello\""), lines.get(1));
+		assertTrue(lines.get(2).contains("\"reason\":\"closed\""), lines.get(2));
+	}
+
+	@Test
+	void pausesOnceTheDiskBudgetIsSpent() throws Exception {
+		SessionRecorder recorder = recorder(DataSize.ofBytes(4_096));
+		SessionRecording recording = recorder.startRecording("s1", "alice");
+		for (int i = 0; i < 3; i++) {
+			recording.audio(ByteBuffer.allocate(FRAME_BYTES));
+		}
+		// written on their own, so only the next frame is over the budget
+		Path wav = directory.resolve("s1/audio-001.wav");
+		await(() -> Files.exists(wav) && Files.size(wav) == SessionRecording.WAV_HEADER_BYTES + 3 * FRAME_BYTES);
+		recording.audio(ByteBuffer.allocate(4_096));
+		Path transcripts = directory.resolve("s1/transcripts.jsonl");
+		await(() -> Files.exists(transcripts) && Files.readString(transcripts).contains("\"reason\":\"disk_full\""));
+
+		assertNull(recorder.startRecording("s2", "bob"));
+		recorder.stop();
+
+		List<String> lines = Files.readAllLines(transcripts);
+		assertTrue(lines.get(lines.size() - 1).contains("\"reason\":\"disk_full\""), lines.toString());
+		assertSegment(directory.resolve("s1/audio-001.wav"), 3 * FRAME_BYTES);
+	}
+
+	private SessionRecorder recorder(DataSize maxDiskUsage) throws Exception {
+		AsrProperties properties = new AsrProperties();
+		properties.getRecording().setEnabled(true);
+		properties.getRecording().setSessionFraction(1);
+		properties.getRecording().setDirectory(directory.toString());
+		properties.getRecording().setSegmentDuration(Duration.ofMillis(100));
+		properties.getRecording().setMaxDiskUsage(maxDiskUsage);
+
+		SessionRecorder recorder = new SessionRecorder(properties, new AudioBufferPool(4_096, 16),
+				new AsrThreads(new StandardEnvironment()));
+		recorder.start();
+		return recorder;
+	}
+
+	/** Until the writer thread has got somewhere the test can see */
+	private static void await(Callable<Boolean> done) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!done.call()) {
+			assertTrue(System.nanoTime() < deadline, "the writer thread did not get there");
+			Thread.sleep(10);
+		}
+	}
+
+	private static void assertSegment(Path wav, int dataBytes) throws Exception {
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(wav)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(SessionRecording.WAV_HEADER_BYTES + dataBytes, header.limit());
+		assertEquals(36 + dataBytes, header.getInt(4));
+		assertEquals(16_000, header.getInt(24));
+		assertEquals(dataBytes, header.getInt(40));
+	}
+}
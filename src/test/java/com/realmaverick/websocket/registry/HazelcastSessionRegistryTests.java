@@ -0,0 +1,102 @@
+package com.realmaverick.websocket.registry;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.ratelimiter.LeasedBucket;
+import com.realmaverick.websocket.ratelimiter.RateLimitPlan;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Two embedded members in one JVM stand in for two nodes behind the load balancer */
+class HazelcastSessionRegistryTests {
+
+	private static HazelcastInstance memberA;
+	private static HazelcastInstance memberB;
+	private static SessionRegistry nodeA;
+	private static SessionRegistry nodeB;
+
+	@BeforeAll
+	static void startCluster() {
+		AsrProperties.Registry.Hazelcast settings = new AsrProperties.Registry.Hazelcast();
+		settings.setClusterName("asr-test-" + UUID.randomUUID());
+		settings.setPort(5801);
+		settings.setMembers(List.of("127.0.0.1:5801", "127.0.0.1:5802"));
+
+		Config config = HazelcastRegistryConfiguration.hazelcastConfig(settings);
+		config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+		memberA = Hazelcast.newHazelcastInstance(config);
+		memberB = Hazelcast.newHazelcastInstance(config);
+		assertEquals(2, memberB.getCluster().getMembers().size());
+
+		nodeA = new HazelcastSessionRegistry(memberA, Duration.ofMinutes(1));
+		nodeB = new HazelcastSessionRegistry(memberB, Duration.ofMinutes(1));
+	}
+
+	@AfterAll
+	static void stopCluster() {
+		memberB.shutdown();
+		memberA.shutdown();
+	}
+
+	@Test
+	void sessionLimitHoldsAcrossNodes() {
+		assertTrue(nodeA.tryRegister("alice", "a-1", 1));
+		assertTrue(nodeA.tryRegister("alice", "a-1", 1), "re-registering is idempotent");
+		assertFalse(nodeB.tryRegister("alice", "b-1", 1));
+
+		nodeB.unregister("alice", "b-1");
+		assertFalse(nodeB.tryRegister("alice", "b-1", 1), "unknown ids do not free a slot");
+
+		nodeA.unregister("alice", "a-1");
+		assertTrue(nodeB.tryRegister("alice", "b-1", 1));
+	}
+
+	@Test
+	void staleSessionsExpire() {
+		SessionRegistry shortLived = new HazelcastSessionRegistry(memberA, Duration.ZERO);
+		assertTrue(shortLived.tryRegister("bob", "dead-node", 1));
+		sleep(5);
+		assertTrue(shortLived.tryRegister("bob", "live", 1));
+	}
+
+	@Test
+	void tokensAreSharedThroughLeases() {
+		RateLimitPlan plan = new RateLimitPlan(10, Duration.ofHours(1));
+		LeasedBucket onA = new LeasedBucket(nodeA, "carol", plan, 4);
+		LeasedBucket onB = new LeasedBucket(nodeB, "carol", plan, 4);
+
+		int consumed = 0;
+		for (int i = 0; i < 20; i++) {
+			if (onA.tryConsume(1)) consumed++;
+			if (onB.tryConsume(1)) consumed++;
+		}
+		assertEquals(10, consumed);
+		assertEquals(0, nodeA.leaseTokens("carol", 1, plan));
+	}
+
+	@Test
+	void idleBucketsExpireOnceFull() {
+		RateLimitPlan plan = new RateLimitPlan(10, Duration.ofSeconds(1));
+		assertEquals(4, nodeA.leaseTokens("dave", 4, plan));
+		assertTrue(memberA.getMap(HazelcastSessionRegistry.BUCKETS_MAP).containsKey("dave"));
+		sleep(2_500);
+		assertFalse(memberA.getMap(HazelcastSessionRegistry.BUCKETS_MAP).containsKey("dave"));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
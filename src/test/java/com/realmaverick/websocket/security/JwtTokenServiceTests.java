@@ -0,0 +1,41 @@
+package com.realmaverick.websocket.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenServiceTests {
+
+	private final JwtTokenService jwtTokenService = new JwtTokenService();
+
+	@Test
+	void verifiedTokensAreServedFromCache() {
+		String token = jwtTokenService.generateToken("user");
+
+		Claims first = jwtTokenService.verify(token).orElseThrow();
+		assertEquals("user", first.getSubject());
+		assertSame(first, jwtTokenService.verify(token).orElseThrow());
+		assertEquals("user", jwtTokenService.extractUsername(token));
+	}
+
+	@Test
+	void rejectsTamperedAndExpiredTokens() {
+		String token = jwtTokenService.generateToken("user");
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+		assertTrue(jwtTokenService.verify(tampered).isEmpty());
+
+		String expired = Jwts.builder()
+				.setSubject("user")
+				.setExpiration(new Date(System.currentTimeMillis() - 1000))
+				.signWith(Keys.hmacShaKeyFor("MySuperSecretKeyForJwt1234567890".getBytes()), SignatureAlgorithm.HS256)
+				.compact();
+		assertTrue(jwtTokenService.extractUsernameIfValid(expired).isEmpty());
+		assertFalse(jwtTokenService.validateToken("not-a-jwt"));
+	}
+}
@@ -0,0 +1,108 @@
+package com.realmaverick.websocket.session;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionDrainerTests {
+
+	private final AsrProperties properties = new AsrProperties();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final List<Object> events = new CopyOnWriteArrayList<>();
+
+	@Test
+	void drainEndsWhenTheLastSessionLeavesBeforeTheDeadline() throws Exception {
+		properties.getDrain().setDeadline(Duration.ofMinutes(1));
+		SessionDrainer drainer = drainer();
+		Session first = new Session();
+		Session second = new Session();
+		drainer.track("first", first);
+		drainer.track("second", second);
+
+		CountDownLatch stopped = new CountDownLatch(1);
+		drainer.stop(stopped::countDown);
+		assertTrue(drainer.isDraining());
+		assertEquals(ReadinessState.REFUSING_TRAFFIC, ((AvailabilityChangeEvent<?>) events.get(0)).getState());
+		assertFalse(drainer.drain(), "already draining");
+
+		drainer.untrack("first");
+		assertEquals(1, registry.get("asr.drain.sessions.remaining").gauge().value());
+		drainer.untrack("second");
+		assertTrue(stopped.await(1, TimeUnit.SECONDS), "shutdown goes ahead without waiting for the deadline");
+
+		assertEquals(SessionDrainer.State.DRAINED, drainer.status().state());
+		assertEquals(2, registry.get("asr.drain.sessions").tag("outcome", "finished").counter().count());
+		assertEquals(1, registry.get("asr.drain.duration").timer().count());
+		assertTrue(first.redirects.isEmpty());
+		assertTrue(second.redirects.isEmpty());
+	}
+
+	@Test
+	void sessionsLeftAtTheDeadlineAreToldToReconnectAtSpreadOutTimesThenClosed() throws Exception {
+		properties.getDrain().setDeadline(Duration.ofMillis(50));
+		properties.getDrain().setReconnectJitter(Duration.ofSeconds(10));
+		properties.getDrain().setFlushTimeout(Duration.ofMillis(50));
+		SessionDrainer drainer = drainer();
+		List<Session> sessions = List.of(new Session(), new Session(), new Session(), new Session());
+		for (int i = 0; i < sessions.size(); i++) {
+			drainer.track("session-" + i, sessions.get(i));
+		}
+
+		drainer.drain();
+		long[] delays = new long[sessions.size()];
+		for (int i = 0; i < sessions.size(); i++) {
+			Duration delay = sessions.get(i).redirects.poll(1, TimeUnit.SECONDS);
+			assertNotNull(delay, "redirected at the deadline");
+			assertTrue(delay.compareTo(Duration.ofSeconds(10)) <= 0);
+			delays[i] = delay.toMillis();
+		}
+		assertTrue(Arrays.stream(delays).distinct().count() > 1, "reconnects spread over the jitter");
+		for (Session session : sessions) {
+			assertTrue(session.closed.await(1, TimeUnit.SECONDS), "closed after the flush timeout");
+		}
+
+		for (int i = 0; i < sessions.size(); i++) {
+			drainer.untrack("session-" + i);
+		}
+		assertEquals(SessionDrainer.State.DRAINED, drainer.status().state());
+		assertEquals(4, registry.get("asr.drain.sessions").tag("outcome", "redirected").counter().count());
+		assertEquals(0, registry.get("asr.drain.sessions").tag("outcome", "finished").counter().count());
+	}
+
+	private SessionDrainer drainer() {
+		SessionDrainer drainer = new SessionDrainer(properties, new AsrThreads(new MockEnvironment()), events::add, registry);
+		drainer.start();
+		return drainer;
+	}
+
+	private static class Session implements SessionDrainer.Drainable {
+
+		private final BlockingQueue<Duration> redirects = new LinkedBlockingQueue<>();
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public void redirect(Duration delay) {
+			redirects.add(delay);
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+}
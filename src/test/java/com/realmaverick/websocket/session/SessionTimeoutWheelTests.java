@@ -0,0 +1,67 @@
+package com.realmaverick.websocket.session;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTimeoutWheelTests {
+
+	private SessionTimeoutWheel wheel;
+
+	@BeforeEach
+	void startWheel() {
+		AsrProperties properties = new AsrProperties();
+		properties.getSession().setTimeoutTick(Duration.ofMillis(10));
+		properties.getSession().setTimeoutWheelSlots(8);
+		wheel = new SessionTimeoutWheel(properties, new AsrThreads(new MockEnvironment()));
+		wheel.start();
+	}
+
+	@AfterEach
+	void stopWheel() {
+		wheel.stop();
+	}
+
+	@Test
+	void touchKeepsSessionAliveUntilIdle() throws Exception {
+		CompletableFuture<String> expired = new CompletableFuture<>();
+		SessionTimeoutWheel.Timeout timeout = wheel.register(Duration.ofMillis(150), Duration.ofMinutes(1), expired::complete);
+
+		long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(400);
+		while (System.nanoTime() < until) {
+			timeout.touch();
+			Thread.sleep(20);
+		}
+		assertFalse(expired.isDone());
+
+		assertEquals(SessionTimeoutWheel.IDLE_TIMEOUT, expired.get(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void maxDurationWinsOverActivity() throws Exception {
+		CompletableFuture<String> expired = new CompletableFuture<>();
+		// longer than one revolution of the 8-slot wheel, so rounds are exercised too
+		SessionTimeoutWheel.Timeout timeout = wheel.register(Duration.ofMinutes(1), Duration.ofMillis(200), expired::complete);
+		timeout.touch();
+
+		assertEquals(SessionTimeoutWheel.MAX_DURATION, expired.get(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void cancelledTimeoutNeverFires() throws Exception {
+		CompletableFuture<String> expired = new CompletableFuture<>();
+		wheel.register(Duration.ofMillis(30), Duration.ofMinutes(1), expired::complete).cancel();
+
+		Thread.sleep(200);
+		assertFalse(expired.isDone());
+	}
+}
@@ -0,0 +1,124 @@
+package com.realmaverick.websocket.transcript;
+
+import com.realmaverick.websocket.config.AsrProperties;
+import com.realmaverick.websocket.config.AsrThreads;
+import com.realmaverick.websocket.protocol.ClientProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TranscriptRelayTests {
+
+	/** Not started: partials wait for an explicit flush instead of the sweep */
+	private final TranscriptDispatcher dispatcher =
+			new TranscriptDispatcher(new AsrProperties(), new AsrThreads(new MockEnvironment()));
+
+	/** What the client received, in order */
+	private final List<String> sent = new CopyOnWriteArrayList<>();
+
+	/** Released to let the stub session finish a send; counted down up front unless a test holds it */
+	private CountDownLatch sendGate = new CountDownLatch(0);
+	private final CountDownLatch sending = new CountDownLatch(1);
+
+	private final WebSocketSession session = stubSession();
+
+	@AfterEach
+	void stopDispatcher() {
+		dispatcher.stop();
+	}
+
+	@Test
+	void burstOfPartialsCollapsesToTheLatest() {
+		TranscriptRelay relay = new TranscriptRelay(session, ClientProtocol.forSubprotocol(null), dispatcher);
+		for (int i = 1; i <= 5; i++) {
+			relay.accept(Transcript.parse(partial("word " + i)));
+		}
+		relay.flush();
+
+		assertEquals(List.of(partial("word 5")), sent);
+	}
+
+	@Test
+	void finalsAreNeverDroppedOrReordered() throws Exception {
+		TranscriptRelay relay = new TranscriptRelay(session, ClientProtocol.forSubprotocol(null), dispatcher);
+		List<String> finals = new ArrayList<>();
+		for (int i = 1; i <= 500; i++) {
+			relay.accept(Transcript.parse(partial("partial " + i)));
+			String transcript = finalTranscript("final " + i);
+			finals.add(transcript);
+			relay.accept(Transcript.parse(transcript));
+		}
+		awaitSent(() -> finalsSent().size() == finals.size());
+
+		assertEquals(finals, finalsSent());
+	}
+
+	@Test
+	void finalArrivingDuringAFlushIsDelivered() throws Exception {
+		TranscriptRelay relay = new TranscriptRelay(session, ClientProtocol.forSubprotocol(null), dispatcher);
+		sendGate = new CountDownLatch(1);
+		relay.accept(Transcript.parse(partial("turn left")));
+		CompletableFuture<Void> flush = CompletableFuture.runAsync(relay::flush);
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+		// the delivery it triggers finds the flush running and leaves the final to it
+		relay.accept(Transcript.parse(finalTranscript("turn left at the light")));
+		sendGate.countDown();
+		flush.get(5, TimeUnit.SECONDS);
+		awaitSent(() -> sent.size() == 2);
+
+		assertEquals(List.of(partial("turn left"), finalTranscript("turn left at the light")), sent);
+	}
+
+	private WebSocketSession stubSession() {
+		WebSocketSession stub = mock(WebSocketSession.class);
+		when(stub.isOpen()).thenReturn(true);
+		when(stub.getId()).thenReturn("stub");
+		try {
+			doAnswer(invocation -> {
+				sending.countDown();
+				assertTrue(sendGate.await(5, TimeUnit.SECONDS));
+				sent.add(((TextMessage) invocation.getArgument(0)).getPayload());
+				return null;
+			}).when(stub).sendMessage(any());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return stub;
+	}
+
+	private List<String> finalsSent() {
+		return sent.stream().filter(t -> t.contains("\"is_final\":true")).toList();
+	}
+
+	private static void awaitSent(BooleanSupplier done) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!done.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static String partial(String text) {
+		return "{\"text\":\"" + text + "\",\"is_final\":false}";
+	}
+
+	private static String finalTranscript(String text) {
+		return "{\"text\":\"" + text + "\",\"is_final\":true}";
+	}
+}